@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2015, BMW Car IT GmbH
+ *
+ * Author: Sebastian Mattheis <sebastian.mattheis@bmw-carit.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.bmwcarit.barefoot.markov;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Codec for compact binary representation of state candidates, transitions and samples, which is
+ * the binary counterpart of {@link Factory} and is used for binary serialization of
+ * {@link StateMemory} objects, e.g. {@link KState#write(DataOutput, Codec)}.
+ * <p>
+ * <b>Note:</b> Predecessors of state candidates are not part of a state candidate's binary
+ * representation, they are written and restored by the respective {@link StateMemory}.
+ *
+ * @param <C> Candidate inherits from {@link StateCandidate}.
+ * @param <T> Transition inherits from {@link StateTransition}.
+ * @param <S> Sample inherits from {@link Sample}.
+ */
+public abstract class Codec<C extends StateCandidate<C, T, S>, T extends StateTransition, S extends Sample> {
+
+    /**
+     * Writes binary representation of a {@link StateCandidate} object including its transition.
+     *
+     * @param out Output to write to.
+     * @param candidate {@link StateCandidate} object.
+     * @throws IOException thrown on write error.
+     */
+    public abstract void writeCandidate(DataOutput out, C candidate) throws IOException;
+
+    /**
+     * Reads a {@link StateCandidate} object including its transition from its binary
+     * representation.
+     *
+     * @param in Input to read from.
+     * @return {@link StateCandidate} object.
+     * @throws IOException thrown on read error or if binary representation is invalid.
+     */
+    public abstract C readCandidate(DataInput in) throws IOException;
+
+    /**
+     * Writes binary representation of a {@link Sample} object.
+     *
+     * @param out Output to write to.
+     * @param sample {@link Sample} object.
+     * @throws IOException thrown on write error.
+     */
+    public abstract void writeSample(DataOutput out, S sample) throws IOException;
+
+    /**
+     * Reads a {@link Sample} object from its binary representation.
+     *
+     * @param in Input to read from.
+     * @return {@link Sample} object.
+     * @throws IOException thrown on read error or if binary representation is invalid.
+     */
+    public abstract S readSample(DataInput in) throws IOException;
+}
@@ -13,8 +13,12 @@
 
 package com.bmwcarit.barefoot.markov;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -22,6 +26,9 @@ import org.json.JSONException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.bmwcarit.barefoot.scheduler.StaticScheduler;
+import com.bmwcarit.barefoot.scheduler.StaticScheduler.InlineScheduler;
+import com.bmwcarit.barefoot.scheduler.Task;
 import com.bmwcarit.barefoot.util.Tuple;
 
 /**
@@ -34,6 +41,78 @@ import com.bmwcarit.barefoot.util.Tuple;
  */
 public abstract class Filter<C extends StateCandidate<C, T, S>, T extends StateTransition, S extends Sample> {
     private final static Logger logger = LoggerFactory.getLogger(Filter.class);
+    private int beamWidth = 0;
+    private double beamThreshold = 0d;
+    private boolean parallel = false;
+
+    /**
+     * Gets maximum number of state candidates that are kept in a state vector, where state
+     * candidates with highest filter probability are kept (beam pruning).
+     *
+     * @return Maximum number of state candidates in a state vector, zero means unbounded.
+     */
+    public int getBeamWidth() {
+        return beamWidth;
+    }
+
+    /**
+     * Sets maximum number of state candidates that are kept in a state vector, where state
+     * candidates with highest filter probability are kept (beam pruning). Pruned state candidates
+     * are not considered as predecessors in the next filter iteration. (Default is zero, which
+     * means unbounded.)
+     *
+     * @param beamWidth Maximum number of state candidates in a state vector, zero means unbounded.
+     */
+    public void setBeamWidth(int beamWidth) {
+        this.beamWidth = beamWidth;
+    }
+
+    /**
+     * Gets threshold relative to the highest filter probability of a state vector, below which
+     * state candidates are pruned.
+     *
+     * @return Threshold relative to highest filter probability, zero means no pruning.
+     */
+    public double getBeamThreshold() {
+        return beamThreshold;
+    }
+
+    /**
+     * Sets threshold relative to the highest filter probability of a state vector, below which
+     * state candidates are pruned, e.g. 0.01 prunes all state candidates with less than 1% of the
+     * highest filter probability. (Default is zero, which means no pruning.)
+     *
+     * @param beamThreshold Threshold relative to highest filter probability, zero means no
+     *        pruning.
+     */
+    public void setBeamThreshold(double beamThreshold) {
+        this.beamThreshold = beamThreshold;
+    }
+
+    /**
+     * Indicates if transitions are evaluated in parallel by the default implementation of
+     * {@link Filter#transitions(Tuple, Tuple, TransitionMatrix)}.
+     *
+     * @return True if transitions are evaluated in parallel, false otherwise.
+     */
+    public boolean parallel() {
+        return parallel;
+    }
+
+    /**
+     * Enables or disables parallel evaluation of transitions by the default implementation of
+     * {@link Filter#transitions(Tuple, Tuple, TransitionMatrix)}, which spawns one task per
+     * predecessor state candidate with {@link StaticScheduler} and calls {@link Filter#transition}
+     * for each pair of state candidates. (Default is false.)
+     * <p>
+     * <b>Note:</b> If enabled, {@link Filter#transition} must be thread-safe, and overrides of
+     * {@link Filter#transitions(Tuple, Tuple)} are not used by the filter iteration.
+     *
+     * @param parallel True to evaluate transitions in parallel, false otherwise.
+     */
+    public void parallel(boolean parallel) {
+        this.parallel = parallel;
+    }
 
     /**
      * Gets state vector, which is a set of {@link StateCandidate} objects and with its emission
@@ -95,6 +174,89 @@ public abstract class Filter<C extends StateCandidate<C, T, S>, T extends StateT
         return map;
     }
 
+    /**
+     * Gets transitions and its transition probabilities for each pair of state candidates
+     * <i>s<sub>t</sub></i> and <i>s<sub>t-1</sub></i> as a {@link TransitionMatrix}, where rows
+     * and columns refer to predecessors and candidates by their index in the respective list.
+     * <p>
+     * <b>Note:</b> This method may be overridden for better performance, otherwise it defaults to
+     * the method {@link Filter#transitions(Tuple, Tuple)} and copies its result into the matrix, or,
+     * if {@link Filter#parallel()} is enabled, to the method {@link Filter#transition} for each
+     * pair of state candidates with one task per predecessor state candidate.
+     *
+     * @param predecessors Tuple of a list of predecessor state candidate <i>s<sub>t-1</sub></i> and
+     *        its respective measurement sample.
+     * @param candidates Tuple of a list of state candidate <i>s<sub>t</sub></i> and its respective
+     *        measurement sample.
+     * @param matrix {@link TransitionMatrix} with as many rows as predecessors and as many columns
+     *        as candidates to be filled with transitions and its transition probabilities.
+     */
+    protected void transitions(Tuple<S, List<C>> predecessors, Tuple<S, List<C>> candidates,
+            TransitionMatrix<T> matrix) {
+        if (parallel) {
+            evaluate(predecessors, candidates, matrix);
+            return;
+        }
+
+        Map<C, Map<C, Tuple<T, Double>>> transitions = transitions(
+                new Tuple<S, Set<C>>(predecessors.one(), new HashSet<>(predecessors.two())),
+                new Tuple<S, Set<C>>(candidates.one(), new HashSet<>(candidates.two())));
+
+        for (int i = 0; i < predecessors.two().size(); ++i) {
+            Map<C, Tuple<T, Double>> row = transitions.get(predecessors.two().get(i));
+
+            if (row == null) {
+                continue;
+            }
+
+            for (int j = 0; j < candidates.two().size(); ++j) {
+                Tuple<T, Double> transition = row.get(candidates.two().get(j));
+
+                if (transition != null) {
+                    matrix.set(i, j, transition.one(), transition.two());
+                }
+            }
+        }
+    }
+
+    /**
+     * Evaluates {@link Filter#transition} for each pair of state candidates in parallel, where each
+     * task fills a single row of the matrix, which doesn't require synchronization.
+     *
+     * @param predecessors Tuple of a list of predecessor state candidate <i>s<sub>t-1</sub></i> and
+     *        its respective measurement sample.
+     * @param candidates Tuple of a list of state candidate <i>s<sub>t</sub></i> and its respective
+     *        measurement sample.
+     * @param matrix {@link TransitionMatrix} to be filled with transitions and its transition
+     *        probabilities.
+     */
+    private void evaluate(final Tuple<S, List<C>> predecessors,
+            final Tuple<S, List<C>> candidates, final TransitionMatrix<T> matrix) {
+        InlineScheduler scheduler = StaticScheduler.scheduler();
+        for (int i = 0; i < predecessors.two().size(); ++i) {
+            final int row = i;
+            scheduler.spawn(new Task() {
+                @Override
+                public void run() {
+                    Tuple<S, C> predecessor =
+                            new Tuple<>(predecessors.one(), predecessors.two().get(row));
+
+                    for (int column = 0; column < candidates.two().size(); ++column) {
+                        Tuple<T, Double> transition = transition(predecessor,
+                                new Tuple<>(candidates.one(), candidates.two().get(column)));
+
+                        if (transition != null) {
+                            matrix.set(row, column, transition.one(), transition.two());
+                        }
+                    }
+                }
+            });
+        }
+        if (!scheduler.sync()) {
+            throw new RuntimeException();
+        }
+    }
+
     /**
      * Executes Hidden Markov Model (HMM) filter iteration that determines for a given measurement
      * sample <i>z<sub>t</sub></i>, which is a {@link Sample} object, and of a predecessor state
@@ -127,80 +289,99 @@ public abstract class Filter<C extends StateCandidate<C, T, S>, T extends StateT
         Set<Tuple<C, Double>> candidates = candidates(predecessors, sample);
         logger.trace("{} state candidates", candidates.size());
 
+        List<C> states = new ArrayList<>(candidates.size());
+        double[] emissions = new double[candidates.size()];
+        for (Tuple<C, Double> candidate : candidates) {
+            emissions[states.size()] = candidate.two();
+            states.add(candidate.one());
+        }
+
         double normsum = 0;
 
         if (!predecessors.isEmpty()) {
-            Set<C> states = new HashSet<>();
-            for (Tuple<C, Double> candidate : candidates) {
-                states.add(candidate.one());
+            List<C> preds = new ArrayList<>(predecessors);
+            double[] filtprobs = new double[preds.size()];
+            double[] seqprobs = new double[preds.size()];
+            for (int i = 0; i < preds.size(); ++i) {
+                filtprobs[i] = preds.get(i).filtprob();
+                seqprobs[i] = preds.get(i).seqprob();
             }
 
-            Map<C, Map<C, Tuple<T, Double>>> transitions =
-                    transitions(new Tuple<>(previous, predecessors), new Tuple<>(sample, states));
+            TransitionMatrix<T> transitions = new TransitionMatrix<>(preds.size(), states.size());
+            transitions(new Tuple<>(previous, preds), new Tuple<>(sample, states), transitions);
 
-            for (Tuple<C, Double> candidate : candidates) {
-                C candidate_ = candidate.one();
-                candidate_.seqprob(Double.NEGATIVE_INFINITY);
+            for (int j = 0; j < states.size(); ++j) {
+                C candidate = states.get(j);
+                double emission = Math.log10(emissions[j]);
+                double filtprob = candidate.filtprob();
+                double seqprob = Double.NEGATIVE_INFINITY;
+                int predecessor = -1;
 
                 if (logger.isTraceEnabled()) {
                     try {
-                        logger.trace("state candidate {} ({}) {}", candidate_.id(), candidate.two(),
-                                candidate_.toJSON().toString());
+                        logger.trace("state candidate {} ({}) {}", candidate.id(), emissions[j],
+                                candidate.toJSON().toString());
                     } catch (JSONException e) {
                         logger.trace("state candidate (not JSON parsable candidate: {})",
                                 e.getMessage());
                     }
                 }
 
-                for (C predecessor : predecessors) {
-                    Tuple<T, Double> transition = transitions.get(predecessor).get(candidate_);
+                for (int i = 0; i < preds.size(); ++i) {
+                    double transition = transitions.probability(i, j);
 
-                    if (transition == null || transition.two() == 0) {
+                    if (transition == 0) {
                         continue;
                     }
 
-                    candidate_.filtprob(
-                            candidate_.filtprob() + (transition.two() * predecessor.filtprob()));
+                    filtprob += transition * filtprobs[i];
 
-                    double seqprob = predecessor.seqprob() + Math.log10(transition.two())
-                            + Math.log10(candidate.two());
+                    double logtransition = transitions.logarithm(i, j);
+                    double seqprob_ = seqprobs[i] + logtransition + emission;
 
                     if (logger.isTraceEnabled()) {
                         try {
                             logger.trace("state transition {} -> {} ({}, {}, {}) {}",
-                                    predecessor.id(), candidate_.id(), predecessor.seqprob(),
-                                    Math.log10(transition.two()), Math.log10(candidate.two()),
-                                    transition.one().toJSON().toString());
+                                    preds.get(i).id(), candidate.id(), seqprobs[i], logtransition,
+                                    emission, transitions.transition(i, j).toJSON().toString());
                         } catch (JSONException e) {
                             logger.trace("state transition (not JSON parsable transition: {})",
                                     e.getMessage());
                         }
                     }
 
-                    if (seqprob > candidate_.seqprob()) {
-                        candidate_.predecessor(predecessor);
-                        candidate_.transition(transition.one());
-                        candidate_.seqprob(seqprob);
+                    if (seqprob_ > seqprob) {
+                        predecessor = i;
+                        seqprob = seqprob_;
                     }
                 }
 
-                if (candidate_.predecessor() != null) {
-                    logger.trace("state candidate {} -> {} ({}, {})", candidate_.predecessor().id(),
-                            candidate_.id(), candidate_.filtprob(), candidate_.seqprob());
-                } else {
-                    logger.trace("state candidate - -> {} ({}, {})", candidate_.id(),
-                            candidate_.filtprob(), candidate_.seqprob());
+                candidate.filtprob(filtprob);
+                candidate.seqprob(seqprob);
+                if (predecessor >= 0) {
+                    candidate.predecessor(preds.get(predecessor));
+                    candidate.transition(transitions.transition(predecessor, j));
                 }
 
+                if (logger.isTraceEnabled()) {
+                    if (candidate.predecessor() != null) {
+                        logger.trace("state candidate {} -> {} ({}, {})",
+                                candidate.predecessor().id(), candidate.id(),
+                                candidate.filtprob(), candidate.seqprob());
+                    } else {
+                        logger.trace("state candidate - -> {} ({}, {})", candidate.id(),
+                                candidate.filtprob(), candidate.seqprob());
+                    }
+                }
 
-                if (candidate_.filtprob() == 0) {
+                if (candidate.filtprob() == 0) {
                     continue;
                 }
 
-                candidate_.filtprob(candidate_.filtprob() * candidate.two());
-                result.add(candidate_);
+                candidate.filtprob(candidate.filtprob() * emissions[j]);
+                result.add(candidate);
 
-                normsum += candidate_.filtprob();
+                normsum += candidate.filtprob();
             }
         }
 
@@ -209,20 +390,20 @@ public abstract class Filter<C extends StateCandidate<C, T, S>, T extends StateT
         }
 
         if (result.isEmpty() || predecessors.isEmpty()) {
-            for (Tuple<C, Double> candidate : candidates) {
-                if (candidate.two() == 0) {
+            for (int j = 0; j < states.size(); ++j) {
+                if (emissions[j] == 0) {
                     continue;
                 }
-                C candidate_ = candidate.one();
-                normsum += candidate.two();
-                candidate_.filtprob(candidate.two());
-                candidate_.seqprob(Math.log10(candidate.two()));
-                result.add(candidate_);
+                C candidate = states.get(j);
+                normsum += emissions[j];
+                candidate.filtprob(emissions[j]);
+                candidate.seqprob(Math.log10(emissions[j]));
+                result.add(candidate);
 
                 if (logger.isTraceEnabled()) {
                     try {
-                        logger.trace("state candidate {} ({}) {}", candidate_.id(), candidate.two(),
-                                candidate_.toJSON().toString());
+                        logger.trace("state candidate {} ({}) {}", candidate.id(), emissions[j],
+                                candidate.toJSON().toString());
                     } catch (JSONException e) {
                         logger.trace("state candidate (not JSON parsable candidate: {})",
                                 e.getMessage());
@@ -239,7 +420,58 @@ public abstract class Filter<C extends StateCandidate<C, T, S>, T extends StateT
             candidate.filtprob(candidate.filtprob() / normsum);
         }
 
+        if (beamWidth > 0 && result.size() > beamWidth || beamThreshold > 0) {
+            result = prune(result);
+        }
+
         logger.trace("{} state candidates for state update", result.size());
         return result;
     }
+
+    /**
+     * Prunes state vector to at most beam width state candidates with highest filter probability
+     * and removes state candidates with filter probability below the beam threshold relative to
+     * the highest filter probability. Filter probabilities of remaining state candidates are
+     * normalized.
+     *
+     * @param vector State vector <i>S<sub>t</sub></i> with normalized filter probabilities.
+     * @return Pruned state vector.
+     */
+    private Set<C> prune(Set<C> vector) {
+        if (vector.isEmpty()) {
+            return vector;
+        }
+
+        List<C> candidates = new ArrayList<>(vector);
+        Collections.sort(candidates, new Comparator<C>() {
+            @Override
+            public int compare(C left, C right) {
+                return Double.compare(right.filtprob(), left.filtprob());
+            }
+        });
+
+        double threshold = candidates.get(0).filtprob() * beamThreshold;
+        int size = beamWidth > 0 ? Math.min(beamWidth, candidates.size()) : candidates.size();
+        while (size > 1 && candidates.get(size - 1).filtprob() < threshold) {
+            size -= 1;
+        }
+
+        if (size == candidates.size()) {
+            return vector;
+        }
+
+        Set<C> result = new HashSet<>();
+        double normsum = 0;
+        for (int i = 0; i < size; ++i) {
+            result.add(candidates.get(i));
+            normsum += candidates.get(i).filtprob();
+        }
+
+        for (C candidate : result) {
+            candidate.filtprob(candidate.filtprob() / normsum);
+        }
+
+        logger.trace("{} state candidates pruned", candidates.size() - size);
+        return result;
+    }
 }
@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2015, BMW Car IT GmbH
+ *
+ * Author: Sebastian Mattheis <sebastian.mattheis@bmw-carit.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.bmwcarit.barefoot.markov;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Fixed-lag state memory for online HMM inference, which publishes the most likely state
+ * candidates of measurement samples as soon as they are final and releases them from memory.
+ * <p>
+ * A state candidate is final if all state candidates of the most recent state vector descend from
+ * it, i.e. the most likely sequences of all state candidates converged. Hence, published state
+ * candidates equal the respective part of {@link KState#sequence()} of an unbounded {@link KState}.
+ * If a measurement sample is not final after <i>lag</i> subsequent samples, the decision is forced
+ * by publishing the ancestor of the current estimate and removing all state candidates that do not
+ * descend from it.
+ *
+ * @param <C> Candidate inherits from {@link StateCandidate}.
+ * @param <T> Transition inherits from {@link StateTransition}.
+ * @param <S> Sample inherits from {@link Sample}.
+ */
+public class FixedLagState<C extends StateCandidate<C, T, S>, T extends StateTransition, S extends Sample>
+        extends KState<C, T, S> {
+    private final int lag;
+    private final Publisher<C, S> publisher;
+
+    /**
+     * Publisher of final state candidates.
+     *
+     * @param <C> Candidate inherits from {@link StateCandidate}.
+     * @param <S> Sample inherits from {@link Sample}.
+     */
+    public static interface Publisher<C, S> {
+        /**
+         * Publishes final state candidate of a measurement sample, which is called in the order of
+         * measurement samples.
+         *
+         * @param sample Measurement sample.
+         * @param candidate Final state candidate of the measurement sample, where its transition,
+         *        if any, refers to the previously published state candidate.
+         */
+        public abstract void publish(S sample, C candidate);
+    }
+
+    /**
+     * Creates an empty {@link FixedLagState} object.
+     *
+     * @param lag Maximum number of subsequent measurement samples before the decision for a
+     *        measurement sample is forced, if <i>lag &ge; 0</i>, otherwise it waits for
+     *        convergence without bound.
+     * @param publisher {@link Publisher} of final state candidates.
+     */
+    public FixedLagState(int lag, Publisher<C, S> publisher) {
+        super(-1, -1);
+        this.lag = lag;
+        this.publisher = publisher;
+    }
+
+    /**
+     * Gets maximum number of subsequent measurement samples before the decision for a measurement
+     * sample is forced.
+     *
+     * @return Maximum lag, or negative if unbounded.
+     */
+    public int lag() {
+        return lag;
+    }
+
+    @Override
+    public void update(Set<C> vector, S sample) {
+        super.update(vector, sample);
+
+        while (lag >= 0 && length() > lag + 1) {
+            force();
+        }
+
+        // State candidates of a state vector always have successors, hence all state vectors prior
+        // to a state vector with a single state candidate have a single state candidate as well.
+        while (length() > 1 && vectorAt(0).size() == 1) {
+            publish();
+        }
+    }
+
+    /**
+     * Publishes all remaining state candidates of the most likely sequence and releases them from
+     * memory, e.g. at the end of a trip.
+     */
+    public void flush() {
+        if (length() == 0) {
+            return;
+        }
+
+        List<C> sequence = sequence();
+        for (C candidate : sequence) {
+            S sample = sampleAt(0);
+            release();
+            publisher.publish(sample, candidate);
+        }
+
+        assert (length() == 0 && isEmpty());
+    }
+
+    /**
+     * Publishes the single state candidate of the oldest state vector and releases it.
+     */
+    private void publish() {
+        S sample = sampleAt(0);
+        C candidate = vectorAt(0).iterator().next();
+        release();
+        publisher.publish(sample, candidate);
+    }
+
+    /**
+     * Forces decision for the oldest state vector by removing all state candidates of the most
+     * recent state vector that do not descend from the ancestor of the estimate, which removes
+     * their ancestors as well, see {@link KState#remove(StateCandidate, int)}.
+     */
+    private void force() {
+        int last = length() - 1;
+        C root = ancestor(estimate(), last);
+
+        List<C> deletes = new ArrayList<>();
+        for (C candidate : vectorAt(last)) {
+            if (ancestor(candidate, last) != root) {
+                deletes.add(candidate);
+            }
+        }
+
+        for (C candidate : deletes) {
+            remove(candidate, last);
+        }
+
+        assert (vectorAt(0).size() == 1);
+        publish();
+    }
+
+    private C ancestor(C candidate, int depth) {
+        for (int i = 0; i < depth && candidate.predecessor() != null; ++i) {
+            candidate = candidate.predecessor();
+        }
+        return candidate;
+    }
+}
@@ -13,11 +13,14 @@
 
 package com.bmwcarit.barefoot.markov;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -31,6 +34,12 @@ import com.bmwcarit.barefoot.util.Tuple;
 
 /**
  * <i>k</i>-State data structure for organizing state memory in HMM inference.
+ * <p>
+ * <b>Note:</b> The sequence of state vectors is kept in a ring buffer, which has fixed capacity if
+ * <i>&kappa; &ge; 0</i> and grows otherwise (or if it is read from a binary representation with
+ * its own <i>&kappa;</i>), and each state candidate has a reference counter that counts its
+ * successors. Hence, window trimming and pruning of state candidates without
+ * successors takes time proportional to the number of removed state candidates.
  *
  * @param <C> Candidate inherits from {@link StateCandidate}.
  * @param <T> Transition inherits from {@link StateTransition}.
@@ -38,19 +47,31 @@ import com.bmwcarit.barefoot.util.Tuple;
  */
 public class KState<C extends StateCandidate<C, T, S>, T extends StateTransition, S extends Sample>
         extends StateMemory<C, T, S> {
+    private final static int VERSION = 1;
     private final int k;
     private final long t;
-    private final LinkedList<Tuple<Set<C>, S>> sequence;
-    private final Map<C, Integer> counters;
+    private final Map<C, Counter> counters;
+    private Object[] vectors;
+    private Object[] samples;
+    private int first = 0;
+    private int length = 0;
+
+    /**
+     * Reference counter of a state candidate, which is the number of its successors.
+     */
+    private static class Counter {
+        int count;
+
+        Counter(int count) {
+            this.count = count;
+        }
+    }
 
     /**
      * Creates empty {@link KState} object with default parameters, i.e. capacity is unbounded.
      */
     public KState() {
-        this.k = -1;
-        this.t = -1;
-        this.sequence = new LinkedList<>();
-        this.counters = new HashMap<>();
+        this(-1, -1);
     }
 
     /**
@@ -61,10 +82,7 @@ public class KState<C extends StateCandidate<C, T, S>, T extends StateTransition
      * @throws JSONException thrown on JSON extraction or parsing error.
      */
     public KState(JSONObject json, Factory<C, T, S> factory) throws JSONException {
-        this.k = json.getInt("k");
-        this.t = json.getLong("t");
-        this.sequence = new LinkedList<>();
-        this.counters = new HashMap<>();
+        this(json.getInt("k"), json.getLong("t"));
 
         Map<String, C> candidates = new HashMap<>();
         JSONArray jsoncandidates = json.getJSONArray("candidates");
@@ -73,10 +91,11 @@ public class KState<C extends StateCandidate<C, T, S>, T extends StateTransition
             C candidate = factory.candidate(jsoncandidate.getJSONObject("candidate"));
             int count = jsoncandidate.getInt("count");
 
-            counters.put(candidate, count);
+            counters.put(candidate, new Counter(count));
             candidates.put(candidate.id(), candidate);
         }
 
+        List<Tuple<Set<C>, S>> sequence = new ArrayList<>();
         JSONArray jsonsequence = json.getJSONArray("sequence");
         for (int i = 0; i < jsonsequence.length(); ++i) {
             JSONObject jsonseqelement = jsonsequence.getJSONObject(i);
@@ -115,6 +134,128 @@ public class KState<C extends StateCandidate<C, T, S>, T extends StateTransition
                 return 0;
             }
         });
+
+        for (Tuple<Set<C>, S> element : sequence) {
+            append(element.one(), element.two());
+        }
+    }
+
+    /**
+     * Creates a {@link KState} object from its binary representation, see
+     * {@link KState#write(DataOutput, Codec)}.
+     *
+     * @param in Input to read binary representation of a {@link KState} object from.
+     * @param codec Codec for reading state candidates, transitions and samples.
+     * @throws IOException thrown on read error or if binary representation is invalid or has
+     *         another version.
+     */
+    public KState(DataInput in, Codec<C, T, S> codec) throws IOException {
+        this(readHeader(in), in.readLong(), 16);
+        read(in, codec);
+    }
+
+    /**
+     * Creates a {@link KState} object from its binary representation, see
+     * {@link KState#write(DataOutput, Codec)}, where <i>&kappa;</i> and <i>&tau;</i> parameters
+     * of the binary representation are replaced and the state sequence is trimmed accordingly,
+     * e.g. if the binary representation is provided by an untrusted source.
+     *
+     * @param in Input to read binary representation of a {@link KState} object from.
+     * @param codec Codec for reading state candidates, transitions and samples.
+     * @param k <i>&kappa;</i> parameter bounds the length of the state sequence to at most
+     *        <i>&kappa;+1</i> states, if <i>&kappa; &ge; 0</i>.
+     * @param t <i>&tau;</i> parameter bounds length of the state sequence to contain only states
+     *        for the past <i>&tau;</i> milliseconds.
+     * @throws IOException thrown on read error or if binary representation is invalid or has
+     *         another version.
+     */
+    public KState(DataInput in, Codec<C, T, S> codec, int k, long t) throws IOException {
+        this(k, t);
+        readHeader(in);
+        in.readLong();
+        read(in, codec);
+    }
+
+    private static int readHeader(DataInput in) throws IOException {
+        int version = in.readUnsignedByte();
+        if (version != VERSION) {
+            throw new IOException("unsupported binary version " + version + " of KState object");
+        }
+        return in.readInt();
+    }
+
+    private static int readCount(DataInput in) throws IOException {
+        int count = in.readInt();
+        if (count < 0) {
+            throw new IOException("inconsistent binary of KState object");
+        }
+        return count;
+    }
+
+    /**
+     * Reads state candidates and sequence of the binary representation, where lists grow with the
+     * elements actually read, i.e. counts of the binary representation are not used to allocate
+     * memory in advance. Since binary representations may be provided by untrusted sources, each
+     * state candidate must be in exactly one state vector with its predecessor in the previous
+     * state vector, and reference counters are recomputed from predecessors.
+     */
+    private void read(DataInput in, Codec<C, T, S> codec) throws IOException {
+        int size = readCount(in);
+        List<C> candidates = new ArrayList<>();
+        for (int i = 0; i < size; ++i) {
+            C candidate = codec.readCandidate(in);
+            in.readInt(); // Reference counter is recomputed.
+            candidates.add(candidate);
+        }
+
+        boolean[] contained = new boolean[size];
+        Set<C> previous = null;
+        int length = readCount(in);
+        for (int i = 0; i < length; ++i) {
+            S sample = codec.readSample(in);
+            int count = readCount(in);
+            Set<C> vector = new HashSet<>();
+            for (int j = 0; j < count; ++j) {
+                int candid = in.readInt(), predid = in.readInt();
+
+                if (candid < 0 || candid >= size || contained[candid] || predid < -1
+                        || predid >= size) {
+                    throw new IOException("inconsistent binary of KState object");
+                }
+
+                C candidate = candidates.get(candid);
+                C predecessor = predid == -1 ? null : candidates.get(predid);
+
+                if (previous == null ? predecessor != null
+                        : predecessor == null || !previous.contains(predecessor)) {
+                    throw new IOException("inconsistent binary of KState object");
+                }
+
+                contained[candid] = true;
+                candidate.predecessor(predecessor);
+                counters.put(candidate, new Counter(0));
+                if (predecessor != null) {
+                    counters.get(predecessor).count += 1;
+                }
+                vector.add(candidate);
+            }
+
+            if (vector.isEmpty()
+                    || this.length > 0 && sampleAt(this.length - 1).time() > sample.time()) {
+                throw new IOException("inconsistent binary of KState object");
+            }
+            append(vector, sample);
+            previous = vector;
+        }
+
+        if (counters.size() != size) {
+            throw new IOException("inconsistent binary of KState object");
+        }
+
+        while (this.length > 0 && ((t > 0 && sample().time() - sampleAt(0).time() > t)
+                || (k >= 0 && this.length > k + 1))) {
+            release();
+        }
     }
 
     /**
@@ -126,10 +267,94 @@ public class KState<C extends StateCandidate<C, T, S>, T extends StateTransition
      *        for the past <i>&tau;</i> milliseconds.
      */
     public KState(int k, long t) {
+        this(k, t, k >= 0 ? k + 2 : 16);
+    }
+
+    private KState(int k, long t, int capacity) {
         this.k = k;
         this.t = t;
-        this.sequence = new LinkedList<>();
         this.counters = new HashMap<>();
+        this.vectors = new Object[capacity];
+        this.samples = new Object[capacity];
+    }
+
+    /**
+     * Gets length of the sequence, i.e. the number of state vectors.
+     *
+     * @return Number of state vectors in the sequence.
+     */
+    protected int length() {
+        return length;
+    }
+
+    /**
+     * Gets state vector at some position of the sequence.
+     *
+     * @param index Position in the sequence, where zero is the oldest state vector.
+     * @return State vector at the position.
+     */
+    @SuppressWarnings("unchecked")
+    protected Set<C> vectorAt(int index) {
+        return (Set<C>) vectors[(first + index) % vectors.length];
+    }
+
+    /**
+     * Gets measurement sample at some position of the sequence.
+     *
+     * @param index Position in the sequence, where zero is the oldest measurement sample.
+     * @return Measurement sample at the position.
+     */
+    @SuppressWarnings("unchecked")
+    protected S sampleAt(int index) {
+        return (S) samples[(first + index) % samples.length];
+    }
+
+    /**
+     * Appends state vector and measurement sample to the end of the sequence, where the ring
+     * buffer's capacity is doubled if it is full.
+     *
+     * @param vector State vector.
+     * @param sample Measurement sample.
+     */
+    private void append(Set<C> vector, S sample) {
+        if (length == vectors.length) {
+            Object[] vectors = new Object[2 * length], samples = new Object[2 * length];
+            for (int i = 0; i < length; ++i) {
+                vectors[i] = this.vectors[(first + i) % length];
+                samples[i] = this.samples[(first + i) % length];
+            }
+            this.vectors = vectors;
+            this.samples = samples;
+            this.first = 0;
+        }
+
+        int last = (first + length) % vectors.length;
+        vectors[last] = vector;
+        samples[last] = sample;
+        length += 1;
+    }
+
+    /**
+     * Removes the oldest state vector and its measurement sample from the sequence, where state
+     * candidates of the next state vector lose their predecessor.
+     */
+    @SuppressWarnings("unchecked")
+    protected void release() {
+        Set<C> vector = (Set<C>) vectors[first];
+        vectors[first] = null;
+        samples[first] = null;
+        first = (first + 1) % vectors.length;
+        length -= 1;
+
+        for (C candidate : vector) {
+            counters.remove(candidate);
+        }
+
+        if (length > 0) {
+            for (C candidate : vectorAt(0)) {
+                candidate.predecessor(null);
+            }
+        }
     }
 
     @Override
@@ -144,19 +369,19 @@ public class KState<C extends StateCandidate<C, T, S>, T extends StateTransition
 
     @Override
     public Long time() {
-        if (sequence.isEmpty()) {
+        if (length == 0) {
             return null;
         } else {
-            return sequence.peekLast().two().time();
+            return sampleAt(length - 1).time();
         }
     }
 
     @Override
     public S sample() {
-        if (sequence.isEmpty()) {
+        if (length == 0) {
             return null;
         } else {
-            return sequence.peekLast().two();
+            return sampleAt(length - 1);
         }
     }
 
@@ -166,73 +391,80 @@ public class KState<C extends StateCandidate<C, T, S>, T extends StateTransition
      * @return List with the sequence of measurements.
      */
     public List<S> samples() {
-        LinkedList<S> samples = new LinkedList<>();
-        for (Tuple<Set<C>, S> element : sequence) {
-            samples.add(element.two());
+        List<S> samples = new ArrayList<>(length);
+        for (int i = 0; i < length; ++i) {
+            samples.add(sampleAt(i));
         }
         return samples;
     }
 
+    /**
+     * Gets the sequence of candidate vectors <i>S<sub>0</sub>, S<sub>1</sub>, ...,
+     * S<sub>t</sub></i>, which corresponds to the sequence of measurements, see
+     * {@link KState#samples()}.
+     *
+     * @return List with the sequence of candidate vectors.
+     */
+    public List<Set<C>> vectors() {
+        List<Set<C>> vectors = new ArrayList<>(length);
+        for (int i = 0; i < length; ++i) {
+            vectors.add(vectorAt(i));
+        }
+        return vectors;
+    }
+
     @Override
     public void update(Set<C> vector, S sample) {
         if (vector.isEmpty()) {
             return;
         }
 
-        if (!sequence.isEmpty() && sequence.peekLast().two().time() > sample.time()) {
+        if (length > 0 && sampleAt(length - 1).time() > sample.time()) {
             throw new RuntimeException("out-of-order state update is prohibited");
         }
 
         C estimate = estimate();
         for (C candidate : vector) {
-            counters.put(candidate, 0);
+            counters.put(candidate, new Counter(0));
             if (candidate.predecessor() == null) {
                 candidate.predecessor(estimate);
             }
             if (candidate.predecessor() != null) {
-                if (!counters.containsKey(candidate.predecessor())
-                        || !sequence.peekLast().one().contains(candidate.predecessor())) {
+                Counter counter = counters.get(candidate.predecessor());
+                if (counter == null || !vectorAt(length - 1).contains(candidate.predecessor())) {
                     throw new RuntimeException("inconsistent update vector");
                 }
-                counters.put(candidate.predecessor(), counters.get(candidate.predecessor()) + 1);
+                counter.count += 1;
             }
         }
 
-        if (!sequence.isEmpty()) {
-            Tuple<Set<C>, S> last = sequence.peekLast();
-            Set<C> deletes = new HashSet<>();
+        if (length > 0) {
+            Set<C> last = vectorAt(length - 1);
+            List<C> deletes = new ArrayList<>();
 
-            for (C candidate : last.one()) {
-                if (counters.get(candidate) == 0) {
+            for (C candidate : last) {
+                if (counters.get(candidate).count == 0) {
                     deletes.add(candidate);
                 }
             }
 
             for (C candidate : deletes) {
-                remove(candidate, sequence.size() - 1);
+                remove(candidate, length - 1);
             }
         }
 
-        sequence.add(new Tuple<>(vector, sample));
-
-        while ((t > 0 && sample.time() - sequence.peekFirst().two().time() > t)
-                || (k >= 0 && sequence.size() > k + 1)) {
-            Set<C> deletes = sequence.removeFirst().one();
-            for (C candidate : deletes) {
-                counters.remove(candidate);
-            }
+        append(vector, sample);
 
-            for (C candidate : sequence.peekFirst().one()) {
-                candidate.predecessor(null);
-            }
+        while ((t > 0 && sample.time() - sampleAt(0).time() > t) || (k >= 0 && length > k + 1)) {
+            release();
         }
 
-        assert (k < 0 || sequence.size() <= k + 1);
+        assert (k < 0 || length <= k + 1);
     }
 
     protected void remove(C candidate, int index) {
         while (index >= 0) {
-            Set<C> vector = sequence.get(index).one();
+            Set<C> vector = vectorAt(index);
             counters.remove(candidate);
             vector.remove(candidate);
 
@@ -241,9 +473,10 @@ public class KState<C extends StateCandidate<C, T, S>, T extends StateTransition
                 return;
             }
 
-            counters.put(predecessor, counters.get(predecessor) - 1);
+            Counter counter = counters.get(predecessor);
+            counter.count -= 1;
 
-            if (counters.get(predecessor) == 0) {
+            if (counter.count == 0) {
                 candidate = predecessor;
                 index -= 1;
             } else {
@@ -254,21 +487,21 @@ public class KState<C extends StateCandidate<C, T, S>, T extends StateTransition
 
     @Override
     public Set<C> vector() {
-        if (sequence.isEmpty()) {
+        if (length == 0) {
             return new HashSet<>();
         } else {
-            return sequence.peekLast().one();
+            return vectorAt(length - 1);
         }
     }
 
     @Override
     public C estimate() {
-        if (sequence.isEmpty()) {
+        if (length == 0) {
             return null;
         }
 
         C estimate = null;
-        for (C candidate : sequence.peekLast().one()) {
+        for (C candidate : vectorAt(length - 1)) {
             if (estimate == null || candidate.filtprob() > estimate.filtprob()) {
                 estimate = candidate;
             }
@@ -283,20 +516,19 @@ public class KState<C extends StateCandidate<C, T, S>, T extends StateTransition
      * @return List of the most likely sequence of state candidates.
      */
     public List<C> sequence() {
-        if (sequence.isEmpty()) {
+        if (length == 0) {
             return null;
         }
 
         C kestimate = estimate();
-        LinkedList<C> ksequence = new LinkedList<>();
+        List<C> ksequence = new ArrayList<>(length);
 
-        for (int i = sequence.size() - 1; i >= 0; --i) {
-            if (kestimate != null) {
-                ksequence.push(kestimate);
-                kestimate = kestimate.predecessor();
-            }
+        for (int i = length - 1; i >= 0 && kestimate != null; --i) {
+            ksequence.add(kestimate);
+            kestimate = kestimate.predecessor();
         }
 
+        Collections.reverse(ksequence);
         return ksequence;
     }
 
@@ -304,10 +536,10 @@ public class KState<C extends StateCandidate<C, T, S>, T extends StateTransition
     public JSONObject toJSON() throws JSONException {
         JSONObject json = new JSONObject();
         JSONArray jsonsequence = new JSONArray();
-        for (Tuple<Set<C>, S> element : sequence) {
+        for (int i = 0; i < length; ++i) {
             JSONObject jsonseqelement = new JSONObject();
             JSONArray jsonvector = new JSONArray();
-            for (C candidate : element.one()) {
+            for (C candidate : vectorAt(i)) {
                 JSONObject jsoncandidate = new JSONObject();
                 jsoncandidate.put("candid", candidate.id());
                 jsoncandidate.put("predid",
@@ -315,15 +547,15 @@ public class KState<C extends StateCandidate<C, T, S>, T extends StateTransition
                 jsonvector.put(jsoncandidate);
             }
             jsonseqelement.put("vector", jsonvector);
-            jsonseqelement.put("sample", element.two().toJSON());
+            jsonseqelement.put("sample", sampleAt(i).toJSON());
             jsonsequence.put(jsonseqelement);
         }
 
         JSONArray jsoncandidates = new JSONArray();
-        for (Entry<C, Integer> entry : counters.entrySet()) {
+        for (Entry<C, Counter> entry : counters.entrySet()) {
             JSONObject jsoncandidate = new JSONObject();
             jsoncandidate.put("candidate", entry.getKey().toJSON());
-            jsoncandidate.put("count", entry.getValue());
+            jsoncandidate.put("count", entry.getValue().count);
             jsoncandidates.put(jsoncandidate);
         }
         json.put("k", k);
@@ -333,4 +565,39 @@ public class KState<C extends StateCandidate<C, T, S>, T extends StateTransition
 
         return json;
     }
+
+    /**
+     * Writes compact binary representation of the {@link KState} object, which is versioned and
+     * refers to state candidates by their index instead of their identifier. It can be read with
+     * {@link KState#KState(DataInput, Codec)}.
+     *
+     * @param out Output to write binary representation to.
+     * @param codec Codec for writing state candidates, transitions and samples.
+     * @throws IOException thrown on write error.
+     */
+    public void write(DataOutput out, Codec<C, T, S> codec) throws IOException {
+        out.writeByte(VERSION);
+        out.writeInt(k);
+        out.writeLong(t);
+
+        Map<C, Integer> indices = new HashMap<>();
+        out.writeInt(counters.size());
+        for (Entry<C, Counter> entry : counters.entrySet()) {
+            codec.writeCandidate(out, entry.getKey());
+            out.writeInt(entry.getValue().count);
+            indices.put(entry.getKey(), indices.size());
+        }
+
+        out.writeInt(length);
+        for (int i = 0; i < length; ++i) {
+            codec.writeSample(out, sampleAt(i));
+            Set<C> vector = vectorAt(i);
+            out.writeInt(vector.size());
+            for (C candidate : vector) {
+                out.writeInt(indices.get(candidate));
+                out.writeInt(candidate.predecessor() == null ? -1
+                        : indices.get(candidate.predecessor()));
+            }
+        }
+    }
 }
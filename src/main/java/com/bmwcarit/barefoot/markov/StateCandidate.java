@@ -14,6 +14,7 @@
 package com.bmwcarit.barefoot.markov;
 
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -27,17 +28,48 @@ import org.json.JSONObject;
  * @param <S> Sample inherits from {@link Sample}.
  */
 public class StateCandidate<C extends StateCandidate<C, T, S>, T extends StateTransition, S extends Sample> {
-    private final String id;
+    private final static String prefix =
+            Long.toHexString(UUID.randomUUID().getMostSignificantBits()) + "-";
+    private final static int block = 1 << 16;
+    private final static AtomicLong blocks = new AtomicLong();
+    private final static ThreadLocal<Serials> serials = new ThreadLocal<Serials>() {
+        @Override
+        protected Serials initialValue() {
+            return new Serials();
+        }
+    };
+    private final long serial;
+    private String id;
     private C predecessor = null;
     private T transition = null;
     private double seqprob = 0d;
     private double filtprob = 0d;
 
     /**
-     * Creates a {@link StateCandidate} object and generates a random UUID.
+     * Per-thread range of serial numbers, which is a block of serial numbers reserved exclusively
+     * for one thread, such that threads only synchronize when reserving a new block.
+     */
+    private static final class Serials {
+        private long next = 0, limit = 0;
+
+        private long next() {
+            if (next == limit) {
+                next = blocks.getAndIncrement() * block;
+                limit = next + block;
+            }
+            return next++;
+        }
+    }
+
+    /**
+     * Creates a {@link StateCandidate} object with a generated identifier, which consists of a
+     * random per-process prefix and a serial number unique in the process. Serial numbers are drawn
+     * from per-thread blocks and are, hence, monotonic per thread only. The identifier is rendered
+     * as string only if requested, e.g. for JSON export.
      */
     public StateCandidate() {
-        id = UUID.randomUUID().toString();
+        serial = serials.get().next();
+        id = null;
     }
 
     /**
@@ -46,6 +78,7 @@ public class StateCandidate<C extends StateCandidate<C, T, S>, T extends StateTr
      * @param id Object identifier (should be unique in {@link StateMemory} context).
      */
     public StateCandidate(String id) {
+        this.serial = -1;
         this.id = id;
     }
 
@@ -57,6 +90,7 @@ public class StateCandidate<C extends StateCandidate<C, T, S>, T extends StateTr
      * @throws JSONException thrown on JSON extraction or parsing error.
      */
     public StateCandidate(JSONObject json, Factory<C, T, S> factory) throws JSONException {
+        serial = -1;
         id = json.getString("id");
         JSONObject jsontrans = json.optJSONObject("transition");
         if (jsontrans != null) {
@@ -74,6 +108,10 @@ public class StateCandidate<C extends StateCandidate<C, T, S>, T extends StateTr
      * @return Identifier of state candidate.
      */
     public String id() {
+        if (id == null) {
+            // Racy but safe, as it always renders the same immutable string.
+            id = prefix + Long.toHexString(serial);
+        }
         return id;
     }
 
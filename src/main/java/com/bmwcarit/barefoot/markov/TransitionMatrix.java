@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2015, BMW Car IT GmbH
+ *
+ * Author: Sebastian Mattheis <sebastian.mattheis@bmw-carit.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.bmwcarit.barefoot.markov;
+
+/**
+ * Dense matrix of transitions and its transition probabilities between state candidates
+ * <i>s<sub>t-1</sub> &#8712; S<sub>t-1</sub></i> (rows) and <i>s<sub>t</sub> &#8712;
+ * S<sub>t</sub></i> (columns), where state candidates are referred to by their index in the
+ * respective state vector. A transition probability of zero means there is no transition.
+ * <p>
+ * Transition probabilities are held in linear space, for the filter probability which is a sum
+ * over predecessors, and in log space, for the sequence probability which is a maximum over
+ * predecessors. The logarithm is computed on setting, i.e. by the task that fills a row, which
+ * keeps it out of the sequential filter iteration.
+ *
+ * @param <T> Transition inherits from {@link StateTransition}.
+ */
+public class TransitionMatrix<T extends StateTransition> {
+    private final int rows;
+    private final int columns;
+    private final double[] probabilities;
+    private final double[] logarithms;
+    private final Object[] transitions;
+
+    /**
+     * Creates an empty {@link TransitionMatrix}, i.e. all transition probabilities are zero.
+     *
+     * @param rows Number of rows, i.e. number of predecessor state candidates.
+     * @param columns Number of columns, i.e. number of state candidates.
+     */
+    public TransitionMatrix(int rows, int columns) {
+        this.rows = rows;
+        this.columns = columns;
+        this.probabilities = new double[rows * columns];
+        this.logarithms = new double[rows * columns];
+        this.transitions = new Object[rows * columns];
+    }
+
+    /**
+     * Gets number of rows, i.e. number of predecessor state candidates.
+     *
+     * @return Number of rows.
+     */
+    public int rows() {
+        return rows;
+    }
+
+    /**
+     * Gets number of columns, i.e. number of state candidates.
+     *
+     * @return Number of columns.
+     */
+    public int columns() {
+        return columns;
+    }
+
+    /**
+     * Sets transition and transition probability of a pair of state candidates.
+     * <p>
+     * <b>Note:</b> Distinct rows may be set concurrently, e.g. by one task per predecessor.
+     *
+     * @param row Index of predecessor state candidate <i>s<sub>t-1</sub></i>.
+     * @param column Index of state candidate <i>s<sub>t</sub></i>.
+     * @param transition Transition from <i>s<sub>t-1</sub></i> to <i>s<sub>t</sub></i>.
+     * @param probability Transition probability.
+     */
+    public void set(int row, int column, T transition, double probability) {
+        transitions[row * columns + column] = transition;
+        probabilities[row * columns + column] = probability;
+        logarithms[row * columns + column] = Math.log10(probability);
+    }
+
+    /**
+     * Gets transition of a pair of state candidates.
+     *
+     * @param row Index of predecessor state candidate <i>s<sub>t-1</sub></i>.
+     * @param column Index of state candidate <i>s<sub>t</sub></i>.
+     * @return Transition from <i>s<sub>t-1</sub></i> to <i>s<sub>t</sub></i>, or null if there is
+     *         no transition.
+     */
+    @SuppressWarnings("unchecked")
+    public T transition(int row, int column) {
+        return (T) transitions[row * columns + column];
+    }
+
+    /**
+     * Gets transition probability of a pair of state candidates.
+     *
+     * @param row Index of predecessor state candidate <i>s<sub>t-1</sub></i>.
+     * @param column Index of state candidate <i>s<sub>t</sub></i>.
+     * @return Transition probability from <i>s<sub>t-1</sub></i> to <i>s<sub>t</sub></i>, which is
+     *         zero if there is no transition.
+     */
+    public double probability(int row, int column) {
+        return probabilities[row * columns + column];
+    }
+
+    /**
+     * Gets logarithm (base 10) of transition probability of a pair of state candidates.
+     *
+     * @param row Index of predecessor state candidate <i>s<sub>t-1</sub></i>.
+     * @param column Index of state candidate <i>s<sub>t</sub></i>.
+     * @return Logarithm of transition probability from <i>s<sub>t-1</sub></i> to
+     *         <i>s<sub>t</sub></i>, which is undefined if there is no transition, see
+     *         {@link TransitionMatrix#probability(int, int)}.
+     */
+    public double logarithm(int row, int column) {
+        return logarithms[row * columns + column];
+    }
+}
@@ -0,0 +1,383 @@
+/*
+ * Copyright (C) 2015, BMW Car IT GmbH
+ *
+ * Author: Sebastian Mattheis <sebastian.mattheis@bmw-carit.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.bmwcarit.barefoot.matcher;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.bmwcarit.barefoot.roadmap.Road;
+import com.bmwcarit.barefoot.roadmap.RoadMap;
+import com.bmwcarit.barefoot.roadmap.RoadPoint;
+import com.bmwcarit.barefoot.roadmap.Route;
+import com.bmwcarit.barefoot.spatial.SpatialOperator;
+import com.esri.core.geometry.Point;
+import com.esri.core.geometry.Polyline;
+
+/**
+ * Decimation of a sequence of samples, {@link MatcherSample} objects, for offline map matching,
+ * which removes samples that are redundant given their neighbors, i.e. samples of a segment with
+ * constant heading and speed, that is straight within a tolerance. Samples with a change of
+ * direction or speed and samples in the area of junctions, i.e. vertices with more than two
+ * incident roads, are always kept.
+ * <p>
+ * Removed samples are reattached to the matching of the decimated sequence by projection onto
+ * matched routes, see {@link Decimator#reattach(MatcherKState, List)}, which gives a matching with
+ * the density of the original sequence of samples.
+ */
+public class Decimator {
+    private static final Logger logger = LoggerFactory.getLogger(Decimator.class);
+    private final RoadMap map;
+    private final SpatialOperator spatial;
+    private double tolerance = 10;
+    private double heading = 15;
+    private double speed = 3;
+    private double span = 500;
+    private double junction = 50;
+
+    /**
+     * Creates a {@link Decimator} object.
+     *
+     * @param map {@link RoadMap} object of the map to be matched with.
+     * @param spatial {@link SpatialOperator} object for spatial operations.
+     */
+    public Decimator(RoadMap map, SpatialOperator spatial) {
+        this.map = map;
+        this.spatial = spatial;
+    }
+
+    /**
+     * Gets maximum distance of removed samples from the straight line between kept samples in
+     * meters.
+     *
+     * @return Maximum distance of removed samples from the straight line between kept samples in
+     *         meters.
+     */
+    public double getTolerance() {
+        return tolerance;
+    }
+
+    /**
+     * Sets maximum distance of removed samples from the straight line between kept samples in
+     * meters (default: 10), which should be about the standard deviation of position measurements,
+     * see {@link Matcher#setSigma(double)}.
+     *
+     * @param tolerance Maximum distance of removed samples from the straight line between kept
+     *        samples in meters.
+     */
+    public void setTolerance(double tolerance) {
+        this.tolerance = tolerance;
+    }
+
+    /**
+     * Gets maximum change of heading in degrees of a removed sample.
+     *
+     * @return Maximum change of heading in degrees of a removed sample.
+     */
+    public double getMaxHeading() {
+        return heading;
+    }
+
+    /**
+     * Sets maximum change of heading in degrees of a removed sample (default: 15).
+     *
+     * @param heading Maximum change of heading in degrees of a removed sample.
+     */
+    public void setMaxHeading(double heading) {
+        this.heading = heading;
+    }
+
+    /**
+     * Gets maximum change of speed in meters per second of a removed sample.
+     *
+     * @return Maximum change of speed in meters per second of a removed sample.
+     */
+    public double getMaxSpeed() {
+        return speed;
+    }
+
+    /**
+     * Sets maximum change of speed in meters per second of a removed sample (default: 3).
+     *
+     * @param speed Maximum change of speed in meters per second of a removed sample.
+     */
+    public void setMaxSpeed(double speed) {
+        this.speed = speed;
+    }
+
+    /**
+     * Gets maximum distance between subsequent kept samples in meters.
+     *
+     * @return Maximum distance between subsequent kept samples in meters.
+     */
+    public double getMaxSpan() {
+        return span;
+    }
+
+    /**
+     * Sets maximum distance between subsequent kept samples in meters (default: 500), which bounds
+     * the length of routes to be searched in matching of the decimated sequence.
+     *
+     * @param span Maximum distance between subsequent kept samples in meters.
+     */
+    public void setMaxSpan(double span) {
+        this.span = span;
+    }
+
+    /**
+     * Gets radius in meters around junctions where all samples are kept.
+     *
+     * @return Radius in meters around junctions where all samples are kept.
+     */
+    public double getJunctionRadius() {
+        return junction;
+    }
+
+    /**
+     * Sets radius in meters around junctions where all samples are kept (default: 50).
+     *
+     * @param junction Radius in meters around junctions where all samples are kept.
+     */
+    public void setJunctionRadius(double junction) {
+        this.junction = junction;
+    }
+
+    private static double deviation(double left, double right) {
+        double delta = Math.abs(left - right) % 360;
+        return Math.min(delta, 360 - delta);
+    }
+
+    private double distance(Point a, Point b, Point c) {
+        if (spatial.distance(a, b) < 1E-3) {
+            return spatial.distance(a, c);
+        }
+        double f = Math.max(0, Math.min(1, spatial.intercept(a, b, c)));
+        return spatial.distance(spatial.interpolate(a, b, f), c);
+    }
+
+    private boolean junction(Point point) {
+        Map<Long, Set<Long>> vertices = new HashMap<>();
+
+        for (RoadPoint candidate : map.spatial().radius(point, junction)) {
+            Road road = candidate.edge();
+            Polyline geometry = road.geometry();
+            long[] ids = new long[] {road.source(), road.target()};
+            Point[] ends = new Point[] {geometry.getPoint(0),
+                    geometry.getPoint(geometry.getPointCount() - 1)};
+
+            for (int i = 0; i < 2; ++i) {
+                if (spatial.distance(ends[i], point) > junction) {
+                    continue;
+                }
+                if (!vertices.containsKey(ids[i])) {
+                    vertices.put(ids[i], new HashSet<Long>());
+                }
+                vertices.get(ids[i]).add(road.base().id());
+            }
+        }
+
+        for (Set<Long> bases : vertices.values()) {
+            if (bases.size() > 2) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean redundant(List<MatcherSample> samples, int anchor, int index) {
+        MatcherSample a = samples.get(anchor), b = samples.get(index),
+                c = samples.get(index + 1);
+        double ab = spatial.distance(a.point(), b.point()),
+                bc = spatial.distance(b.point(), c.point());
+
+        if (spatial.distance(a.point(), c.point()) > span || b.time() <= a.time()
+                || c.time() <= b.time()) {
+            return false;
+        }
+
+        for (int i = anchor + 1; i <= index; ++i) {
+            if (distance(a.point(), c.point(), samples.get(i).point()) > tolerance) {
+                return false;
+            }
+        }
+
+        if (!Double.isNaN(a.azimuth()) && !Double.isNaN(b.azimuth())) {
+            if (deviation(a.azimuth(), b.azimuth()) > heading) {
+                return false;
+            }
+        } else if (ab >= tolerance && bc >= tolerance
+                && deviation(spatial.azimuth(a.point(), b.point(), 0),
+                        spatial.azimuth(b.point(), c.point(), 0)) > heading) {
+            return false;
+        }
+
+        if (Math.abs(ab / (b.time() - a.time()) - bc / (c.time() - b.time())) * 1000 > speed) {
+            return false;
+        }
+
+        return !junction(b.point());
+    }
+
+    /**
+     * Removes samples from a sequence of samples that are redundant for map matching, i.e. each
+     * removed sample is within tolerance of the straight line between its neighboring kept
+     * samples and has same heading and speed, and is not close to a junction. First and last
+     * sample are always kept.
+     *
+     * @param samples Sequence of samples, {@link MatcherSample} objects.
+     * @return Subsequence of kept samples ordered by time.
+     */
+    public List<MatcherSample> decimate(List<MatcherSample> samples) {
+        List<MatcherSample> sorted = new ArrayList<>(samples);
+        Collections.sort(sorted, new Comparator<MatcherSample>() {
+            @Override
+            public int compare(MatcherSample left, MatcherSample right) {
+                return Long.compare(left.time(), right.time());
+            }
+        });
+
+        if (sorted.size() <= 2) {
+            return sorted;
+        }
+
+        List<MatcherSample> kept = new ArrayList<>();
+        kept.add(sorted.get(0));
+
+        int anchor = 0;
+        for (int i = 1; i < sorted.size() - 1; ++i) {
+            if (!redundant(sorted, anchor, i)) {
+                kept.add(sorted.get(i));
+                anchor = i;
+            }
+        }
+
+        kept.add(sorted.get(sorted.size() - 1));
+
+        logger.debug("{} of {} samples kept", kept.size(), sorted.size());
+
+        return kept;
+    }
+
+    /**
+     * Creates a copy of the most likely sequence of a {@link MatcherKState} object, which has been
+     * matched with a decimated sequence of samples, see {@link Decimator#decimate(List)}, where
+     * removed samples are reattached by projection onto the matched routes. Each reattached sample
+     * is matched to the closest point of the route to the next matched sample that follows the
+     * previous matching, and splits the route.
+     * <p>
+     * <b>Note:</b> Removed samples before the first matched sample, after the last matched sample,
+     * or before a matched sample without route, i.e. where the HMM breaks, are not reattached.
+     *
+     * @param state {@link MatcherKState} object with the matching of the decimated sequence of
+     *        samples.
+     * @param samples Sequence of samples, {@link MatcherSample} objects, that has been decimated.
+     * @return {@link MatcherKState} object with the most likely sequence of the matching with
+     *         reattached samples.
+     */
+    public MatcherKState reattach(MatcherKState state, List<MatcherSample> samples) {
+        MatcherKState result = new MatcherKState();
+        List<MatcherSample> matched = state.samples();
+        List<MatcherCandidate> sequence = state.sequence();
+
+        List<MatcherSample> sorted = new ArrayList<>(samples);
+        Collections.sort(sorted, new Comparator<MatcherSample>() {
+            @Override
+            public int compare(MatcherSample left, MatcherSample right) {
+                return Long.compare(left.time(), right.time());
+            }
+        });
+
+        MatcherCandidate previous = null;
+        List<MatcherSample> pending = new ArrayList<>();
+        int index = 0, count = 0;
+
+        for (MatcherSample sample : sorted) {
+            if (index >= matched.size() || sample.time() != matched.get(index).time()) {
+                pending.add(sample);
+                continue;
+            }
+
+            MatcherCandidate candidate = sequence.get(index++);
+            Route route = candidate.transition() != null ? candidate.transition().route() : null;
+
+            if (previous != null && route != null) {
+                List<Road> roads = route.path();
+                RoadPoint source = route.source();
+                int position = 0;
+
+                for (MatcherSample removed : pending) {
+                    int best = position;
+                    RoadPoint point = null;
+                    double distance = Double.MAX_VALUE;
+
+                    for (int i = position; i < roads.size(); ++i) {
+                        Road road = roads.get(i);
+                        double lower = i == position ? source.fraction() : 0,
+                                upper = i == roads.size() - 1 ? route.target().fraction() : 1;
+                        double f = Math.max(lower, Math.min(upper,
+                                spatial.intercept(road.geometry(), removed.point())));
+                        RoadPoint projection = new RoadPoint(road, f);
+                        double d = spatial.distance(projection.geometry(), removed.point());
+
+                        if (d < distance) {
+                            best = i;
+                            point = projection;
+                            distance = d;
+                        }
+                    }
+
+                    MatcherCandidate copy = new MatcherCandidate(point);
+                    copy.predecessor(previous);
+                    copy.filtprob(candidate.filtprob());
+                    copy.seqprob(candidate.seqprob());
+                    copy.transition(new MatcherTransition(
+                            new Route(source, point, roads.subList(position, best + 1))));
+                    result.update(new HashSet<>(Collections.singletonList(copy)), removed);
+
+                    previous = copy;
+                    source = point;
+                    position = best;
+                    count += 1;
+                }
+
+                route = new Route(source, route.target(), roads.subList(position, roads.size()));
+            }
+
+            pending.clear();
+
+            MatcherCandidate copy = new MatcherCandidate(candidate.point());
+            copy.predecessor(previous);
+            copy.filtprob(candidate.filtprob());
+            copy.seqprob(candidate.seqprob());
+            if (route != null) {
+                copy.transition(new MatcherTransition(route));
+            }
+            result.update(new HashSet<>(Collections.singletonList(copy)), sample);
+
+            previous = copy;
+        }
+
+        logger.debug("{} samples reattached", count);
+
+        return result;
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright (C) 2015, BMW Car IT GmbH
+ *
+ * Author: Sebastian Mattheis <sebastian.mattheis@bmw-carit.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.bmwcarit.barefoot.matcher;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.bmwcarit.barefoot.road.BaseRoad;
+import com.bmwcarit.barefoot.road.RoadReader;
+import com.bmwcarit.barefoot.roadmap.Corridor;
+import com.bmwcarit.barefoot.roadmap.RoadMap;
+import com.bmwcarit.barefoot.spatial.SpatialOperator;
+import com.bmwcarit.barefoot.util.SourceException;
+import com.bmwcarit.barefoot.util.Stopwatch;
+import com.esri.core.geometry.Polygon;
+
+/**
+ * Coarse-to-fine map matching of long and sparse sequences of samples, {@link MatcherSample}
+ * objects. First, samples are matched to a coarse road map that contains only roads of high
+ * priority, i.e. roads with a priority factor of at most some maximum, where routing is cheap.
+ * Second, samples are matched to the full road map with matching candidates and routing
+ * restricted to a {@link Corridor} around the routes of the coarse matching and the samples,
+ * where the corridor around samples is at least the search radius of matching candidates, see
+ * {@link Matcher#setMaxRadius(double)}.
+ * <p>
+ * If any of both matchings fails, i.e. the coarse matching is empty, or the refined matching
+ * matches fewer samples than the coarse matching or has an HMM break between samples that are
+ * connected by a route in the coarse matching, samples are matched to the full road map without
+ * restriction, which gives the same result as {@link Matcher#mmatch(List, double, int)}.
+ */
+public class HierarchicalMatcher {
+    private static final Logger logger = LoggerFactory.getLogger(HierarchicalMatcher.class);
+    private final Matcher matcher;
+    private final RoadMap map;
+    private final RoadMap coarse;
+    private final SpatialOperator spatial;
+    private double width = 500;
+
+    /**
+     * Creates a {@link HierarchicalMatcher} object.
+     *
+     * @param matcher {@link Matcher} object of the full road map, which defines the parameters of
+     *        both matchings.
+     * @param map Full {@link RoadMap} object, which must be constructed.
+     * @param priority Maximum priority factor of roads in the coarse road map, see
+     *        {@link BaseRoad#priority()}.
+     * @param spatial {@link SpatialOperator} object for spatial operations.
+     */
+    public HierarchicalMatcher(Matcher matcher, RoadMap map, float priority,
+            SpatialOperator spatial) {
+        this.matcher = matcher;
+        this.map = map;
+        this.coarse = RoadMap.Load(reader(map, priority)).construct();
+        this.spatial = spatial;
+    }
+
+    private static RoadReader reader(RoadMap map, final float priority) {
+        final RoadReader reader = map.reader();
+        return new RoadReader() {
+            @Override
+            public boolean isOpen() {
+                return reader.isOpen();
+            }
+
+            @Override
+            public void open() throws SourceException {
+                reader.open();
+            }
+
+            @Override
+            public void open(Polygon polygon, HashSet<Short> exclusions) throws SourceException {
+                reader.open(polygon, exclusions);
+            }
+
+            @Override
+            public void close() throws SourceException {
+                reader.close();
+            }
+
+            @Override
+            public BaseRoad next() throws SourceException {
+                BaseRoad road = null;
+                do {
+                    road = reader.next();
+                } while (road != null && road.priority() > priority);
+                return road;
+            }
+        };
+    }
+
+    /**
+     * Gets coarse road map, which contains roads of the full road map with a priority factor of at
+     * most the maximum.
+     *
+     * @return Coarse {@link RoadMap} object.
+     */
+    public RoadMap coarse() {
+        return coarse;
+    }
+
+    /**
+     * Gets width of the corridor in meters around routes of the coarse matching and the samples.
+     *
+     * @return Width of the corridor in meters.
+     */
+    public double getWidth() {
+        return width;
+    }
+
+    /**
+     * Sets width of the corridor in meters around routes of the coarse matching and the samples
+     * (default: 500). A larger corridor gives the refined matching more alternatives to the coarse
+     * routes at higher costs.
+     *
+     * @param width Width of the corridor in meters.
+     */
+    public void setWidth(double width) {
+        this.width = width;
+    }
+
+    private static boolean failed(MatcherKState refined, MatcherKState coarse) {
+        List<MatcherCandidate> sequence = refined.sequence();
+        List<MatcherSample> samples = refined.samples();
+        if (sequence == null || samples.size() < coarse.samples().size()) {
+            return true;
+        }
+
+        Map<Long, MatcherCandidate> candidates = new HashMap<>();
+        for (int i = 0; i < coarse.sequence().size(); ++i) {
+            candidates.put(coarse.samples().get(i).time(), coarse.sequence().get(i));
+        }
+
+        // An HMM break is a failure only if the coarse matching has a route between both samples,
+        // which is contained in the corridor, since otherwise the full matching may break as well.
+        for (int i = 1; i < sequence.size(); ++i) {
+            if (sequence.get(i).transition() != null) {
+                continue;
+            }
+            MatcherCandidate candidate = candidates.get(samples.get(i).time());
+            if (candidate != null && candidate.transition() != null
+                    && candidates.containsKey(samples.get(i - 1).time())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Matches a full sequence of samples, {@link MatcherSample} objects, coarse-to-fine, see
+     * {@link Matcher#mmatch(List, double, int)}.
+     *
+     * @param samples Sequence of samples, {@link MatcherSample} objects.
+     * @param minDistance Minimum distance in meters between subsequent samples as criterion to
+     *        match a sample.
+     * @param minInterval Minimum time interval in milliseconds between subsequent samples as
+     *        criterion to match a sample.
+     * @return State representation of the full matching which is a {@link MatcherKState} object.
+     */
+    public MatcherKState mmatch(List<MatcherSample> samples, double minDistance, int minInterval) {
+        Stopwatch sw = new Stopwatch();
+        sw.start();
+
+        MatcherKState state =
+                matcher.derive(coarse, null).mmatch(samples, minDistance, minInterval);
+        sw.stop();
+        logger.debug("coarse matching of {} samples ({} ms)", state.samples().size(), sw.ms());
+
+        if (state.sequence() != null) {
+            sw.start();
+            Corridor corridor = new Corridor(map, width, spatial);
+            for (MatcherSample sample : samples) {
+                corridor.add(sample.point(), Math.max(width, matcher.getMaxRadius()));
+            }
+            for (MatcherCandidate candidate : state.sequence()) {
+                corridor.add(candidate.point().geometry());
+                if (candidate.transition() != null) {
+                    corridor.add(candidate.transition().route().geometry());
+                }
+            }
+
+            MatcherKState refined =
+                    matcher.derive(map, corridor).mmatch(samples, minDistance, minInterval);
+            sw.stop();
+            logger.debug("refined matching with {} roads in corridor ({} ms)", corridor.size(),
+                    sw.ms());
+
+            if (!failed(refined, state)) {
+                return refined;
+            }
+        }
+
+        logger.info("coarse-to-fine matching failed, falling back to full matching");
+        return matcher.mmatch(samples, minDistance, minInterval);
+    }
+}
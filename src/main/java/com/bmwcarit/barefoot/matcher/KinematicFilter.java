@@ -0,0 +1,256 @@
+/*
+ * Copyright (C) 2015, BMW Car IT GmbH
+ *
+ * Author: Sebastian Mattheis <sebastian.mattheis@bmw-carit.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.bmwcarit.barefoot.matcher;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedList;
+import java.util.List;
+
+import com.bmwcarit.barefoot.spatial.SpatialOperator;
+
+/**
+ * Streaming filter of samples, {@link MatcherSample} objects, that rejects outliers, e.g. position
+ * jumps from multipath reception of GPS devices, before map matching. A sample is rejected if it
+ * implies a speed or an acceleration, relative to the most recent accepted samples, that exceeds
+ * the maximum. Speeds are determined with a tolerance for position measurement errors such that
+ * only clear violations are rejected.
+ * <p>
+ * <b>Note:</b> If a number of subsequent samples is rejected, the filter assumes that the movement
+ * has changed, e.g. after a gap in the data, and accepts the next sample as new start. Each
+ * filter object keeps the history of a single object and is not thread-safe.
+ */
+public class KinematicFilter {
+    private final SpatialOperator spatial;
+    private final LinkedList<MatcherSample> history = new LinkedList<>();
+    private double speed;
+    private double acceleration;
+    private double tolerance = 20;
+    private int rejections = 3;
+    private int subsequent = 0;
+    private long accepted = 0, rejected = 0;
+
+    /**
+     * Creates a {@link KinematicFilter} object.
+     *
+     * @param spatial {@link SpatialOperator} object for spatial operations.
+     * @param speed Maximum speed in meters per second, disabled if zero.
+     * @param acceleration Maximum acceleration in meters per square second, disabled if zero.
+     */
+    public KinematicFilter(SpatialOperator spatial, double speed, double acceleration) {
+        this.spatial = spatial;
+        this.speed = speed;
+        this.acceleration = acceleration;
+    }
+
+    /**
+     * Gets maximum speed in meters per second.
+     *
+     * @return Maximum speed in meters per second.
+     */
+    public double getMaxSpeed() {
+        return speed;
+    }
+
+    /**
+     * Sets maximum speed in meters per second, where zero disables the speed criterion.
+     *
+     * @param speed Maximum speed in meters per second.
+     */
+    public void setMaxSpeed(double speed) {
+        this.speed = speed;
+    }
+
+    /**
+     * Gets maximum acceleration in meters per square second.
+     *
+     * @return Maximum acceleration in meters per square second.
+     */
+    public double getMaxAcceleration() {
+        return acceleration;
+    }
+
+    /**
+     * Sets maximum acceleration in meters per square second, where zero disables the acceleration
+     * criterion.
+     *
+     * @param acceleration Maximum acceleration in meters per square second.
+     */
+    public void setMaxAcceleration(double acceleration) {
+        this.acceleration = acceleration;
+    }
+
+    /**
+     * Gets tolerance for position measurement errors in meters.
+     *
+     * @return Tolerance for position measurement errors in meters.
+     */
+    public double getTolerance() {
+        return tolerance;
+    }
+
+    /**
+     * Sets tolerance for position measurement errors in meters (default: 20), which is the
+     * distance between two samples that is not considered as movement.
+     *
+     * @param tolerance Tolerance for position measurement errors in meters.
+     */
+    public void setTolerance(double tolerance) {
+        this.tolerance = tolerance;
+    }
+
+    /**
+     * Gets maximum number of subsequent rejected samples.
+     *
+     * @return Maximum number of subsequent rejected samples.
+     */
+    public int getMaxRejections() {
+        return rejections;
+    }
+
+    /**
+     * Sets maximum number of subsequent rejected samples (default: 3), after which the next sample
+     * is accepted as new start.
+     *
+     * @param rejections Maximum number of subsequent rejected samples.
+     */
+    public void setMaxRejections(int rejections) {
+        this.rejections = rejections;
+    }
+
+    /**
+     * Gets number of accepted samples.
+     *
+     * @return Number of accepted samples.
+     */
+    public long accepted() {
+        return accepted;
+    }
+
+    /**
+     * Gets number of rejected samples.
+     *
+     * @return Number of rejected samples.
+     */
+    public long rejected() {
+        return rejected;
+    }
+
+    private boolean valid(MatcherSample sample) {
+        if (history.isEmpty() || subsequent >= rejections) {
+            return true;
+        }
+
+        MatcherSample last = history.getLast();
+        double dt = (sample.time() - last.time()) / 1E3;
+        if (dt <= 0) {
+            return true;
+        }
+
+        double distance = spatial.distance(last.point(), sample.point());
+        double min = Math.max(0, distance - tolerance) / dt, max = (distance + tolerance) / dt;
+
+        if (speed > 0 && min > speed) {
+            return false;
+        }
+
+        if (acceleration > 0 && history.size() > 1
+                && last.time() > history.getFirst().time()) {
+            MatcherSample previous = history.getFirst();
+            double dt0 = (last.time() - previous.time()) / 1E3;
+            double distance0 = spatial.distance(previous.point(), last.point());
+            double min0 = Math.max(0, distance0 - tolerance) / dt0,
+                    max0 = (distance0 + tolerance) / dt0;
+
+            if ((min - max0) / dt > acceleration || (min0 - max) / dt > acceleration) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Tests if a sample is accepted or rejected as outlier, and adds accepted samples to the
+     * history. Samples must be provided in order of time.
+     *
+     * @param sample Sample, {@link MatcherSample} object.
+     * @return True if sample is accepted, false if it is rejected as outlier.
+     */
+    public boolean accept(MatcherSample sample) {
+        if (!valid(sample)) {
+            subsequent += 1;
+            rejected += 1;
+            return false;
+        }
+
+        if (subsequent >= rejections) {
+            history.clear();
+        }
+
+        history.add(sample);
+        if (history.size() > 2) {
+            history.removeFirst();
+        }
+
+        subsequent = 0;
+        accepted += 1;
+        return true;
+    }
+
+    /**
+     * Seeds the history with samples accepted before, e.g. the most recent samples of a continued
+     * matching, without counting them as accepted. Samples must be ordered by time and precede any
+     * samples tested afterwards.
+     *
+     * @param samples Sequence of samples, {@link MatcherSample} objects, ordered by time.
+     */
+    public void seed(List<MatcherSample> samples) {
+        history.clear();
+        for (MatcherSample sample : samples) {
+            history.add(sample);
+            if (history.size() > 2) {
+                history.removeFirst();
+            }
+        }
+        subsequent = 0;
+    }
+
+    /**
+     * Filters a sequence of samples, {@link MatcherSample} objects, ordered by time and returns
+     * accepted samples.
+     *
+     * @param samples Sequence of samples, {@link MatcherSample} objects.
+     * @return Accepted samples ordered by time.
+     */
+    public List<MatcherSample> filter(List<MatcherSample> samples) {
+        List<MatcherSample> sorted = new ArrayList<>(samples);
+        Collections.sort(sorted, new Comparator<MatcherSample>() {
+            @Override
+            public int compare(MatcherSample left, MatcherSample right) {
+                return Long.compare(left.time(), right.time());
+            }
+        });
+
+        List<MatcherSample> accepted = new ArrayList<>();
+        for (MatcherSample sample : sorted) {
+            if (accept(sample)) {
+                accepted.add(sample);
+            }
+        }
+
+        return accepted;
+    }
+}
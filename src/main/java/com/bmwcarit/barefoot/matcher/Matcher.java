@@ -14,23 +14,29 @@
 package com.bmwcarit.barefoot.matcher;
 
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.bmwcarit.barefoot.markov.Filter;
 import com.bmwcarit.barefoot.markov.KState;
+import com.bmwcarit.barefoot.markov.TransitionMatrix;
 import com.bmwcarit.barefoot.road.Heading;
 import com.bmwcarit.barefoot.roadmap.Distance;
+import com.bmwcarit.barefoot.roadmap.Ellipse;
 import com.bmwcarit.barefoot.roadmap.Road;
 import com.bmwcarit.barefoot.roadmap.RoadMap;
 import com.bmwcarit.barefoot.roadmap.RoadPoint;
@@ -40,11 +46,16 @@ import com.bmwcarit.barefoot.scheduler.StaticScheduler;
 import com.bmwcarit.barefoot.scheduler.StaticScheduler.InlineScheduler;
 import com.bmwcarit.barefoot.scheduler.Task;
 import com.bmwcarit.barefoot.spatial.SpatialOperator;
+import com.bmwcarit.barefoot.topology.CachingDijkstra;
 import com.bmwcarit.barefoot.topology.Cost;
+import com.bmwcarit.barefoot.topology.Dijkstra;
 import com.bmwcarit.barefoot.topology.Router;
+import com.bmwcarit.barefoot.topology.SearchSpace;
 import com.bmwcarit.barefoot.util.Stopwatch;
 import com.bmwcarit.barefoot.util.Tuple;
 import com.esri.core.geometry.GeometryEngine;
+import com.esri.core.geometry.Point;
+import com.esri.core.geometry.Polyline;
 import com.esri.core.geometry.WktExportFlags;
 
 /**
@@ -67,6 +78,93 @@ public class Matcher extends Filter<MatcherCandidate, MatcherTransition, Matcher
     private double radius = 200;
     private double distance = 15000;
     private boolean shortenTurns = true;
+    private boolean ellipse = false;
+    private double localDistance = 0;
+    private int minCandidates = 0;
+    private double maxAzimuth = 0;
+    private SearchSpace<Road> space = null;
+    private Statistics statistics = new Statistics();
+
+    /**
+     * Statistics of matching candidate searches, which is shared by a {@link Matcher} and all
+     * matchers derived from it, see {@link Matcher#derive(Router)}.
+     */
+    public static final class Statistics {
+        private final AtomicLong samples = new AtomicLong(), candidates = new AtomicLong(),
+                found = new AtomicLong(), expansions = new AtomicLong(),
+                exhausted = new AtomicLong(), empty = new AtomicLong();
+
+        private Statistics() {}
+
+        /**
+         * Gets number of samples for which matching candidates have been searched.
+         *
+         * @return Number of samples for which matching candidates have been searched.
+         */
+        public long samples() {
+            return samples.get();
+        }
+
+        /**
+         * Gets total number of matching candidates, i.e. after minimization and azimuth pruning.
+         *
+         * @return Total number of matching candidates.
+         */
+        public long candidates() {
+            return candidates.get();
+        }
+
+        /**
+         * Gets total number of road points found by spatial searches before minimization and
+         * azimuth pruning, where only the last search per sample is counted.
+         *
+         * @return Total number of road points found by spatial searches.
+         */
+        public long found() {
+            return found.get();
+        }
+
+        /**
+         * Gets total number of search radius expansions, i.e. repeated searches with doubled
+         * radius, see {@link Matcher#setMinCandidates(int)}.
+         *
+         * @return Total number of search radius expansions.
+         */
+        public long expansions() {
+            return expansions.get();
+        }
+
+        /**
+         * Gets number of samples with less than the minimum number of matching candidates within
+         * the maximum radius, see {@link Matcher#setMinCandidates(int)}.
+         *
+         * @return Number of samples with less than the minimum number of matching candidates.
+         */
+        public long exhausted() {
+            return exhausted.get();
+        }
+
+        /**
+         * Gets number of samples without any matching candidate.
+         *
+         * @return Number of samples without any matching candidate.
+         */
+        public long empty() {
+            return empty.get();
+        }
+
+        /**
+         * Resets all counters to zero.
+         */
+        public void reset() {
+            samples.set(0);
+            candidates.set(0);
+            found.set(0);
+            expansions.set(0);
+            exhausted.set(0);
+            empty.set(0);
+        }
+    }
 
     /**
      * Creates a HMM map matching filter for some map, router, cost function, and spatial operator.
@@ -84,6 +182,53 @@ public class Matcher extends Filter<MatcherCandidate, MatcherTransition, Matcher
         this.spatial = spatial;
     }
 
+    /**
+     * Creates a HMM map matching filter with the same router, cost function, spatial operator and
+     * parameters for another map, e.g. a subnetwork of this filter's map, which is optionally
+     * restricted to a search space. If restricted, only roads contained in the search space are
+     * matching candidates and routes of transitions.
+     *
+     * @param map {@link RoadMap} object of the map to be matched to.
+     * @param space {@link SearchSpace} of roads, or null if not restricted.
+     * @return HMM map matching filter with the same parameters.
+     */
+    public Matcher derive(RoadMap map, SearchSpace<Road> space) {
+        return derive(map, router, space);
+    }
+
+    /**
+     * Creates a HMM map matching filter with the same map, cost function, spatial operator and
+     * parameters but another router, e.g. a {@link CachingDijkstra} per tracked object.
+     *
+     * @param router {@link Router} object to be used for route estimation.
+     * @return HMM map matching filter with the same parameters.
+     */
+    public Matcher derive(Router<Road, RoadPoint> router) {
+        return derive(map, router, space);
+    }
+
+    private Matcher derive(RoadMap map, Router<Road, RoadPoint> router, SearchSpace<Road> space) {
+        Matcher matcher = new Matcher(map, router, cost, spatial);
+        matcher.sig2 = sig2;
+        matcher.sigA = sigA;
+        matcher.sqrt_2pi_sig2 = sqrt_2pi_sig2;
+        matcher.sqrt_2pi_sigA = sqrt_2pi_sigA;
+        matcher.lambda = lambda;
+        matcher.radius = radius;
+        matcher.distance = distance;
+        matcher.shortenTurns = shortenTurns;
+        matcher.ellipse = ellipse;
+        matcher.localDistance = localDistance;
+        matcher.minCandidates = minCandidates;
+        matcher.maxAzimuth = maxAzimuth;
+        matcher.statistics = statistics;
+        matcher.space = space;
+        matcher.setBeamWidth(getBeamWidth());
+        matcher.setBeamThreshold(getBeamThreshold());
+        matcher.parallel(parallel());
+        return matcher;
+    }
+
     /**
      * Gets standard deviation in meters of gaussian distribution that defines emission
      * probabilities.
@@ -182,6 +327,254 @@ public class Matcher extends Filter<MatcherCandidate, MatcherTransition, Matcher
         this.shortenTurns = shortenTurns;
     }
 
+    /**
+     * Gets option of elliptical search space pruning in routing of transitions.
+     *
+     * @return Option of elliptical search space pruning.
+     */
+    public boolean ellipse() {
+        return this.ellipse;
+    }
+
+    /**
+     * Sets option of elliptical search space pruning in routing of transitions (default false),
+     * which restricts routing from a predecessor to roads that start within the ellipse of route
+     * length bound around predecessor and candidates, see {@link Ellipse}. Transitions are the same
+     * as without pruning.
+     *
+     * @param ellipse Option of elliptical search space pruning.
+     */
+    public void ellipse(boolean ellipse) {
+        this.ellipse = ellipse;
+    }
+
+    /**
+     * Gets minimum number of matching candidates for adaptive search radius.
+     *
+     * @return Minimum number of matching candidates, zero means adaptive search radius is disabled.
+     */
+    public int getMinCandidates() {
+        return minCandidates;
+    }
+
+    /**
+     * Sets minimum number of matching candidates for adaptive search radius. If set, matching
+     * candidates are searched within an initial radius of three times the sample's accuracy, see
+     * {@link MatcherSample#accuracy()}, or the standard deviation if it is larger or accuracy is
+     * unknown, and the radius is doubled until at least the minimum number of matching candidates
+     * is found or it reaches maximum radius, see {@link Matcher#getMaxRadius()}. (Default is zero,
+     * which means matching candidates are always searched within maximum radius.)
+     *
+     * @param minCandidates Minimum number of matching candidates, zero disables adaptive search
+     *        radius.
+     */
+    public void setMinCandidates(int minCandidates) {
+        this.minCandidates = minCandidates;
+    }
+
+    /**
+     * Gets distance budget in meters for graph-local discovery of matching candidates.
+     *
+     * @return Distance budget in meters, zero means graph-local discovery is disabled.
+     */
+    public double getLocalDistance() {
+        return localDistance;
+    }
+
+    /**
+     * Sets distance budget in meters for graph-local discovery of matching candidates, which
+     * searches matching candidates on roads reachable from predecessors' roads within the distance
+     * budget instead of a spatial index query. The spatial index is queried only if no matching
+     * candidate is found within distance of standard deviation of the sample, see
+     * {@link Matcher#getSigma()}. (Default is zero, which disables graph-local discovery.)
+     * <p>
+     * <b>Note:</b> Roads not reachable within the distance budget, e.g. parallel roads without
+     * connection, are not considered as matching candidates unless the spatial index is queried.
+     *
+     * @param localDistance Distance budget in meters, zero disables graph-local discovery.
+     */
+    public void setLocalDistance(double localDistance) {
+        this.localDistance = localDistance;
+    }
+
+    /**
+     * Gets maximum azimuth deviation in degrees of matching candidates from a sample's azimuth.
+     *
+     * @return Maximum azimuth deviation in degrees, zero means azimuth pruning is disabled.
+     */
+    public double getMaxAzimuth() {
+        return maxAzimuth;
+    }
+
+    /**
+     * Sets maximum azimuth deviation in degrees of matching candidates from a sample's azimuth,
+     * see {@link MatcherSample#azimuth()}. If set and the sample's azimuth is known, matching
+     * candidates with larger deviation are dropped before emission and transition probabilities
+     * are determined, e.g. the opposite direction of two-way roads. All matching candidates are
+     * kept if no matching candidate is within the maximum azimuth deviation. (Default is zero,
+     * which disables azimuth pruning and azimuth only affects emission probabilities.)
+     *
+     * @param maxAzimuth Maximum azimuth deviation in degrees, zero disables azimuth pruning.
+     */
+    public void setMaxAzimuth(double maxAzimuth) {
+        this.maxAzimuth = maxAzimuth;
+    }
+
+    /**
+     * Gets statistics of matching candidate searches, e.g. to monitor search radius expansions and
+     * number of matching candidates per sample.
+     *
+     * @return {@link Statistics} of matching candidate searches.
+     */
+    public Statistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Gets absolute deviation in degrees of two azimuths.
+     *
+     * @param left Azimuth in degrees.
+     * @param right Azimuth in degrees.
+     * @return Absolute deviation in degrees, which is in the range [0, 180].
+     */
+    private static double deviation(double left, double right) {
+        return left > right ? Math.min(left - right, 360 - (left - right))
+                : Math.min(right - left, 360 - (right - left));
+    }
+
+    /**
+     * Gets points on roads reachable from predecessors' roads within the distance budget that are
+     * within the search radius of a sample, which is the same as a query of the spatial index
+     * restricted to these roads.
+     *
+     * @param predecessors Predecessor matching candidates.
+     * @param sample Sample.
+     * @param radius Search radius in meters.
+     * @return Points within the search radius of the sample, or null if there is no point within
+     *         distance of standard deviation of the sample.
+     */
+    private Set<RoadPoint> local(Set<MatcherCandidate> predecessors, MatcherSample sample,
+            double radius) {
+        PriorityQueue<Tuple<Road, Double>> queue =
+                new PriorityQueue<>(16, new Comparator<Tuple<Road, Double>>() {
+                    @Override
+                    public int compare(Tuple<Road, Double> left, Tuple<Road, Double> right) {
+                        return Double.compare(left.two(), right.two());
+                    }
+                });
+        Set<Long> visited = new HashSet<>(), tested = new HashSet<>();
+
+        for (MatcherCandidate predecessor : predecessors) {
+            Road road = predecessor.point().edge();
+            queue.add(new Tuple<>(road, road.length() * (1 - predecessor.point().fraction())));
+        }
+
+        Set<RoadPoint> points = new HashSet<>();
+        double nearest = Double.MAX_VALUE;
+
+        while (!queue.isEmpty()) {
+            Tuple<Road, Double> entry = queue.poll();
+            Road road = entry.one();
+
+            if (!visited.add(road.id())) {
+                continue;
+            }
+
+            long base = road.base().id();
+            if (tested.add(base)) {
+                Polyline geometry = road.base().geometry();
+                double f = spatial.intercept(geometry, sample.point());
+                double d = spatial.distance(
+                        spatial.interpolate(geometry, spatial.length(geometry), f),
+                        sample.point());
+
+                if (d < radius) {
+                    Road forward = map.get(base * 2), backward = map.get(base * 2 + 1);
+                    points.add(new RoadPoint(forward, f));
+                    if (backward != null) {
+                        points.add(new RoadPoint(backward, 1.0 - f));
+                    }
+                    nearest = Math.min(nearest, d);
+                }
+            }
+
+            Iterator<Road> successors = road.successors();
+            while (successors.hasNext()) {
+                Road successor = successors.next();
+                if (!visited.contains(successor.id()) && entry.two() <= localDistance) {
+                    queue.add(new Tuple<>(successor, entry.two() + successor.length()));
+                }
+            }
+        }
+
+        logger.trace("{} local candidates of {} roads", points.size(), tested.size());
+
+        return nearest <= getSigma() ? points : null;
+    }
+
+    /*
+     * Reusable arrays of matching candidates per thread, which avoids allocation of intermediate
+     * collections in search and minimization of matching candidates.
+     */
+    private static class Buffer {
+        RoadPoint[] points = new RoadPoint[0];
+        long[] ids = new long[0];
+        int[] misses = new int[0];
+        boolean[] removes = new boolean[0];
+
+        void reserve(int size) {
+            if (points.length < size) {
+                int length = Math.max(64, Integer.highestOneBit(size - 1) << 1);
+                points = new RoadPoint[length];
+                ids = new long[length];
+                misses = new int[length];
+                removes = new boolean[length];
+            }
+        }
+    }
+
+    private static final ThreadLocal<Buffer> buffers = new ThreadLocal<Buffer>() {
+        @Override
+        protected Buffer initialValue() {
+            return new Buffer();
+        }
+    };
+
+    /**
+     * Gets points on roads within the search radius of a sample, which are searched graph-local if
+     * enabled, see {@link Matcher#setLocalDistance(double)}, or with the spatial index, and
+     * restricted to the search space if any, see {@link Matcher#derive(RoadMap, SearchSpace)}.
+     * Points are minimized, see {@link Minset}, in the buffer.
+     *
+     * @param predecessors Predecessor matching candidates.
+     * @param sample Sample.
+     * @param radius Search radius in meters.
+     * @param buffer Buffer to be filled with points within the search radius of the sample.
+     * @return Tuple of the number of points in the buffer after minimization and the number of
+     *         points found.
+     */
+    private long search(Set<MatcherCandidate> predecessors, MatcherSample sample, double radius,
+            Buffer buffer) {
+        Set<RoadPoint> points = localDistance > 0 && !predecessors.isEmpty()
+                ? local(predecessors, sample, radius) : null;
+        if (points == null) {
+            points = map.spatial().radius(sample.point(), radius);
+        }
+
+        buffer.reserve(points.size());
+        int size = 0;
+        for (RoadPoint point : points) {
+            if (space == null || space.contains(point.edge())) {
+                buffer.points[size++] = point;
+            }
+        }
+        int found = size;
+
+        size = Minset.sort(buffer.points, buffer.ids, size);
+        size = Minset.minimize(buffer.points, buffer.ids, size, buffer.misses, buffer.removes);
+        return ((long) found << 32) | size;
+    }
+
     @Override
     protected Set<Tuple<MatcherCandidate, Double>> candidates(Set<MatcherCandidate> predecessors,
             MatcherSample sample) {
@@ -191,39 +584,87 @@ public class Matcher extends Filter<MatcherCandidate, MatcherTransition, Matcher
                     GeometryEngine.geometryToWkt(sample.point(), WktExportFlags.wktExportPoint));
         }
 
-        Set<RoadPoint> points_ = map.spatial().radius(sample.point(), radius);
-        Set<RoadPoint> points = new HashSet<>(Minset.minimize(points_));
+        double radius = this.radius;
+        if (minCandidates > 0) {
+            radius = Math.min(radius, 3 * (Double.isNaN(sample.accuracy()) ? getSigma()
+                    : Math.max(getSigma(), sample.accuracy())));
+        }
+
+        Buffer buffer = buffers.get();
+        long result = search(predecessors, sample, radius, buffer);
+        int filled = (int) (result >>> 32), expansions = 0;
 
-        Map<Long, RoadPoint> map = new HashMap<>();
-        for (RoadPoint point : points) {
-            map.put(point.edge().id(), point);
+        while ((int) result < minCandidates && radius < this.radius) {
+            radius = Math.min(this.radius, 2 * radius);
+            result = search(predecessors, sample, radius, buffer);
+            filled = Math.max(filled, (int) (result >>> 32));
+            expansions += 1;
         }
+
+        RoadPoint[] points = buffer.points;
+        int size = (int) result, found = (int) (result >>> 32);
+
         for (MatcherCandidate predecessor : predecessors) {
-            RoadPoint point = map.get(predecessor.point().edge().id());
-            if (point != null && point.edge() != null
-                    && spatial.distance(point.geometry(),
-                            predecessor.point().geometry()) < getSigma()
+            int i = Arrays.binarySearch(buffer.ids, 0, size, predecessor.point().edge().id());
+            if (i < 0) {
+                continue;
+            }
+            RoadPoint point = points[i];
+            if (spatial.distance(point.geometry(), predecessor.point().geometry()) < getSigma()
                     && ((point.edge().heading() == Heading.forward
                             && point.fraction() < predecessor.point().fraction())
                             || (point.edge().heading() == Heading.backward
                                     && point.fraction() > predecessor.point().fraction()))) {
-                points.remove(point);
-                points.add(predecessor.point());
+                points[i] = predecessor.point();
             }
         }
 
-        Set<Tuple<MatcherCandidate, Double>> candidates = new HashSet<>();
-        logger.debug("{} ({}) candidates", points.size(), points_.size());
+        if (maxAzimuth > 0 && !Double.isNaN(sample.azimuth())) {
+            int directed = 0;
+            for (int i = 0; i < size; ++i) {
+                if (deviation(sample.azimuth(), points[i].azimuth()) <= maxAzimuth) {
+                    directed += 1;
+                }
+            }
+            if (logger.isDebugEnabled()) {
+                logger.debug("{} of {} candidates within {} degrees azimuth", directed, size,
+                        maxAzimuth);
+            }
+            if (directed > 0) {
+                int count = 0;
+                for (int i = 0; i < size; ++i) {
+                    if (deviation(sample.azimuth(), points[i].azimuth()) <= maxAzimuth) {
+                        points[count++] = points[i];
+                    }
+                }
+                size = count;
+            }
+        }
 
-        for (RoadPoint point : points) {
+        if (logger.isDebugEnabled()) {
+            logger.debug("{} ({}) candidates within {} meters", size, found, radius);
+        }
+
+        statistics.samples.incrementAndGet();
+        statistics.candidates.addAndGet(size);
+        statistics.found.addAndGet(found);
+        if (expansions > 0) {
+            statistics.expansions.addAndGet(expansions);
+        }
+        if (size < minCandidates) {
+            statistics.exhausted.incrementAndGet();
+        }
+        if (size == 0) {
+            statistics.empty.incrementAndGet();
+        }
+
+        Set<Tuple<MatcherCandidate, Double>> candidates = new HashSet<>((size * 4) / 3 + 1);
+        for (int i = 0; i < size; ++i) {
+            RoadPoint point = points[i];
             double dz = spatial.distance(sample.point(), point.geometry());
             double emission = 1 / sqrt_2pi_sig2 * Math.exp((-1) * dz * dz / (2 * sig2));
             if (!Double.isNaN(sample.azimuth())) {
-                double da = sample.azimuth() > point.azimuth()
-                        ? Math.min(sample.azimuth() - point.azimuth(),
-                                360 - (sample.azimuth() - point.azimuth()))
-                        : Math.min(point.azimuth() - sample.azimuth(),
-                                360 - (point.azimuth() - sample.azimuth()));
+                double da = deviation(sample.azimuth(), point.azimuth());
                 emission *=
                         Math.max(1E-2, 1 / sqrt_2pi_sigA * Math.exp((-1) * da * da / (2 * sigA)));
             }
@@ -231,8 +672,13 @@ public class Matcher extends Filter<MatcherCandidate, MatcherTransition, Matcher
             MatcherCandidate candidate = new MatcherCandidate(point);
             candidates.add(new Tuple<>(candidate, emission));
 
-            logger.trace("{} {} {}", candidate.id(), dz, emission);
+            if (logger.isTraceEnabled()) {
+                logger.trace("{} {} {}", candidate.id(), dz, emission);
+            }
         }
+        // Clears all points that have been written to the buffer, including those removed by
+        // minimization or azimuth filtering, to not keep references beyond this call.
+        Arrays.fill(points, 0, filled, null);
 
         return candidates;
     }
@@ -250,6 +696,36 @@ public class Matcher extends Filter<MatcherCandidate, MatcherTransition, Matcher
             final Tuple<MatcherSample, Set<MatcherCandidate>> predecessors,
             final Tuple<MatcherSample, Set<MatcherCandidate>> candidates) {
 
+        List<MatcherCandidate> preds = new ArrayList<>(predecessors.two());
+        List<MatcherCandidate> states = new ArrayList<>(candidates.two());
+        TransitionMatrix<MatcherTransition> matrix =
+                new TransitionMatrix<>(preds.size(), states.size());
+
+        transitions(new Tuple<>(predecessors.one(), preds), new Tuple<>(candidates.one(), states),
+                matrix);
+
+        Map<MatcherCandidate, Map<MatcherCandidate, Tuple<MatcherTransition, Double>>> transitions =
+                new HashMap<>();
+
+        for (int i = 0; i < preds.size(); ++i) {
+            Map<MatcherCandidate, Tuple<MatcherTransition, Double>> map = new HashMap<>();
+            for (int j = 0; j < states.size(); ++j) {
+                if (matrix.transition(i, j) != null) {
+                    map.put(states.get(j),
+                            new Tuple<>(matrix.transition(i, j), matrix.probability(i, j)));
+                }
+            }
+            transitions.put(preds.get(i), map);
+        }
+
+        return transitions;
+    }
+
+    @Override
+    protected void transitions(final Tuple<MatcherSample, List<MatcherCandidate>> predecessors,
+            final Tuple<MatcherSample, List<MatcherCandidate>> candidates,
+            final TransitionMatrix<MatcherTransition> matrix) {
+
         if (logger.isTraceEnabled()) {
             logger.trace("finding transitions for sample {} {} with {} x {} candidates",
                     new SimpleDateFormat("yyyy-MM-dd HH:mm:ssZ").format(candidates.one().time()),
@@ -266,27 +742,36 @@ public class Matcher extends Filter<MatcherCandidate, MatcherTransition, Matcher
             targets.add(candidate.point());
         }
 
-        final AtomicInteger count = new AtomicInteger();
-        final Map<MatcherCandidate, Map<MatcherCandidate, Tuple<MatcherTransition, Double>>> transitions =
-                new ConcurrentHashMap<>();
-        final double bound = Math.max(1000d, Math.min(distance,
-                ((candidates.one().time() - predecessors.one().time()) / 1000) * 100));
+        final AtomicInteger count = new AtomicInteger(), trivials = new AtomicInteger();
+        final double bound = bound(predecessors.one(), candidates.one());
 
         InlineScheduler scheduler = StaticScheduler.scheduler();
-        for (final MatcherCandidate predecessor : predecessors.two()) {
+        for (int i = 0; i < predecessors.two().size(); ++i) {
+            final int row = i;
+            final MatcherCandidate predecessor = predecessors.two().get(row);
             scheduler.spawn(new Task() {
                 @Override
                 public void run() {
-                    Map<MatcherCandidate, Tuple<MatcherTransition, Double>> map = new HashMap<>();
                     Stopwatch sw = new Stopwatch();
                     sw.start();
-                    Map<RoadPoint, List<Road>> routes =
-                            router.route(predecessor.point(), targets, cost, new Distance(), bound);
+                    Map<RoadPoint, List<Road>> routes = trivials(predecessor.point(), targets, bound);
+                    trivials.addAndGet(routes.size());
+
+                    if (routes.size() < targets.size()) {
+                        Set<RoadPoint> remaining = new HashSet<>(targets);
+                        remaining.removeAll(routes.keySet());
+                        SearchSpace<Road> search = intersection(ellipse
+                                ? new Ellipse(predecessor.point(), remaining, bound, spatial)
+                                : null, space);
+                        routes.putAll(router.route(predecessor.point(), remaining, cost,
+                                new Distance(), bound, search));
+                    }
                     sw.stop();
 
                     logger.trace("{} routes ({} ms)", routes.size(), sw.ms());
 
-                    for (MatcherCandidate candidate : candidates.two()) {
+                    for (int column = 0; column < candidates.two().size(); ++column) {
+                        MatcherCandidate candidate = candidates.two().get(column);
                         List<Road> edges = routes.get(candidate.point());
 
                         if (edges == null) {
@@ -328,14 +813,14 @@ public class Matcher extends Filter<MatcherCandidate, MatcherTransition, Matcher
                         double transition = (1 / beta)
                                 * Math.exp((-1.0) * route.cost(new TimePriority()) / beta);
 
-                        map.put(candidate, new Tuple<>(new MatcherTransition(route), transition));
+                        matrix.set(row, column, new MatcherTransition(route), transition);
 
-                        logger.trace("{} -> {} {} {}", predecessor.id(), candidate.id(),
-                                route.length(), transition);
+                        if (logger.isTraceEnabled()) {
+                            logger.trace("{} -> {} {} {}", predecessor.id(), candidate.id(),
+                                    route.length(), transition);
+                        }
                         count.incrementAndGet();
                     }
-
-                    transitions.put(predecessor, map);
                 }
             });
         }
@@ -345,9 +830,136 @@ public class Matcher extends Filter<MatcherCandidate, MatcherTransition, Matcher
 
         sw.stop();
 
-        logger.trace("{} transitions ({} ms)", count.get(), sw.ms());
+        logger.debug("{} transitions, {} of {} routes trivial ({} ms)", count.get(),
+                trivials.get(), predecessors.two().size() * targets.size(), sw.ms());
+    }
 
-        return transitions;
+    /**
+     * Gets routes from a source to targets that are trivial, i.e. the target lies on the same road
+     * ahead of the source or on a successor road of the source's road, which are resolved without
+     * router search. Trivial routes are the same as a router's result, since any other route
+     * passes the end of the source's road and the start of the target's road as well.
+     * <p>
+     * <b>Note:</b> This uses the same cost and bound computation as {@link Dijkstra} such that
+     * targets are only resolved if a bounded search reaches them. Same-road targets are only
+     * resolved if all of them are within the bound, because an exceeded bound stops the search
+     * for all targets.
+     *
+     * @param source Source of the routes.
+     * @param targets Targets of the routes.
+     * @param bound Maximum route length in meters.
+     * @return Map of trivially reachable targets and their routes.
+     */
+    private Map<RoadPoint, List<Road>> trivials(RoadPoint source, Set<RoadPoint> targets,
+            double bound) {
+        Map<RoadPoint, List<Road>> routes = new HashMap<>();
+        Distance distance = new Distance();
+        Road edge = source.edge();
+        double startcost = cost.cost(edge, 1 - source.fraction());
+        double startbound = distance.cost(edge, 1 - source.fraction());
+        boolean bounded = true;
+
+        for (RoadPoint target : targets) {
+            if (target.edge() == edge && target.fraction() >= source.fraction()) {
+                double reachbound = startcost - distance.cost(edge, 1 - target.fraction());
+                if (reachbound > bound) {
+                    bounded = false;
+                    break;
+                }
+                routes.put(target, new ArrayList<>(Arrays.asList(edge)));
+            }
+        }
+
+        if (!bounded) {
+            routes.clear();
+        }
+
+        Iterator<Road> successors = edge.successors();
+        while (successors.hasNext()) {
+            Road successor = successors.next();
+            if (successor == edge) {
+                continue;
+            }
+            for (RoadPoint target : targets) {
+                if (target.edge() != successor) {
+                    continue;
+                }
+                double reachbound = startbound + distance.cost(successor)
+                        - distance.cost(successor, 1 - target.fraction());
+                if (reachbound <= bound) {
+                    routes.put(target, new ArrayList<>(Arrays.asList(edge, successor)));
+                }
+            }
+        }
+
+        return routes;
+    }
+
+    /**
+     * Gets intersection of two search spaces, where null means unrestricted.
+     *
+     * @param left Search space, or null if unrestricted.
+     * @param right Search space, or null if unrestricted.
+     * @return Intersection of both search spaces, or null if both are unrestricted.
+     */
+    private static SearchSpace<Road> intersection(final SearchSpace<Road> left,
+            final SearchSpace<Road> right) {
+        if (left == null || right == null) {
+            return left == null ? right : left;
+        }
+        return new SearchSpace<Road>() {
+            @Override
+            public boolean contains(Road road) {
+                return left.contains(road) && right.contains(road);
+            }
+        };
+    }
+
+    /**
+     * Gets maximum route length in meters between state candidates of two subsequent samples.
+     *
+     * @param previous Previous sample.
+     * @param sample Sample.
+     * @return Maximum route length in meters.
+     */
+    private double bound(MatcherSample previous, MatcherSample sample) {
+        return Math.max(1000d, Math.min(distance, ((sample.time() - previous.time()) / 1000) * 100));
+    }
+
+    /**
+     * Indicates if there is no transition possible between state candidates of two subsequent
+     * samples, i.e. the HMM breaks and matching of the sample is independent of all previous
+     * samples. This is the case if samples are farther apart than the maximum route length plus
+     * twice the search radius of state candidates.
+     *
+     * @param previous Previous sample.
+     * @param sample Sample.
+     * @return True if there is no transition possible, false otherwise.
+     */
+    private boolean independent(MatcherSample previous, MatcherSample sample) {
+        return spatial.distance(previous.point(), sample.point()) > bound(previous, sample)
+                + 2 * radius;
+    }
+
+    /**
+     * Matches a sequence of samples and updates a state with the results.
+     *
+     * @param state State to be updated.
+     * @param samples Sequence of samples ordered by time.
+     * @param minDistance Minimum distance in meters between subsequent samples.
+     * @param minInterval Minimum time interval in milliseconds between subsequent samples.
+     */
+    private void match(MatcherKState state, List<MatcherSample> samples, double minDistance,
+            int minInterval) {
+        for (MatcherSample sample : samples) {
+            if (state.sample() != null && (spatial.distance(sample.point(),
+                    state.sample().point()) < Math.max(0, minDistance)
+                    || (sample.time() - state.sample().time()) < Math.max(0, minInterval))) {
+                continue;
+            }
+            Set<MatcherCandidate> vector = execute(state.vector(), state.sample(), sample);
+            state.update(vector, sample);
+        }
     }
 
     /**
@@ -367,22 +979,227 @@ public class Matcher extends Filter<MatcherCandidate, MatcherTransition, Matcher
         Collections.sort(samples, new Comparator<MatcherSample>() {
             @Override
             public int compare(MatcherSample left, MatcherSample right) {
-                return (int) (left.time() - right.time());
+                return Long.compare(left.time(), right.time());
             }
         });
 
         MatcherKState state = new MatcherKState();
+        match(state, samples, minDistance, minInterval);
 
+        return state;
+    }
+
+    /**
+     * Continues matching of a state, e.g. restored from its token representation, see
+     * {@link MatcherKState#toToken(MatcherCodec)}, with a sequence of samples,
+     * {@link MatcherSample} objects, and updates the state. Samples that are not later than the
+     * most recent sample of the state are skipped, which means that a sequence may also include
+     * samples that have been matched before.
+     *
+     * @param state State representation of a matching, {@link MatcherKState} object, to be
+     *        continued.
+     * @param samples Sequence of samples, {@link MatcherSample} objects.
+     * @param minDistance Minimum distance in meters between subsequent samples as criterion to
+     *        match a sample. (Avoids unnecessary matching where samples are more dense than
+     *        necessary.)
+     * @param minInterval Minimum time interval in milliseconds between subsequent samples as
+     *        criterion to match a sample. (Avoids unnecessary matching where samples are more dense
+     *        than necessary.)
+     */
+    public void mmatch(MatcherKState state, List<MatcherSample> samples, double minDistance,
+            int minInterval) {
+        List<MatcherSample> sorted = new ArrayList<>();
         for (MatcherSample sample : samples) {
-            if (state.sample() != null && (spatial.distance(sample.point(),
+            if (state.sample() == null || sample.time() > state.sample().time()) {
+                sorted.add(sample);
+            }
+        }
+        Collections.sort(sorted, new Comparator<MatcherSample>() {
+            @Override
+            public int compare(MatcherSample left, MatcherSample right) {
+                return Long.compare(left.time(), right.time());
+            }
+        });
+
+        match(state, sorted, minDistance, minInterval);
+    }
+
+    /**
+     * Matches a full sequence of samples, {@link MatcherSample} objects, with the option to split
+     * the sequence into segments that are matched concurrently. The sequence is split where
+     * subsequent samples are farther apart than the maximum route length plus twice the search
+     * radius, which means that the HMM breaks and matching of a segment is independent of all
+     * previous segments. Segment results are then joined to a single state, where each split is
+     * verified with the last matched sample of the previous segment and, if not independent, the
+     * segment is matched sequentially after the previous segment instead. Hence, the result is the
+     * same as of {@link Matcher#mmatch(List, double, int)}.
+     *
+     * @param samples Sequence of samples, {@link MatcherSample} objects.
+     * @param minDistance Minimum distance in meters between subsequent samples as criterion to
+     *        match a sample. (Avoids unnecessary matching where samples are more dense than
+     *        necessary.)
+     * @param minInterval Minimum time interval in milliseconds between subsequent samples as
+     *        criterion to match a sample. (Avoids unnecessary matching where samples are more dense
+     *        than necessary.)
+     * @param parallel True if segments of independent samples shall be matched concurrently,
+     *        false otherwise.
+     * @return State representation of the full matching which is a {@link KState} object.
+     */
+    public MatcherKState mmatch(List<MatcherSample> samples, final double minDistance,
+            final int minInterval, boolean parallel) {
+        if (!parallel) {
+            return mmatch(samples, minDistance, minInterval);
+        }
+
+        Collections.sort(samples, new Comparator<MatcherSample>() {
+            @Override
+            public int compare(MatcherSample left, MatcherSample right) {
+                return Long.compare(left.time(), right.time());
+            }
+        });
+
+        final List<List<MatcherSample>> segments = new ArrayList<>();
+        for (int i = 0; i < samples.size(); ++i) {
+            if (i == 0 || independent(samples.get(i - 1), samples.get(i))) {
+                segments.add(new ArrayList<MatcherSample>());
+            }
+            segments.get(segments.size() - 1).add(samples.get(i));
+        }
+
+        logger.debug("{} samples split into {} segments", samples.size(), segments.size());
+
+        final MatcherKState[] states = new MatcherKState[segments.size()];
+        InlineScheduler scheduler = StaticScheduler.scheduler();
+        for (int i = 0; i < segments.size(); ++i) {
+            final int index = i;
+            scheduler.spawn(new Task() {
+                @Override
+                public void run() {
+                    states[index] = new MatcherKState();
+                    match(states[index], segments.get(index), minDistance, minInterval);
+                }
+            });
+        }
+        if (!scheduler.sync()) {
+            throw new RuntimeException();
+        }
+
+        MatcherKState state = states[0];
+        for (int i = 1; i < segments.size(); ++i) {
+            MatcherKState segment = states[i];
+
+            if (segment.sample() == null) {
+                // No sample of the segment has state candidates, which is the same if matched
+                // sequentially after the previous segment.
+                continue;
+            }
+
+            MatcherSample first = segment.samples().get(0);
+            if (state.sample() != null && !(independent(state.sample(), first)
+                    && spatial.distance(first.point(), state.sample().point()) >= Math.max(0,
+                            minDistance)
+                    && first.time() - state.sample().time() >= Math.max(0, minInterval))) {
+                logger.debug("segment {} is not independent, match sequentially", i);
+                match(state, segments.get(i), minDistance, minInterval);
+                continue;
+            }
+
+            List<Set<MatcherCandidate>> vectors = segment.vectors();
+            List<MatcherSample> matched = segment.samples();
+            for (int j = 0; j < vectors.size(); ++j) {
+                state.update(vectors.get(j), matched.get(j));
+            }
+        }
+
+        return state;
+    }
+
+    /**
+     * Matches a full sequence of samples given as primitive arrays and returns the most likely
+     * sequence in primitive arrays, which is the same as
+     * {@link Matcher#mmatch(List, double, int)} without creation of sample lists and without
+     * traversal of result objects. Samples must be ordered by time.
+     *
+     * @param times Times of measurement in milliseconds epoch time.
+     * @param lon Longitudes of measured positions.
+     * @param lat Latitudes of measured positions.
+     * @param azimuth Azimuths of measurements, or null if unknown.
+     * @param minDistance Minimum distance in meters between subsequent samples as criterion to
+     *        match a sample. (Avoids unnecessary matching where samples are more dense than
+     *        necessary.)
+     * @param minInterval Minimum time interval in milliseconds between subsequent samples as
+     *        criterion to match a sample. (Avoids unnecessary matching where samples are more dense
+     *        than necessary.)
+     * @return {@link MatcherSequence} object with most likely sequence of the matching.
+     */
+    public MatcherSequence mmatch(long[] times, double[] lon, double[] lat, double[] azimuth,
+            double minDistance, int minInterval) {
+        int size = times.length;
+        if (lon.length != size || lat.length != size
+                || (azimuth != null && azimuth.length != size)) {
+            throw new RuntimeException("sample arrays of different length");
+        }
+
+        MatcherKState state = new MatcherKState();
+        int[] matched = new int[size];
+        int count = 0;
+
+        for (int i = 0; i < size; ++i) {
+            if (i > 0 && times[i] < times[i - 1]) {
+                throw new RuntimeException("samples not ordered by time");
+            }
+
+            Point point = new Point(lon[i], lat[i]);
+            if (state.sample() != null && (spatial.distance(point,
                     state.sample().point()) < Math.max(0, minDistance)
-                    || (sample.time() - state.sample().time()) < Math.max(0, minInterval))) {
+                    || (times[i] - state.sample().time()) < Math.max(0, minInterval))) {
                 continue;
             }
+
+            MatcherSample sample =
+                    new MatcherSample(times[i], point, azimuth != null ? azimuth[i] : Double.NaN);
             Set<MatcherCandidate> vector = execute(state.vector(), state.sample(), sample);
+            if (!vector.isEmpty()) {
+                matched[count++] = i;
+            }
             state.update(vector, sample);
         }
 
-        return state;
+        long[] roads = new long[size];
+        boolean[] headings = new boolean[size];
+        double[] fractions = new double[size];
+        int[] offsets = new int[size + 1];
+        Arrays.fill(roads, -1);
+        Arrays.fill(fractions, Double.NaN);
+
+        List<MatcherCandidate> sequence = state.sequence();
+        for (int j = 0; j < count; ++j) {
+            MatcherCandidate candidate = sequence.get(j);
+            Road road = candidate.point().edge();
+            roads[matched[j]] = map.original(road.base().id());
+            headings[matched[j]] = road.heading() == Heading.forward;
+            fractions[matched[j]] = candidate.point().fraction();
+            if (candidate.transition() != null) {
+                offsets[matched[j] + 1] = candidate.transition().route().size();
+            }
+        }
+        for (int i = 0; i < size; ++i) {
+            offsets[i + 1] += offsets[i];
+        }
+
+        long[] edges = new long[offsets[size]];
+        boolean[] directions = new boolean[offsets[size]];
+        for (int j = 0; j < count; ++j) {
+            MatcherCandidate candidate = sequence.get(j);
+            if (candidate.transition() != null) {
+                int offset = offsets[matched[j]];
+                for (Road road : candidate.transition().route().path()) {
+                    edges[offset] = map.original(road.base().id());
+                    directions[offset++] = road.heading() == Heading.forward;
+                }
+            }
+        }
+
+        return new MatcherSequence(roads, headings, fractions, offsets, edges, directions);
     }
 }
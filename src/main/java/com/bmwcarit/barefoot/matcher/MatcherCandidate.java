@@ -37,6 +37,18 @@ public class MatcherCandidate
         this.point = point;
     }
 
+    /**
+     * Creates a matching candidate with a specific identifier.
+     *
+     * @param id Identifier of matching candidate.
+     * @param point {@link RoadPoint} object that is point on the map represented by matching
+     *        candidate.
+     */
+    public MatcherCandidate(String id, RoadPoint point) {
+        super(id);
+        this.point = point;
+    }
+
     /**
      * Creates a matching candidate from its JSON representation.
      *
@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2015, BMW Car IT GmbH
+ *
+ * Author: Sebastian Mattheis <sebastian.mattheis@bmw-carit.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.bmwcarit.barefoot.matcher;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.bmwcarit.barefoot.markov.Codec;
+import com.bmwcarit.barefoot.roadmap.Road;
+import com.bmwcarit.barefoot.roadmap.RoadMap;
+import com.bmwcarit.barefoot.roadmap.RoadPoint;
+import com.bmwcarit.barefoot.roadmap.Route;
+import com.esri.core.geometry.Point;
+
+/**
+ * Codec for binary representation of matching candidates, transitions and samples, where positions
+ * are represented by road id and fraction and routes by their sequence of road ids.
+ */
+public class MatcherCodec extends Codec<MatcherCandidate, MatcherTransition, MatcherSample> {
+    private final RoadMap map;
+
+    /**
+     * Creates {@link MatcherCodec} object.
+     *
+     * @param map {@link RoadMap} object used for creation of matching candidates and transitions.
+     */
+    public MatcherCodec(RoadMap map) {
+        this.map = map;
+    }
+
+    private Road road(long id) throws IOException {
+        Road road = map.get(id);
+        if (road == null) {
+            throw new IOException("road id " + id + " not found");
+        }
+        return road;
+    }
+
+    @Override
+    public void writeCandidate(DataOutput out, MatcherCandidate candidate) throws IOException {
+        out.writeUTF(candidate.id());
+        out.writeDouble(candidate.filtprob());
+        out.writeDouble(candidate.seqprob());
+        out.writeLong(candidate.point().edge().id());
+        out.writeDouble(candidate.point().fraction());
+
+        if (candidate.transition() == null) {
+            out.writeInt(-1);
+        } else {
+            Route route = candidate.transition().route();
+            out.writeInt(route.size());
+            out.writeDouble(route.source().fraction());
+            out.writeDouble(route.target().fraction());
+            for (int i = 0; i < route.size(); ++i) {
+                out.writeLong(route.get(i).id());
+            }
+        }
+    }
+
+    @Override
+    public MatcherCandidate readCandidate(DataInput in) throws IOException {
+        String id = in.readUTF();
+        double filtprob = in.readDouble(), seqprob = in.readDouble();
+        Road road = road(in.readLong());
+
+        MatcherCandidate candidate = new MatcherCandidate(id, new RoadPoint(road, in.readDouble()));
+        candidate.filtprob(filtprob);
+        candidate.seqprob(seqprob);
+
+        int size = in.readInt();
+        if (size > 0) {
+            double source = in.readDouble(), target = in.readDouble();
+            List<Road> roads = new ArrayList<>();
+            for (int i = 0; i < size; ++i) {
+                roads.add(road(in.readLong()));
+            }
+            candidate.transition(new MatcherTransition(
+                    new Route(new RoadPoint(roads.get(0), source),
+                            new RoadPoint(roads.get(size - 1), target), roads)));
+        } else if (size != -1) {
+            throw new IOException("inconsistent binary of matching candidate");
+        }
+
+        return candidate;
+    }
+
+    @Override
+    public void writeSample(DataOutput out, MatcherSample sample) throws IOException {
+        out.writeUTF(sample.id());
+        out.writeLong(sample.time());
+        out.writeDouble(sample.point().getX());
+        out.writeDouble(sample.point().getY());
+        out.writeDouble(sample.azimuth());
+        out.writeDouble(sample.accuracy());
+    }
+
+    @Override
+    public MatcherSample readSample(DataInput in) throws IOException {
+        String id = in.readUTF();
+        long time = in.readLong();
+        double x = in.readDouble(), y = in.readDouble();
+        double azimuth = in.readDouble(), accuracy = in.readDouble();
+        return new MatcherSample(id, time, new Point(x, y), azimuth, accuracy);
+    }
+}
@@ -13,13 +13,29 @@
 
 package com.bmwcarit.barefoot.matcher;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import com.bmwcarit.barefoot.markov.KState;
+import com.bmwcarit.barefoot.roadmap.Contraction;
 import com.bmwcarit.barefoot.roadmap.Road;
 import com.bmwcarit.barefoot.roadmap.RoadMap;
+import com.bmwcarit.barefoot.util.Base64;
 import com.esri.core.geometry.GeometryEngine;
 import com.esri.core.geometry.Polyline;
 import com.esri.core.geometry.WktExportFlags;
@@ -29,6 +45,7 @@ import com.esri.core.geometry.WktExportFlags;
  * matching.
  */
 public class MatcherKState extends KState<MatcherCandidate, MatcherTransition, MatcherSample> {
+    private static final int tokenLimit = 1 << 24;
 
     /**
      * Creates empty {@link MatcherKState} object with default parameters, which means capacity is
@@ -49,6 +66,73 @@ public class MatcherKState extends KState<MatcherCandidate, MatcherTransition, M
         super(json, factory);
     }
 
+    /**
+     * Creates a {@link MatcherKState} object from its binary representation, see
+     * {@link KState#write(java.io.DataOutput, com.bmwcarit.barefoot.markov.Codec)}.
+     *
+     * @param in Input to read binary representation of a {@link MatcherKState} object from.
+     * @param codec {@link MatcherCodec} for reading matcher candidates, transitions and samples.
+     * @throws IOException thrown on read error or if binary representation is invalid.
+     */
+    public MatcherKState(DataInput in, MatcherCodec codec) throws IOException {
+        super(in, codec);
+    }
+
+    /**
+     * Creates a {@link MatcherKState} object from its token representation, see
+     * {@link MatcherKState#toToken(MatcherCodec)}.
+     *
+     * @param token Token representation of a {@link MatcherKState} object.
+     * @param codec {@link MatcherCodec} for reading matcher candidates, transitions and samples.
+     * @throws IOException thrown if token representation is invalid.
+     */
+    public MatcherKState(String token, MatcherCodec codec) throws IOException {
+        super(input(token), codec);
+    }
+
+    /**
+     * Creates a {@link MatcherKState} object from its token representation, see
+     * {@link MatcherKState#toToken(MatcherCodec)}, where <i>&kappa;</i> and <i>&tau;</i>
+     * parameters of the token are replaced, e.g. with the window of a server, since tokens are
+     * provided by clients.
+     *
+     * @param token Token representation of a {@link MatcherKState} object.
+     * @param codec {@link MatcherCodec} for reading matcher candidates, transitions and samples.
+     * @param k <i>&kappa;</i> parameter bounds the length of the state sequence to at most
+     *        <i>&kappa;+1</i> states, if <i>&kappa; &ge; 0</i>.
+     * @param t <i>&tau;</i> parameter bounds length of the state sequence to contain only states
+     *        for the past <i>&tau;</i> milliseconds.
+     * @throws IOException thrown if token representation is invalid.
+     */
+    public MatcherKState(String token, MatcherCodec codec, int k, long t) throws IOException {
+        super(input(token), codec, k, t);
+    }
+
+    private static DataInput input(String token) throws IOException {
+        byte[] compressed = null;
+        try {
+            compressed = Base64.decode(token);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("invalid token: " + e.getMessage());
+        }
+
+        // Inflates the whole token, which verifies its checksum, before any state is read, where
+        // inflated size is limited to reject tokens that inflate excessively.
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (InflaterInputStream in =
+                new InflaterInputStream(new ByteArrayInputStream(compressed))) {
+            byte[] buffer = new byte[4096];
+            int length = 0;
+            while ((length = in.read(buffer)) != -1) {
+                if (bytes.size() + length > tokenLimit) {
+                    throw new IOException("invalid token: exceeds " + tokenLimit + " bytes");
+                }
+                bytes.write(buffer, 0, length);
+            }
+        }
+        return new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+    }
+
     /**
      * Creates an empty {@link MatcherKState} object and sets <i>&kappa;</i> and <i>&tau;</i>
      * parameters.
@@ -62,6 +146,64 @@ public class MatcherKState extends KState<MatcherCandidate, MatcherTransition, M
         super(k, t);
     }
 
+    /**
+     * Creates a copy of this {@link MatcherKState} object, which has been matched with a contracted
+     * {@link RoadMap}, where all matching candidates and transitions are mapped to the original
+     * {@link RoadMap}, see {@link Contraction}.
+     *
+     * @param contraction {@link Contraction} of the {@link RoadMap} used for matching.
+     * @return {@link MatcherKState} object with matching candidates and transitions of the original
+     *         {@link RoadMap}.
+     */
+    public MatcherKState expand(Contraction contraction) {
+        MatcherKState state = new MatcherKState();
+        Map<MatcherCandidate, MatcherCandidate> expanded = new HashMap<>();
+        List<MatcherSample> samples = samples();
+        List<Set<MatcherCandidate>> vectors = vectors();
+
+        for (int i = 0; i < vectors.size(); ++i) {
+            Set<MatcherCandidate> vector = new HashSet<>();
+
+            for (MatcherCandidate candidate : vectors.get(i)) {
+                MatcherCandidate copy =
+                        new MatcherCandidate(contraction.expand(candidate.point()));
+                copy.predecessor(expanded.get(candidate.predecessor()));
+                copy.filtprob(candidate.filtprob());
+                copy.seqprob(candidate.seqprob());
+                if (candidate.transition() != null) {
+                    copy.transition(new MatcherTransition(
+                            contraction.expand(candidate.transition().route())));
+                }
+
+                expanded.put(candidate, copy);
+                vector.add(copy);
+            }
+
+            state.update(vector, samples.get(i));
+        }
+
+        return state;
+    }
+
+    /**
+     * Gets token representation of the {@link MatcherKState} object, which is the compressed binary
+     * representation, see
+     * {@link KState#write(java.io.DataOutput, com.bmwcarit.barefoot.markov.Codec)}, encoded as
+     * Base64 string. It is an opaque and compact representation to be held by clients,
+     * e.g. for continuing matching of a trace.
+     *
+     * @param codec {@link MatcherCodec} for writing matcher candidates, transitions and samples.
+     * @return Token representation of the {@link MatcherKState} object.
+     * @throws IOException thrown on write error.
+     */
+    public String toToken(MatcherCodec codec) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes))) {
+            write(out, codec);
+        }
+        return Base64.encode(bytes.toByteArray());
+    }
+
     /**
      * Gets {@link JSONObject} with GeoJSON format of {@link MatcherKState} matched geometries.
      *
@@ -97,14 +239,17 @@ public class MatcherKState extends KState<MatcherCandidate, MatcherTransition, M
     public String toDebugJSON() throws JSONException {
         StringBuilder output = new StringBuilder();
 
+        List<MatcherSample> samples = this.samples();
+        List<MatcherCandidate> sequence = this.sequence();
+
         JSONArray jsonsamples = new JSONArray();
-        if (this.samples() != null) {
-            for (int i = 0; i < this.samples().size(); ++i) {
+        if (samples != null) {
+            for (int i = 0; i < samples.size(); ++i) {
                 JSONObject jsonsample = new JSONObject();
-                jsonsample.put("id", this.samples().get(i).id());
-                jsonsample.put("geom", GeometryEngine.geometryToWkt(this.samples().get(i).point(),
+                jsonsample.put("id", samples.get(i).id());
+                jsonsample.put("geom", GeometryEngine.geometryToWkt(samples.get(i).point(),
                         WktExportFlags.wktExportPoint));
-                jsonsample.put("time", this.samples().get(i).time() / 1000);
+                jsonsample.put("time", samples.get(i).time() / 1000);
                 jsonsamples.put(jsonsample);
             }
         }
@@ -112,11 +257,11 @@ public class MatcherKState extends KState<MatcherCandidate, MatcherTransition, M
         output.append("\n");
 
         JSONArray jsonsequence = new JSONArray();
-        if (this.sequence() != null) {
-            for (int i = 0; i < this.sequence().size(); ++i) {
-                MatcherCandidate candidate = this.sequence().get(i);
+        if (sequence != null) {
+            for (int i = 0; i < sequence.size(); ++i) {
+                MatcherCandidate candidate = sequence.get(i);
                 JSONObject jsoncandidate = candidate.toJSON();
-                jsoncandidate.put("time", this.samples().get(i).time() / 1000);
+                jsoncandidate.put("time", samples.get(i).time() / 1000);
                 if (candidate.transition() != null) {
                     jsoncandidate.put("geom",
                             GeometryEngine.geometryToWkt(candidate.transition().route().geometry(),
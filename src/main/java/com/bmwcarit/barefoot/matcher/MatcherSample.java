@@ -30,6 +30,7 @@ public class MatcherSample extends com.bmwcarit.barefoot.markov.Sample {
     private final String id;
     private final Point point;
     private final double azimuth;
+    private final double accuracy;
 
     /**
      * Creates a {@link MatcherSample} object with measured position and time of measurement.
@@ -75,10 +76,25 @@ public class MatcherSample extends com.bmwcarit.barefoot.markov.Sample {
      * @param azimuth Azimuth of measurement sample.
      */
     public MatcherSample(String id, long time, Point point, double azimuth) {
+        this(id, time, point, azimuth, Double.NaN);
+    }
+
+    /**
+     * Creates a {@link MatcherSample} object with an identifier, measured position, time of
+     * measurement, azimuth, and accuracy.
+     *
+     * @param id Identifier of sample.
+     * @param time Time of measurement in milliseconds epoch time.
+     * @param point Point of measured position.
+     * @param azimuth Azimuth of measurement sample, or Double.NaN if unknown.
+     * @param accuracy Accuracy of measured position in meters, or Double.NaN if unknown.
+     */
+    public MatcherSample(String id, long time, Point point, double azimuth, double accuracy) {
         super(time);
         this.id = id;
         this.point = point;
         this.azimuth = norm(azimuth);
+        this.accuracy = accuracy;
     }
 
     /**
@@ -99,6 +115,11 @@ public class MatcherSample extends com.bmwcarit.barefoot.markov.Sample {
         } else {
             azimuth = Double.NaN;
         }
+        if (json.has("accuracy")) {
+            accuracy = json.getDouble("accuracy");
+        } else {
+            accuracy = Double.NaN;
+        }
     }
 
     private static double norm(double azimuth) {
@@ -133,6 +154,16 @@ public class MatcherSample extends com.bmwcarit.barefoot.markov.Sample {
         return azimuth;
     }
 
+    /**
+     * Gets (optional) accuracy of position measurement in meters, e.g. the horizontal accuracy
+     * reported by a GPS device.
+     *
+     * @return Accuracy of position measurement in meters, or Double.NaN if not included.
+     */
+    public double accuracy() {
+        return accuracy;
+    }
+
     @Override
     public JSONObject toJSON() throws JSONException {
         JSONObject json = super.toJSON();
@@ -141,6 +172,9 @@ public class MatcherSample extends com.bmwcarit.barefoot.markov.Sample {
         if (!Double.isNaN(azimuth)) {
             json.put("azimuth", azimuth);
         }
+        if (!Double.isNaN(accuracy)) {
+            json.put("accuracy", accuracy);
+        }
         return json;
     }
 }
@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2015, BMW Car IT GmbH
+ *
+ * Author: Sebastian Mattheis <sebastian.mattheis@bmw-carit.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.bmwcarit.barefoot.matcher;
+
+/**
+ * Most likely sequence of a map matching in primitive arrays, see
+ * {@link Matcher#mmatch(long[], double[], double[], double[], double, int)}, with one entry per
+ * sample. Each matched sample has the matched road's id, heading and fraction, and the route from
+ * the previous matched sample, i.e. the sequence of road ids and headings from <i>offsets[i]</i>
+ * (inclusive) to <i>offsets[i+1]</i> (exclusive) of edges and directions. Road ids are
+ * identifiers of the roads as in the road data, i.e. original identifiers if roads have been
+ * renumbered, see {@link com.bmwcarit.barefoot.roadmap.RoadMap#original(long)}, which is the same
+ * as in JSON representations. Samples that are not matched have road id -1, fraction NaN, and an
+ * empty route, which is also the case for the route of the first sample and any sample where the
+ * HMM breaks.
+ */
+public class MatcherSequence {
+    private final long[] roads;
+    private final boolean[] headings;
+    private final double[] fractions;
+    private final int[] offsets;
+    private final long[] edges;
+    private final boolean[] directions;
+
+    /**
+     * Creates a {@link MatcherSequence} object.
+     *
+     * @param roads Matched road ids per sample, -1 if sample is not matched.
+     * @param headings Matched headings per sample, true if forward and false if backward.
+     * @param fractions Matched fractions per sample, NaN if sample is not matched.
+     * @param offsets Offsets of the routes per sample in edges, with one more element than samples.
+     * @param edges Road ids of the routes of all samples.
+     * @param directions Headings of the routes' roads of all samples, true if forward and false if
+     *        backward.
+     */
+    public MatcherSequence(long[] roads, boolean[] headings, double[] fractions, int[] offsets,
+            long[] edges, boolean[] directions) {
+        this.roads = roads;
+        this.headings = headings;
+        this.fractions = fractions;
+        this.offsets = offsets;
+        this.edges = edges;
+        this.directions = directions;
+    }
+
+    /**
+     * Gets number of samples.
+     *
+     * @return Number of samples.
+     */
+    public int size() {
+        return roads.length;
+    }
+
+    /**
+     * Gets matched road ids per sample, -1 if sample is not matched.
+     *
+     * @return Matched road ids per sample.
+     */
+    public long[] roads() {
+        return roads;
+    }
+
+    /**
+     * Gets matched headings per sample, true if forward and false if backward, where the fraction
+     * refers to the road in the heading's direction. The heading of samples that are not matched
+     * is undefined.
+     *
+     * @return Matched headings per sample.
+     */
+    public boolean[] headings() {
+        return headings;
+    }
+
+    /**
+     * Gets matched fractions per sample, NaN if sample is not matched.
+     *
+     * @return Matched fractions per sample.
+     */
+    public double[] fractions() {
+        return fractions;
+    }
+
+    /**
+     * Gets offsets of the routes per sample in edges, see {@link MatcherSequence#edges()}, where
+     * the route of sample <i>i</i> is from <i>offsets[i]</i> (inclusive) to <i>offsets[i+1]</i>
+     * (exclusive).
+     *
+     * @return Offsets of the routes per sample with one more element than samples.
+     */
+    public int[] offsets() {
+        return offsets;
+    }
+
+    /**
+     * Gets road ids of the routes of all samples, see {@link MatcherSequence#offsets()}.
+     *
+     * @return Road ids of the routes of all samples.
+     */
+    public long[] edges() {
+        return edges;
+    }
+
+    /**
+     * Gets headings of the routes' roads of all samples, true if forward and false if backward,
+     * see {@link MatcherSequence#edges()}.
+     *
+     * @return Headings of the routes' roads of all samples.
+     */
+    public boolean[] directions() {
+        return directions;
+    }
+}
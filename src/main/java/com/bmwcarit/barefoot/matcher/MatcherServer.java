@@ -13,11 +13,15 @@
 
 package com.bmwcarit.barefoot.matcher;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.json.JSONArray;
@@ -28,6 +32,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.bmwcarit.barefoot.markov.KState;
+import com.bmwcarit.barefoot.roadmap.Contraction;
 import com.bmwcarit.barefoot.roadmap.Road;
 import com.bmwcarit.barefoot.roadmap.RoadMap;
 import com.bmwcarit.barefoot.roadmap.RoadPoint;
@@ -63,16 +68,34 @@ public class MatcherServer extends AbstractServer {
          * @return List of {@link MatcherSample} objects.
          */
         public List<MatcherSample> format(String input) {
+            try {
+                return format(new JSONTokener(input).nextValue());
+            } catch (JSONException e) {
+                e.printStackTrace();
+                throw new RuntimeException("parsing JSON request: " + e.getMessage());
+            }
+        }
+
+        /**
+         * Converts a parsed request message into a list of {@link MatcherSample} objects as input
+         * for map matching, see {@link InputFormatter#format(String)}.
+         *
+         * @param jsoninput Parsed JSON input format of sample data, i.e. {@link JSONObject} or
+         *        {@link JSONArray} object.
+         * @return List of {@link MatcherSample} objects.
+         */
+        public List<MatcherSample> format(Object jsoninput) {
             List<MatcherSample> samples = new LinkedList<>();
 
             try {
-                Object jsoninput = new JSONTokener(input).nextValue();
                 JSONArray jsonsamples = null;
 
                 if (jsoninput instanceof JSONObject) {
                     jsonsamples = ((JSONObject) jsoninput).getJSONArray("request");
-                } else {
+                } else if (jsoninput instanceof JSONArray) {
                     jsonsamples = ((JSONArray) jsoninput);
+                } else {
+                    throw new RuntimeException("parsing JSON request: no samples");
                 }
 
                 Set<Long> times = new HashSet<>();
@@ -167,33 +190,68 @@ public class MatcherServer extends AbstractServer {
             this.defaultFormatter = defaultFormatter;
         }
 
+        private OutputFormatter formatter(Object jsonrequest) {
+            if (jsonrequest instanceof JSONObject) {
+                String jsonformat = ((JSONObject) jsonrequest).optString("format");
+                if (jsonformat != null) {
+                    switch (jsonformat) {
+                        case "json":
+                            return new OutputFormatter();
+                        case "slimjson":
+                            return new SlimJSONOutputFormatter();
+                        case "geojson":
+                            return new GeoJSONOutputFormatter();
+                        case "debug":
+                            return new DebugJSONOutputFormatter();
+                        default:
+                            break;
+                    }
+                }
+            }
+
+            return defaultFormatter;
+        }
+
         @Override
         public String format(String request, MatcherKState output) {
             try {
-                Object jsonrequest = new JSONTokener(request).nextValue();
-
-                if (jsonrequest instanceof JSONObject) {
-                    String jsonformat = ((JSONObject) jsonrequest).optString("format");
-                    if (jsonformat != null) {
-                        switch (jsonformat) {
-                            case "json":
-                                return new OutputFormatter().format(request, output);
-                            case "slimjson":
-                                return new SlimJSONOutputFormatter().format(request, output);
-                            case "geojson":
-                                return new GeoJSONOutputFormatter().format(request, output);
-                            case "debug":
-                                return new DebugJSONOutputFormatter().format(request, output);
-                            default:
-                                break;
-                        }
-                    }
-                }
+                return format(request, new JSONTokener(request).nextValue(), output, -1);
+            } catch (JSONException e) {
+                throw new RuntimeException("creating JSON response: " + e.getMessage());
+            }
+        }
+
+        /**
+         * Converts map matching output into a response message with the formatter of the parsed
+         * request, where the number of samples rejected as outliers, if not negative, is added as
+         * <i>rejected</i> to JSON, GeoJSON (as foreign member) and debug formats. Slim JSON is an
+         * array and does not report the number of rejected samples.
+         */
+        public String format(String request, Object jsonrequest, MatcherKState output,
+                long rejected) {
+            OutputFormatter formatter = formatter(jsonrequest);
+            if (rejected < 0) {
+                return formatter.format(request, output);
+            }
 
-                return defaultFormatter.format(request, output);
+            try {
+                if (formatter.getClass() == OutputFormatter.class) {
+                    JSONObject json = output.toJSON();
+                    json.put("rejected", rejected);
+                    return json.toString();
+                } else if (formatter.getClass() == GeoJSONOutputFormatter.class) {
+                    JSONObject json = output.toGeoJSON();
+                    json.put("rejected", rejected);
+                    return json.toString();
+                } else if (formatter.getClass() == DebugJSONOutputFormatter.class) {
+                    JSONObject json = new JSONObject();
+                    json.put("rejected", rejected);
+                    return output.toDebugJSON() + "\n" + json.toString();
+                }
             } catch (JSONException e) {
                 throw new RuntimeException("creating JSON response: " + e.getMessage());
             }
+            return formatter.format(request, output);
         }
     }
 
@@ -207,12 +265,30 @@ public class MatcherServer extends AbstractServer {
      * <li>matcher.distance.max (see {@link Matcher#setMaxDistance(double)})</li>
      * <li>matcher.lambda (see {@link Matcher#setLambda(double)})</li>
      * <li>matcher.sigma (see {@link Matcher#setSigma(double)})</li>
+     * <li>matcher.ellipse (see {@link Matcher#ellipse(boolean)})</li>
+     * <li>matcher.beam.width (see {@link Matcher#setBeamWidth(int)})</li>
+     * <li>matcher.beam.threshold (see {@link Matcher#setBeamThreshold(double)})</li>
+     * <li>matcher.candidates.min (see {@link Matcher#setMinCandidates(int)})</li>
+     * <li>matcher.azimuth.max (see {@link Matcher#setMaxAzimuth(double)})</li>
      * <li>matcher.interval.min (milliseconds, optional, default: 1000, sets a minimum time interval
      * of samples to ignore samples that are below minimum interval to reduce workload if data is
      * extremely high sampled)</li>
      * <li>matcher.distance.min (meters, optional, default: 0, sets minimum distance of samples to
      * ignore samples that are below minimum distance to avoid workload if object is moving too
      * little)</li>
+     * <li>matcher.contraction (optional, default: false, matches with a contracted road map, see
+     * {@link Contraction}, and maps results back to the road map)</li>
+     * <li>matcher.outlier.speed (meters per second, optional, default: 0, rejects samples that
+     * imply a higher speed, see {@link KinematicFilter})</li>
+     * <li>matcher.outlier.acceleration (meters per square second, optional, default: 0, rejects
+     * samples that imply a higher acceleration, see {@link KinematicFilter})</li>
+     * <li>matcher.decimation (optional, default: false, removes redundant samples before matching
+     * and reattaches them to the matching, see {@link Decimator})</li>
+     * <li>matcher.state.window (optional, default: 100, number of most recent samples kept in
+     * state tokens for continued matching, see {@link MatcherKState#toToken(MatcherCodec)}, which
+     * also applies to tokens of requests and is unbounded if set to zero)</li>
+     * <li>matcher.scheduler (optional, default: worker, sets the scheduler of matcher threads,
+     * which is either worker or forkjoin, see {@link StaticScheduler})</li>
      * </ul>
      *
      * @param properties {@link Properties} object with (optional) server and matcher settings.
@@ -236,16 +312,31 @@ public class MatcherServer extends AbstractServer {
     }
 
     private static class MatcherResponseFactory extends ResponseFactory {
+        private final RoadMap map;
         private final Matcher matcher;
+        private final Contraction contraction;
+        private final Decimator decimator;
         private final InputFormatter input;
-        private final OutputFormatter output;
+        private final AdaptiveOutputFormatter output;
         private final int interval;
         private final double distance;
+        private final double speed;
+        private final double acceleration;
+        private final int window;
+        private final MatcherCodec codec;
 
         public MatcherResponseFactory(Properties properties, RoadMap map, InputFormatter input,
                 OutputFormatter output) {
-            matcher = new Matcher(map, new Dijkstra<Road, RoadPoint>(), new TimePriority(),
-                    new Geography());
+            this.map = map;
+            if (Boolean.parseBoolean(properties.getProperty("matcher.contraction", "false"))) {
+                contraction = Contraction.Contract(map);
+                matcher = new Matcher(contraction.contracted(), new Dijkstra<Road, RoadPoint>(),
+                        new TimePriority(), new Geography());
+            } else {
+                contraction = null;
+                matcher = new Matcher(map, new Dijkstra<Road, RoadPoint>(), new TimePriority(),
+                        new Geography());
+            }
 
             matcher.setMaxRadius(Double.parseDouble(properties.getProperty("matcher.radius.max",
                     Double.toString(matcher.getMaxRadius()))));
@@ -257,13 +348,42 @@ public class MatcherServer extends AbstractServer {
                     properties.getProperty("matcher.sigma", Double.toString(matcher.getSigma()))));
             matcher.shortenTurns(
                     Boolean.parseBoolean(properties.getProperty("matcher.shortenturns", "true")));
+            matcher.ellipse(
+                    Boolean.parseBoolean(properties.getProperty("matcher.ellipse", "false")));
+            matcher.setBeamWidth(Integer.parseInt(properties.getProperty("matcher.beam.width",
+                    Integer.toString(matcher.getBeamWidth()))));
+            matcher.setBeamThreshold(Double.parseDouble(properties.getProperty(
+                    "matcher.beam.threshold", Double.toString(matcher.getBeamThreshold()))));
+            matcher.setMinCandidates(Integer.parseInt(properties.getProperty(
+                    "matcher.candidates.min", Integer.toString(matcher.getMinCandidates()))));
+            matcher.setMaxAzimuth(Double.parseDouble(properties.getProperty(
+                    "matcher.azimuth.max", Double.toString(matcher.getMaxAzimuth()))));
+            if (Boolean.parseBoolean(properties.getProperty("matcher.decimation", "false"))) {
+                decimator = new Decimator(map, new Geography());
+                decimator.setTolerance(matcher.getSigma());
+            } else {
+                decimator = null;
+            }
+            window = Integer.parseInt(properties.getProperty("matcher.state.window", "100"));
+            codec = new MatcherCodec(contraction != null ? contraction.contracted() : map);
             interval = Integer.parseInt(properties.getProperty("matcher.interval.min", "1000"));
             distance = Integer.parseInt(properties.getProperty("matcher.distance.min", "0"));
+            speed = Double.parseDouble(properties.getProperty("matcher.outlier.speed", "0"));
+            acceleration =
+                    Double.parseDouble(properties.getProperty("matcher.outlier.acceleration", "0"));
 
             int matcherThreads = Integer.parseInt(properties.getProperty("matcher.threads",
                     Integer.toString(Runtime.getRuntime().availableProcessors())));
 
-            StaticScheduler.reset(matcherThreads, (long) 1E4);
+            String matcherScheduler = properties.getProperty("matcher.scheduler", "worker");
+
+            if (matcherScheduler.equals("forkjoin")) {
+                StaticScheduler.reset(new ForkJoinPool(matcherThreads));
+            } else if (matcherScheduler.equals("worker")) {
+                StaticScheduler.reset(matcherThreads, (long) 1E4);
+            } else {
+                throw new RuntimeException("unknown scheduler " + matcherScheduler);
+            }
 
             this.input = input;
             this.output = new AdaptiveOutputFormatter(output);
@@ -273,9 +393,93 @@ public class MatcherServer extends AbstractServer {
             logger.info("matcher.lambda={}", matcher.getLambda());
             logger.info("matcher.sigma={}", matcher.getSigma());
             logger.info("matcher.threads={}", matcherThreads);
+            logger.info("matcher.scheduler={}", matcherScheduler);
             logger.info("matcher.shortenturns={}", matcher.shortenTurns());
+            logger.info("matcher.ellipse={}", matcher.ellipse());
+            logger.info("matcher.beam.width={}", matcher.getBeamWidth());
+            logger.info("matcher.beam.threshold={}", matcher.getBeamThreshold());
+            logger.info("matcher.candidates.min={}", matcher.getMinCandidates());
+            logger.info("matcher.azimuth.max={}", matcher.getMaxAzimuth());
             logger.info("matcher.interval.min={}", interval);
             logger.info("matcher.distance.min={}", distance);
+            logger.info("matcher.outlier.speed={}", speed);
+            logger.info("matcher.outlier.acceleration={}", acceleration);
+            logger.info("matcher.contraction={}", contraction != null);
+            logger.info("matcher.decimation={}", decimator != null);
+            logger.info("matcher.state.window={}", window);
+        }
+
+        private static String token(Object jsonrequest) {
+            try {
+                if (jsonrequest instanceof JSONObject && ((JSONObject) jsonrequest).has("state")) {
+                    return ((JSONObject) jsonrequest).getString("state");
+                }
+                return null;
+            } catch (JSONException e) {
+                throw new RuntimeException("parsing JSON request: " + e.getMessage());
+            }
+        }
+
+        private static boolean full(Object jsonrequest) {
+            return jsonrequest instanceof JSONObject
+                    && ((JSONObject) jsonrequest).optBoolean("full");
+        }
+
+        /**
+         * Replaces road identifiers in JSON lines of a response message with original identifiers,
+         * if roads of the road map have been renumbered, see {@link RoadMap#originals(Object)}.
+         */
+        private String originals(String result) {
+            if (!map.renumbered()) {
+                return result;
+            }
+
+            try {
+                StringBuilder lines = new StringBuilder();
+                for (String line : result.split("\n")) {
+                    if (line.trim().isEmpty()) {
+                        continue;
+                    }
+                    Object json = new JSONTokener(line).nextValue();
+                    map.originals(json);
+                    if (lines.length() > 0) {
+                        lines.append("\n");
+                    }
+                    lines.append(json.toString());
+                }
+                return lines.toString();
+            } catch (JSONException e) {
+                throw new RuntimeException("creating JSON response: " + e.getMessage());
+            }
+        }
+
+        /**
+         * Gets most likely sequence of a state for samples later than a point in time, where the
+         * first matching candidate keeps its transition from the previous sample.
+         */
+        private static MatcherKState since(MatcherKState state, long time) {
+            MatcherKState result = new MatcherKState();
+            List<MatcherSample> samples = state.samples();
+            List<MatcherCandidate> sequence = state.sequence();
+            MatcherCandidate previous = null;
+
+            for (int i = 0; i < samples.size(); ++i) {
+                if (samples.get(i).time() <= time) {
+                    continue;
+                }
+
+                MatcherCandidate candidate = sequence.get(i);
+                MatcherCandidate copy = new MatcherCandidate(candidate.point());
+                copy.predecessor(previous);
+                copy.filtprob(candidate.filtprob());
+                copy.seqprob(candidate.seqprob());
+                copy.transition(candidate.transition());
+                result.update(new HashSet<>(Collections.singletonList(copy)), samples.get(i));
+
+                previous = copy;
+            }
+
+            return result;
         }
 
         @Override
@@ -287,21 +491,122 @@ public class MatcherServer extends AbstractServer {
                         Stopwatch sw = new Stopwatch();
                         sw.start();
 
-                        final List<MatcherSample> samples = input.format(request);
+                        // Parses the request once for samples, state token and output format.
+                        Object jsonrequest = null;
+                        try {
+                            jsonrequest = new JSONTokener(request).nextValue();
+                        } catch (JSONException e) {
+                            throw new RuntimeException("parsing JSON request: " + e.getMessage());
+                        }
+
+                        List<MatcherSample> formatted =
+                                input.getClass() == InputFormatter.class ? input.format(jsonrequest)
+                                        : input.format(request);
+                        final String token = token(jsonrequest);
+                        final boolean full = token != null && full(jsonrequest);
                         final AtomicReference<MatcherKState> state = new AtomicReference<>();
+                        final AtomicReference<String> next = new AtomicReference<>();
+
+                        // Decodes the state before filtering, where samples of the state are
+                        // skipped if resubmitted and the state's samples seed the outlier filter.
+                        MatcherKState decoded = null;
+                        long time = Long.MIN_VALUE;
+                        if (token != null) {
+                            try {
+                                int k = window > 0 ? window - 1 : -1;
+                                decoded = token.isEmpty() ? new MatcherKState(k, -1)
+                                        : new MatcherKState(token, codec, k, -1);
+                            } catch (IOException e) {
+                                throw new RuntimeException("continuing state: " + e.getMessage());
+                            }
+                            if (decoded.sample() != null) {
+                                time = decoded.sample().time();
+                                List<MatcherSample> newer = new ArrayList<>();
+                                for (MatcherSample sample : formatted) {
+                                    if (sample.time() > time) {
+                                        newer.add(sample);
+                                    }
+                                }
+                                formatted = newer;
+                            }
+                        }
+
+                        long rejected = -1;
+                        if (speed > 0 || acceleration > 0) {
+                            KinematicFilter filter =
+                                    new KinematicFilter(new Geography(), speed, acceleration);
+                            filter.setTolerance(2 * matcher.getSigma());
+                            if (decoded != null) {
+                                filter.seed(decoded.samples());
+                            }
+                            formatted = filter.filter(formatted);
+                            rejected = filter.rejected();
+                            logger.debug("{} of {} samples rejected as outliers", rejected,
+                                    filter.rejected() + filter.accepted());
+                        }
+
+                        final List<MatcherSample> samples = formatted;
+                        final MatcherKState continued = decoded;
+                        final long last = time;
 
                         InlineScheduler scheduler = StaticScheduler.scheduler();
                         scheduler.spawn(new Task() {
                             @Override
                             public void run() {
-                                state.set(matcher.mmatch(samples, distance, interval));
+                                MatcherKState result = null;
+                                List<MatcherSample> attached = samples;
+                                List<MatcherSample> decimated =
+                                        decimator != null ? decimator.decimate(samples) : samples;
+
+                                if (continued == null) {
+                                    result = matcher.mmatch(decimated, distance, interval);
+                                } else {
+                                    matcher.mmatch(continued, decimated, distance, interval);
+                                    try {
+                                        next.set(continued.toToken(codec));
+                                    } catch (IOException e) {
+                                        throw new RuntimeException(
+                                                "continuing state: " + e.getMessage());
+                                    }
+                                    result = full ? continued : since(continued, last);
+
+                                    // Reattaches only new samples, and samples of the state as
+                                    // they are, if the full state is responded.
+                                    if (full) {
+                                        attached = new ArrayList<>(samples);
+                                        for (MatcherSample sample : continued.samples()) {
+                                            if (sample.time() <= last) {
+                                                attached.add(sample);
+                                            }
+                                        }
+                                    }
+                                }
+
+                                if (contraction != null) {
+                                    result = result.expand(contraction);
+                                }
+                                state.set(decimator != null ? decimator.reattach(result, attached)
+                                        : result);
                             }
                         });
                         if (!scheduler.sync()) {
                             return RESULT.ERROR;
                         }
 
-                        String result = output.format(request, state.get());
+                        String result =
+                                output.format(request, jsonrequest, state.get(), rejected);
+                        result = originals(result);
+                        if (token != null) {
+                            try {
+                                JSONObject json = new JSONObject();
+                                json.put("state", next.get());
+                                json.put("response", new JSONTokener(result).nextValue());
+                                result = json.toString();
+                            } catch (JSONException e) {
+                                throw new RuntimeException(
+                                        "creating JSON response: " + e.getMessage());
+                            }
+                        }
                         response.append(result);
 
                         sw.stop();
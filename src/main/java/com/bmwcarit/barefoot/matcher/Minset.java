@@ -13,7 +13,8 @@
 
 package com.bmwcarit.barefoot.matcher;
 
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Set;
@@ -69,47 +70,99 @@ public abstract class Minset {
      * @return Minimized (reduced) set of matching candidates as {@link RoadPoint} objects.
      */
     public static Set<RoadPoint> minimize(Set<RoadPoint> candidates) {
+        int size = candidates.size();
+        RoadPoint[] points = candidates.toArray(new RoadPoint[size]);
+        long[] ids = new long[size];
 
-        HashMap<Long, RoadPoint> map = new HashMap<>();
-        HashMap<Long, Integer> misses = new HashMap<>();
-        HashSet<Long> removes = new HashSet<>();
+        size = sort(points, ids, size);
+        size = minimize(points, ids, size, new int[size], new boolean[size]);
 
-        for (RoadPoint candidate : candidates) {
-            map.put(candidate.edge().id(), candidate);
-            misses.put(candidate.edge().id(), 0);
+        return new HashSet<>(Arrays.asList(points).subList(0, size));
+    }
+
+    private static final Comparator<RoadPoint> order = new Comparator<RoadPoint>() {
+        @Override
+        public int compare(RoadPoint left, RoadPoint right) {
+            return Long.compare(left.edge().id(), right.edge().id());
         }
+    };
 
-        for (RoadPoint candidate : candidates) {
-            Iterator<Road> successors = candidate.edge().successors();
-            Long id = candidate.edge().id();
+    /**
+     * Sorts matching candidates by road identifier and removes matching candidates of the same
+     * road, which prepares arrays for {@link Minset#minimize(RoadPoint[], long[], int, int[],
+     * boolean[])}.
+     *
+     * @param points Array of matching candidates, where the first <i>size</i> elements are to be
+     *        sorted.
+     * @param ids Array of at least <i>size</i> elements to be filled with road identifiers of
+     *        matching candidates.
+     * @param size Number of matching candidates.
+     * @return Number of matching candidates with distinct roads, which are the first elements of
+     *         the arrays.
+     */
+    static int sort(RoadPoint[] points, long[] ids, int size) {
+        Arrays.sort(points, 0, size, order);
 
-            while (successors.hasNext()) {
-                Road successor = successors.next();
+        int count = 0;
+        for (int i = 0; i < size; ++i) {
+            if (count > 0 && ids[count - 1] == points[i].edge().id()) {
+                continue;
+            }
+            ids[count] = points[i].edge().id();
+            points[count++] = points[i];
+        }
+        Arrays.fill(points, count, size, null);
+        return count;
+    }
 
-                if (!map.containsKey(successor.id())) {
-                    misses.put(id, misses.get(id) + 1);
-                }
+    /**
+     * Removes semantically redundant matching candidates, see {@link Minset#minimize(Set)}, in
+     * place of arrays without allocation of any collections, which is intended for reuse of
+     * arrays.
+     *
+     * @param points Array of matching candidates sorted by road identifier, see
+     *        {@link Minset#sort(RoadPoint[], long[], int)}.
+     * @param ids Array of road identifiers of matching candidates.
+     * @param size Number of matching candidates.
+     * @param misses Working array of at least <i>size</i> elements.
+     * @param removes Working array of at least <i>size</i> elements.
+     * @return Number of remaining matching candidates, which are the first elements of the arrays
+     *         in the same order.
+     */
+    static int minimize(RoadPoint[] points, long[] ids, int size, int[] misses,
+            boolean[] removes) {
+        Arrays.fill(misses, 0, size, 0);
+        Arrays.fill(removes, 0, size, false);
+
+        for (int i = 0; i < size; ++i) {
+            Iterator<Road> successors = points[i].edge().successors();
 
-                if (map.containsKey(successor.id())
-                        && round(map.get(successor.id()).fraction()) == 0) {
-                    removes.add(successor.id());
-                    misses.put(id, misses.get(id) + 1);
+            while (successors.hasNext()) {
+                int j = Arrays.binarySearch(ids, 0, size, successors.next().id());
+
+                if (j < 0) {
+                    misses[i] += 1;
+                } else if (round(points[j].fraction()) == 0) {
+                    removes[j] = true;
+                    misses[i] += 1;
                 }
             }
         }
 
-        for (RoadPoint candidate : candidates) {
-            Long id = candidate.edge().id();
-            if (map.containsKey(id) && !removes.contains(id) && round(candidate.fraction()) == 1
-                    && misses.get(id) == 0) {
-                removes.add(id);
+        for (int i = 0; i < size; ++i) {
+            if (!removes[i] && round(points[i].fraction()) == 1 && misses[i] == 0) {
+                removes[i] = true;
             }
         }
 
-        for (Long id : removes) {
-            map.remove(id);
+        int count = 0;
+        for (int i = 0; i < size; ++i) {
+            if (!removes[i]) {
+                ids[count] = ids[i];
+                points[count++] = points[i];
+            }
         }
-
-        return new HashSet<>(map.values());
+        Arrays.fill(points, count, size, null);
+        return count;
     }
 }
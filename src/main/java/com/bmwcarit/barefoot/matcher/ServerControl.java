@@ -44,7 +44,7 @@ public abstract class ServerControl {
      * matcher and server properties, see
      * {@link MatcherServer#MatcherServer(Properties, RoadMap, InputFormatter, OutputFormatter)}.
      * Database properties file must include database connection properties, see
-     * {@link Loader#roadmap(Properties, boolean)}.
+     * {@link Loader#snapshot(Properties)}.
      *
      * @param pathServerProperties Path to server properties file.
      * @param pathDatabaseProperties Path to database properties file.
@@ -69,12 +69,11 @@ public abstract class ServerControl {
 
         RoadMap map = null;
         try {
-            map = Loader.roadmap(databaseProperties, true);
+            map = Loader.snapshot(databaseProperties);
         } catch (SourceException e) {
             logger.error("loading map failed:", e);
             System.exit(1);
         }
-        map.construct();
 
         try {
             logger.info("read tracker properties from file {}", pathServerProperties);
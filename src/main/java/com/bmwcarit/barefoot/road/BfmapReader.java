@@ -13,6 +13,11 @@
 
 package com.bmwcarit.barefoot.road;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
@@ -21,6 +26,7 @@ import java.io.ObjectInputStream;
 import java.util.HashSet;
 
 import com.bmwcarit.barefoot.util.SourceException;
+import com.esri.core.geometry.Envelope2D;
 import com.esri.core.geometry.GeometryEngine;
 import com.esri.core.geometry.Polygon;
 import com.esri.core.geometry.SpatialReference;
@@ -28,13 +34,22 @@ import com.esri.core.geometry.SpatialReference;
 /**
  * Barefoot map road reader for reading {@link BaseRoad} object from barefoot map files, usually
  * with file extension 'bfmap'.
+ * <p>
+ * <b>Note:</b> Files written by {@link BfmapWriter} are organized in blocks with bounding boxes and
+ * road type summaries, which allows to skip whole blocks that cannot intersect the polygon or
+ * contain only excluded road types. Files of the former format, i.e. a plain sequence of serialized
+ * {@link BaseRoad} objects, are still supported.
  */
 public class BfmapReader implements RoadReader {
 
     private final String path;
+    private DataInputStream input = null;
     private ObjectInput reader = null;
+    private int remaining = 0;
+    private boolean legacy = false;
     private HashSet<Short> exclusions = null;
     private Polygon polygon = null;
+    private Envelope2D envelope = null;
 
     /**
      * Constructs a {@link BfmapReader} object reading from a file.
@@ -47,7 +62,7 @@ public class BfmapReader implements RoadReader {
 
     @Override
     public boolean isOpen() {
-        if (reader != null) {
+        if (input != null) {
             return true;
         } else {
             return false;
@@ -62,9 +77,35 @@ public class BfmapReader implements RoadReader {
     @Override
     public void open(Polygon polygon, HashSet<Short> exclusions) throws SourceException {
         try {
-            this.reader = new ObjectInputStream(new FileInputStream(path));
+            BufferedInputStream stream = new BufferedInputStream(new FileInputStream(path));
+            stream.mark(8);
+            DataInputStream input = new DataInputStream(stream);
+
+            if (input.readInt() == BfmapWriter.magic) {
+                int version = input.readInt();
+                if (version != BfmapWriter.version) {
+                    input.close();
+                    throw new SourceException("File format version " + version + " not supported.");
+                }
+                this.legacy = false;
+                this.reader = null;
+            } else {
+                stream.reset();
+                this.legacy = true;
+                this.reader = new ObjectInputStream(stream);
+            }
+
+            this.input = input;
+            this.remaining = 0;
             this.exclusions = exclusions;
             this.polygon = polygon;
+
+            if (polygon != null) {
+                this.envelope = new Envelope2D();
+                polygon.queryEnvelope2D(this.envelope);
+            } else {
+                this.envelope = null;
+            }
         } catch (FileNotFoundException e) {
             throw new SourceException("File could not be found for path: " + path);
         } catch (IOException e) {
@@ -75,7 +116,9 @@ public class BfmapReader implements RoadReader {
     @Override
     public void close() throws SourceException {
         try {
-            reader.close();
+            input.close();
+            input = null;
+            reader = null;
         } catch (IOException e) {
             throw new SourceException("Closing file failed.");
         }
@@ -90,15 +133,33 @@ public class BfmapReader implements RoadReader {
         try {
             BaseRoad road = null;
             do {
+                if (legacy) {
+                    road = (BaseRoad) reader.readObject();
+                    if (road == null) {
+                        return null;
+                    }
+                    continue;
+                }
+
+                while (remaining == 0) {
+                    if (!block()) {
+                        return null;
+                    }
+                }
+
+                remaining -= 1;
+                Envelope2D env = envelope(reader);
                 road = (BaseRoad) reader.readObject();
-                if (road == null) {
-                    return null;
+
+                if (envelope != null && !envelope.isIntersecting(env)) {
+                    road = null;
                 }
-            } while (exclusions != null && exclusions.contains(road.type()) || polygon != null
-                    && !GeometryEngine.contains(polygon, road.geometry(),
-                            SpatialReference.create(4326))
-                    && !GeometryEngine.overlaps(polygon, road.geometry(),
-                            SpatialReference.create(4326)));
+            } while (road == null || exclusions != null && exclusions.contains(road.type())
+                    || polygon != null
+                            && !GeometryEngine.contains(polygon, road.geometry(),
+                                    SpatialReference.create(4326))
+                            && !GeometryEngine.overlaps(polygon, road.geometry(),
+                                    SpatialReference.create(4326)));
 
             return road;
         } catch (ClassNotFoundException e) {
@@ -107,4 +168,51 @@ public class BfmapReader implements RoadReader {
             throw new SourceException("Reading file failed: " + e.getMessage());
         }
     }
+
+    /**
+     * Reads next block header and either skips the block or prepares reading its roads.
+     *
+     * @return False if end of file is reached, true otherwise.
+     */
+    private boolean block() throws IOException {
+        int size = input.readInt();
+        if (size == 0) {
+            return false;
+        }
+
+        Envelope2D env = envelope(input);
+        int count = input.readShort();
+        boolean included = exclusions == null;
+        for (int i = 0; i < count; ++i) {
+            short type = input.readShort();
+            if (!included && !exclusions.contains(type)) {
+                included = true;
+            }
+        }
+        int length = input.readInt();
+
+        if (!included || envelope != null && !envelope.isIntersecting(env)) {
+            while (length > 0) {
+                int skipped = input.skipBytes(length);
+                if (skipped <= 0) {
+                    throw new EOFException();
+                }
+                length -= skipped;
+            }
+            remaining = 0;
+        } else {
+            byte[] payload = new byte[length];
+            input.readFully(payload);
+            reader = new ObjectInputStream(new ByteArrayInputStream(payload));
+            remaining = size;
+        }
+
+        return true;
+    }
+
+    private static Envelope2D envelope(DataInput input) throws IOException {
+        double xmin = input.readDouble(), ymin = input.readDouble();
+        double xmax = input.readDouble(), ymax = input.readDouble();
+        return new Envelope2D(xmin, ymin, xmax, ymax);
+    }
 }
@@ -13,31 +13,90 @@
 
 package com.bmwcarit.barefoot.road;
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.ObjectOutput;
 import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import com.bmwcarit.barefoot.util.SourceException;
+import com.bmwcarit.barefoot.util.Tuple;
+import com.esri.core.geometry.Envelope2D;
 
 /**
  * Barefoot map road writer for writing {@link BaseRoad} to barefoot map files, usually with file
  * extension 'bfmap'.
+ * <p>
+ * <b>Note:</b> Roads are written in blocks of spatially close roads, where each block has a header
+ * with its bounding box and the set of road types it contains. This allows {@link BfmapReader} to
+ * skip whole blocks when reading only a region or a subset of road types. A bounded number of
+ * tiles with partial blocks is kept open, where the tile opened first is flushed if another tile
+ * must be opened, and remaining tiles are flushed in the same order on closing. This makes files
+ * deterministic and keeps the order of roads as written, e.g. with {@link HilbertReader}, apart
+ * from grouping of close roads into blocks.
  */
 public class BfmapWriter implements RoadWriter {
+    static final int magic = 0x62666d62;
+    static final int version = 1;
     private final String path;
-    private ObjectOutput writer = null;
+    private final int blocksize;
+    private final double tilesize;
+    private final int tiles;
+    private DataOutputStream writer = null;
+    private Map<Long, List<Tuple<BaseRoad, Envelope2D>>> blocks = null;
 
     /**
-     * Constructs a {@link BfmapWriter} object writing to a file.
+     * Constructs a {@link BfmapWriter} object writing to a file with default block size of 1024
+     * roads, blocks of roads within 0.1 degree tiles, and at most 64 open tiles.
      * <p>
      * <b>Note:</b> If the file exists, it will be overwritten.
      *
      * @param path Path to the barefoot map file to be written.
      */
     public BfmapWriter(String path) {
+        this(path, 1024, 0.1);
+    }
+
+    /**
+     * Constructs a {@link BfmapWriter} object writing to a file.
+     * <p>
+     * <b>Note:</b> If the file exists, it will be overwritten.
+     *
+     * @param path Path to the barefoot map file to be written.
+     * @param blocksize Maximum number of roads per block.
+     * @param tilesize Size of tiles in degrees, which groups roads by their bounding box center
+     *        into blocks.
+     */
+    public BfmapWriter(String path, int blocksize, double tilesize) {
+        this(path, blocksize, tilesize, 64);
+    }
+
+    /**
+     * Constructs a {@link BfmapWriter} object writing to a file.
+     * <p>
+     * <b>Note:</b> If the file exists, it will be overwritten.
+     *
+     * @param path Path to the barefoot map file to be written.
+     * @param blocksize Maximum number of roads per block.
+     * @param tilesize Size of tiles in degrees, which groups roads by their bounding box center
+     *        into blocks.
+     * @param tiles Maximum number of open tiles, i.e. partial blocks held in memory.
+     */
+    public BfmapWriter(String path, int blocksize, double tilesize, int tiles) {
         this.path = path;
+        this.blocksize = blocksize;
+        this.tilesize = tilesize;
+        this.tiles = tiles;
     }
 
     @Override
@@ -52,7 +111,10 @@ public class BfmapWriter implements RoadWriter {
     @Override
     public void open() throws SourceException {
         try {
-            writer = new ObjectOutputStream(new FileOutputStream(path));
+            writer = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path)));
+            writer.writeInt(magic);
+            writer.writeInt(version);
+            blocks = new LinkedHashMap<>();
         } catch (FileNotFoundException e) {
             throw new SourceException("File could not be found.");
         } catch (IOException e) {
@@ -63,9 +125,13 @@ public class BfmapWriter implements RoadWriter {
     @Override
     public void close() throws SourceException {
         try {
-            writer.writeObject(null);
+            for (List<Tuple<BaseRoad, Envelope2D>> block : blocks.values()) {
+                flush(block);
+            }
+            writer.writeInt(0);
             writer.close();
             writer = null;
+            blocks = null;
         } catch (IOException e) {
             throw new SourceException("Closing writer failed: " + e.getMessage());
         }
@@ -77,10 +143,71 @@ public class BfmapWriter implements RoadWriter {
             throw new SourceException("Writer is not open.");
         }
 
+        Envelope2D envelope = new Envelope2D();
+        road.geometry().queryEnvelope2D(envelope);
+
+        long tile = ((long) Math.floor((envelope.getCenterX() + 180) / tilesize) << 32)
+                | (long) Math.floor((envelope.getCenterY() + 90) / tilesize);
+
         try {
-            writer.writeObject(road);
+            List<Tuple<BaseRoad, Envelope2D>> block = blocks.get(tile);
+            if (block == null) {
+                if (blocks.size() >= tiles) {
+                    Iterator<List<Tuple<BaseRoad, Envelope2D>>> eldest =
+                            blocks.values().iterator();
+                    flush(eldest.next());
+                    eldest.remove();
+                }
+                block = new ArrayList<>(blocksize);
+                blocks.put(tile, block);
+            }
+
+            block.add(new Tuple<>(road, envelope));
+
+            if (block.size() >= blocksize) {
+                flush(block);
+                blocks.remove(tile);
+            }
         } catch (IOException e) {
             throw new SourceException("Writing failed: " + e.getMessage());
         }
     }
+
+    private void flush(List<Tuple<BaseRoad, Envelope2D>> block) throws IOException {
+        if (block.isEmpty()) {
+            return;
+        }
+
+        Envelope2D envelope = new Envelope2D();
+        envelope.setEmpty();
+        Set<Short> types = new HashSet<>();
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+        try (ObjectOutputStream payload = new ObjectOutputStream(buffer)) {
+            for (Tuple<BaseRoad, Envelope2D> road : block) {
+                envelope.merge(road.two());
+                types.add(road.one().type());
+
+                write(payload, road.two());
+                payload.writeObject(road.one());
+            }
+        }
+
+        writer.writeInt(block.size());
+        write(writer, envelope);
+        writer.writeShort(types.size());
+        for (Short type : types) {
+            writer.writeShort(type);
+        }
+        writer.writeInt(buffer.size());
+        buffer.writeTo(writer);
+    }
+
+    private static void write(DataOutput output, Envelope2D envelope)
+            throws IOException {
+        output.writeDouble(envelope.getLowerLeft().getX());
+        output.writeDouble(envelope.getLowerLeft().getY());
+        output.writeDouble(envelope.getUpperRight().getX());
+        output.writeDouble(envelope.getUpperRight().getY());
+    }
 }
@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) 2015, BMW Car IT GmbH
+ *
+ * Author: Sebastian Mattheis <sebastian.mattheis@bmw-carit.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.bmwcarit.barefoot.road;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.bmwcarit.barefoot.util.SourceException;
+import com.bmwcarit.barefoot.util.Tuple;
+import com.esri.core.geometry.Envelope2D;
+import com.esri.core.geometry.Polygon;
+
+/**
+ * Road reader that renumbers {@link BaseRoad} objects of some other {@link RoadReader} along a
+ * Hilbert curve of their midpoints (bounding box centers). Roads that are spatial neighbors get
+ * close identifiers, which are sequential starting with zero, such that road map data structures,
+ * e.g. graph and spatial index, are laid out in that order.
+ * <p>
+ * <b>Note:</b> Reference identifiers ({@link BaseRoad#refid()}) are kept, and original identifiers
+ * are available with {@link HilbertReader#ids()} and can be persisted with
+ * {@link HilbertReader#write(String)}.
+ */
+public class HilbertReader implements RoadReader {
+    private static final Logger logger = LoggerFactory.getLogger(HilbertReader.class);
+    private final static int order = 16;
+    private final RoadReader reader;
+    private long[] ids = null;
+    private Iterator<BaseRoad> iterator = null;
+
+    /**
+     * Constructs {@link HilbertReader} object.
+     *
+     * @param reader {@link RoadReader} of the roads to be renumbered.
+     */
+    public HilbertReader(RoadReader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * Gets Hilbert curve index of a position in WGS-84 coordinates on a grid of 2<sup>16</sup>
+     * &times; 2<sup>16</sup> cells.
+     *
+     * @param x Longitude of the position.
+     * @param y Latitude of the position.
+     * @return Hilbert curve index of the position.
+     */
+    public static long hilbert(double x, double y) {
+        long n = 1L << order;
+        long px = Math.min(n - 1, Math.max(0, (long) ((x + 180) / 360 * n)));
+        long py = Math.min(n - 1, Math.max(0, (long) ((y + 90) / 180 * n)));
+        long d = 0;
+
+        for (long s = n / 2; s > 0; s /= 2) {
+            long rx = (px & s) > 0 ? 1 : 0;
+            long ry = (py & s) > 0 ? 1 : 0;
+            d += s * s * ((3 * rx) ^ ry);
+
+            if (ry == 0) {
+                if (rx == 1) {
+                    px = s - 1 - px;
+                    py = s - 1 - py;
+                }
+                long t = px;
+                px = py;
+                py = t;
+            }
+        }
+
+        return d;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return iterator != null;
+    }
+
+    @Override
+    public void open() throws SourceException {
+        open(null, null);
+    }
+
+    @Override
+    public void open(Polygon polygon, HashSet<Short> exclusions) throws SourceException {
+        List<Tuple<Long, BaseRoad>> roads = new ArrayList<>();
+
+        if (reader.isOpen()) {
+            reader.close();
+        }
+        reader.open(polygon, exclusions);
+
+        BaseRoad road = null;
+        while ((road = reader.next()) != null) {
+            Envelope2D envelope = new Envelope2D();
+            road.geometry().queryEnvelope2D(envelope);
+            roads.add(new Tuple<>(hilbert(envelope.getCenterX(), envelope.getCenterY()), road));
+        }
+
+        reader.close();
+
+        Collections.sort(roads, new Comparator<Tuple<Long, BaseRoad>>() {
+            @Override
+            public int compare(Tuple<Long, BaseRoad> left, Tuple<Long, BaseRoad> right) {
+                int order = Long.compare(left.one(), right.one());
+                return order != 0 ? order : Long.compare(left.two().id(), right.two().id());
+            }
+        });
+
+        List<BaseRoad> renumbered = new ArrayList<>(roads.size());
+        ids = new long[roads.size()];
+
+        for (int id = 0; id < roads.size(); ++id) {
+            BaseRoad base = roads.get(id).two();
+            ids[id] = base.id();
+            renumbered.add(new BaseRoad(id, base.source(), base.target(), base.refid(),
+                    base.oneway(), base.type(), base.priority(), base.maxspeed(Heading.forward),
+                    base.maxspeed(Heading.backward), base.length(), base.wkb()));
+            roads.set(id, null);
+        }
+
+        logger.info("renumbered {} roads along Hilbert curve", renumbered.size());
+
+        iterator = renumbered.iterator();
+    }
+
+    @Override
+    public void close() throws SourceException {
+        iterator = null;
+    }
+
+    @Override
+    public BaseRoad next() throws SourceException {
+        if (!isOpen()) {
+            throw new SourceException("Reader is not open.");
+        }
+
+        return iterator.hasNext() ? iterator.next() : null;
+    }
+
+    /**
+     * Gets original identifiers of renumbered roads, where the original identifier of a road with
+     * identifier <i>i</i> is the <i>i</i>-th element.
+     *
+     * @return Original identifiers of renumbered roads or <i>null</i> if reader has not been opened
+     *         yet.
+     */
+    public long[] ids() {
+        return ids;
+    }
+
+    /**
+     * Writes original identifiers of renumbered roads, see {@link HilbertReader#ids()}, to a file.
+     *
+     * @param path Path of the file.
+     * @throws SourceException thrown if reader has not been opened yet or writing fails.
+     */
+    public void write(String path) throws SourceException {
+        if (ids == null) {
+            throw new SourceException("Reader has not been opened yet.");
+        }
+
+        try (DataOutputStream output =
+                new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path)))) {
+            output.writeInt(ids.length);
+            for (long id : ids) {
+                output.writeLong(id);
+            }
+        } catch (IOException e) {
+            throw new SourceException("Writing identifiers failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Reads original identifiers of renumbered roads from a file written with
+     * {@link HilbertReader#write(String)}.
+     *
+     * @param path Path of the file.
+     * @return Original identifiers of renumbered roads, see {@link HilbertReader#ids()}.
+     * @throws SourceException thrown if reading fails.
+     */
+    public static long[] read(String path) throws SourceException {
+        try (DataInputStream input =
+                new DataInputStream(new BufferedInputStream(new FileInputStream(path)))) {
+            long[] ids = new long[input.readInt()];
+            for (int i = 0; i < ids.length; ++i) {
+                ids[i] = input.readLong();
+            }
+            return ids;
+        } catch (IOException e) {
+            throw new SourceException("Reading identifiers failed: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,332 @@
+/*
+ * Copyright (C) 2015, BMW Car IT GmbH
+ *
+ * Author: Sebastian Mattheis <sebastian.mattheis@bmw-carit.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.bmwcarit.barefoot.roadmap;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.bmwcarit.barefoot.road.BaseRoad;
+import com.bmwcarit.barefoot.road.Heading;
+import com.bmwcarit.barefoot.road.RoadReader;
+import com.esri.core.geometry.Polyline;
+
+/**
+ * Contraction of a {@link RoadMap} where maximal chains of roads without branching, i.e. roads
+ * connected by vertices with exactly two incident roads, are merged into single roads if they have
+ * identical attributes (one-way, type, priority, and maximum speeds) and consistent orientation.
+ * The contracted road map has fewer roads to be searched in routing and matching, and
+ * {@link RoadPoint} and {@link Route} objects can be mapped between both road maps.
+ * <p>
+ * <b>Note:</b> A contracted road has the identifier of the first road of its chain, which means
+ * roads that are not merged keep their identifiers.
+ */
+public class Contraction {
+    private static final Logger logger = LoggerFactory.getLogger(Contraction.class);
+    private final RoadMap map;
+    private final RoadMap contracted;
+    private final Map<Long, long[]> chains;
+    private final Map<Long, double[]> offsets;
+    private final Map<Long, Integer> positions;
+    private final Map<Long, Long> contractions;
+
+    private Contraction(RoadMap map, RoadMap contracted, Map<Long, long[]> chains,
+            Map<Long, double[]> offsets) {
+        this.map = map;
+        this.contracted = contracted;
+        this.chains = chains;
+        this.offsets = offsets;
+        this.positions = new HashMap<>();
+        this.contractions = new HashMap<>();
+
+        for (Map.Entry<Long, long[]> chain : chains.entrySet()) {
+            for (int i = 0; i < chain.getValue().length; ++i) {
+                contractions.put(chain.getValue()[i], chain.getKey());
+                positions.put(chain.getValue()[i], i);
+            }
+        }
+    }
+
+    private static boolean compatible(BaseRoad left, BaseRoad right) {
+        return left.oneway() == right.oneway() && left.type() == right.type()
+                && left.priority() == right.priority()
+                && left.maxspeed(Heading.forward) == right.maxspeed(Heading.forward)
+                && left.maxspeed(Heading.backward) == right.maxspeed(Heading.backward);
+    }
+
+    private static BaseRoad next(BaseRoad road, Map<Long, List<BaseRoad>> vertices) {
+        List<BaseRoad> incident = vertices.get(road.target());
+        if (incident.size() != 2) {
+            return null;
+        }
+
+        BaseRoad other = incident.get(0) == road ? incident.get(1) : incident.get(0);
+        if (other == road || other.source() != road.target() || !compatible(road, other)) {
+            return null;
+        }
+
+        return other;
+    }
+
+    private static BaseRoad previous(BaseRoad road, Map<Long, List<BaseRoad>> vertices) {
+        List<BaseRoad> incident = vertices.get(road.source());
+        if (incident.size() != 2) {
+            return null;
+        }
+
+        BaseRoad other = incident.get(0) == road ? incident.get(1) : incident.get(0);
+        if (other == road || other.target() != road.source() || !compatible(road, other)) {
+            return null;
+        }
+
+        return other;
+    }
+
+    private static BaseRoad merge(List<BaseRoad> chain) {
+        BaseRoad first = chain.get(0), last = chain.get(chain.size() - 1);
+
+        if (chain.size() == 1) {
+            return first;
+        }
+
+        Polyline geometry = new Polyline();
+        float length = 0;
+
+        for (BaseRoad road : chain) {
+            Polyline polyline = road.geometry();
+
+            if (geometry.isEmpty()) {
+                geometry.startPath(polyline.getPoint(0));
+            }
+
+            for (int i = 1; i < polyline.getPointCount(); ++i) {
+                geometry.lineTo(polyline.getPoint(i));
+            }
+
+            length += road.length();
+        }
+
+        return new BaseRoad(first.id(), first.source(), last.target(), first.refid(),
+                first.oneway(), first.type(), first.priority(), first.maxspeed(Heading.forward),
+                first.maxspeed(Heading.backward), length, geometry);
+    }
+
+    /**
+     * Creates {@link Contraction} of a {@link RoadMap}.
+     *
+     * @param map {@link RoadMap} to be contracted, which must be constructed.
+     * @return {@link Contraction} with the contracted {@link RoadMap}, which is constructed.
+     */
+    public static Contraction Contract(RoadMap map) {
+        logger.info("contracting road map ...");
+
+        List<BaseRoad> roads = new ArrayList<>();
+        Map<Long, List<BaseRoad>> vertices = new HashMap<>();
+
+        RoadReader reader = map.reader();
+        reader.open();
+        BaseRoad road = null;
+        while ((road = reader.next()) != null) {
+            roads.add(road);
+
+            for (long vertex : new long[] {road.source(), road.target()}) {
+                List<BaseRoad> incident = vertices.get(vertex);
+                if (incident == null) {
+                    incident = new ArrayList<>(2);
+                    vertices.put(vertex, incident);
+                }
+                incident.add(road);
+            }
+        }
+        reader.close();
+
+        RoadMap contracted = new RoadMap();
+        Map<Long, long[]> chains = new HashMap<>();
+        Map<Long, double[]> offsets = new HashMap<>();
+        Set<Long> visited = new HashSet<>();
+
+        for (BaseRoad base : roads) {
+            if (visited.contains(base.id())) {
+                continue;
+            }
+
+            BaseRoad first = base, prev = null;
+            while ((prev = previous(first, vertices)) != null && prev != base) {
+                first = prev;
+            }
+
+            LinkedList<BaseRoad> chain = new LinkedList<>();
+            BaseRoad element = first;
+            do {
+                chain.add(element);
+                visited.add(element.id());
+            } while ((element = next(element, vertices)) != null && element != first);
+
+            long[] ids = new long[chain.size()];
+            double[] offset = new double[chain.size() + 1];
+            for (int i = 0; i < chain.size(); ++i) {
+                ids[i] = chain.get(i).id();
+                offset[i + 1] = offset[i] + chain.get(i).length();
+            }
+
+            BaseRoad merged = merge(chain);
+            chains.put(merged.id(), ids);
+            offsets.put(merged.id(), offset);
+
+            for (Road uni : RoadMap.split(merged)) {
+                contracted.add(uni);
+            }
+        }
+
+        logger.info("contracted {} roads to {} roads", roads.size(), chains.size());
+
+        return new Contraction(map, contracted.construct(), chains, offsets);
+    }
+
+    /**
+     * Gets the original {@link RoadMap}.
+     *
+     * @return Original {@link RoadMap}.
+     */
+    public RoadMap original() {
+        return map;
+    }
+
+    /**
+     * Gets the contracted {@link RoadMap}.
+     *
+     * @return Contracted {@link RoadMap}.
+     */
+    public RoadMap contracted() {
+        return contracted;
+    }
+
+    /**
+     * Gets identifiers of the original {@link BaseRoad}s merged into a contracted road, in order
+     * from the contracted road's source to its target.
+     *
+     * @param id Identifier of the contracted {@link BaseRoad}.
+     * @return Identifiers of the original {@link BaseRoad}s, or <i>null</i> if there is no
+     *         contracted road with that identifier.
+     */
+    public long[] chain(long id) {
+        return chains.get(id);
+    }
+
+    /**
+     * Maps a {@link RoadPoint} of the original {@link RoadMap} to the contracted {@link RoadMap}.
+     *
+     * @param point {@link RoadPoint} of the original {@link RoadMap}.
+     * @return {@link RoadPoint} of the contracted {@link RoadMap}.
+     */
+    public RoadPoint contract(RoadPoint point) {
+        long base = point.edge().base().id();
+        long id = contractions.get(base);
+        int position = positions.get(base);
+        double[] offset = offsets.get(id);
+        double length = offset[offset.length - 1];
+
+        boolean forward = point.edge().heading() == Heading.forward;
+        double fraction = forward ? point.fraction() : 1 - point.fraction();
+        double distance = offset[position] + fraction * (offset[position + 1] - offset[position]);
+        fraction = length > 0 ? Math.min(1, Math.max(0, distance / length)) : fraction;
+
+        return new RoadPoint(contracted.get(forward ? id * 2 : id * 2 + 1),
+                forward ? fraction : 1 - fraction);
+    }
+
+    /**
+     * Maps a {@link RoadPoint} of the contracted {@link RoadMap} to the original {@link RoadMap}.
+     *
+     * @param point {@link RoadPoint} of the contracted {@link RoadMap}.
+     * @return {@link RoadPoint} of the original {@link RoadMap}.
+     */
+    public RoadPoint expand(RoadPoint point) {
+        long id = point.edge().base().id();
+        long[] chain = chains.get(id);
+        boolean forward = point.edge().heading() == Heading.forward;
+
+        if (chain.length == 1) {
+            return new RoadPoint(map.get(point.edge().id()), point.fraction());
+        }
+
+        double[] offset = offsets.get(id);
+        double position = (forward ? point.fraction() : 1 - point.fraction())
+                * offset[offset.length - 1];
+
+        int i = 0;
+        while (i < chain.length - 1 && position >= offset[i + 1]) {
+            i += 1;
+        }
+
+        double length = offset[i + 1] - offset[i];
+        double fraction =
+                length > 0 ? Math.min(1, Math.max(0, (position - offset[i]) / length)) : 0;
+
+        return forward ? new RoadPoint(map.get(chain[i] * 2), fraction)
+                : new RoadPoint(map.get(chain[i] * 2 + 1), 1 - fraction);
+    }
+
+    private List<Road> expand(Road road) {
+        long[] chain = chains.get(road.base().id());
+        List<Road> roads = new ArrayList<>(chain.length);
+
+        if (road.heading() == Heading.forward) {
+            for (int i = 0; i < chain.length; ++i) {
+                roads.add(map.get(chain[i] * 2));
+            }
+        } else {
+            for (int i = chain.length - 1; i >= 0; --i) {
+                roads.add(map.get(chain[i] * 2 + 1));
+            }
+        }
+
+        return roads;
+    }
+
+    /**
+     * Maps a {@link Route} of the contracted {@link RoadMap} to the original {@link RoadMap}.
+     *
+     * @param route {@link Route} of the contracted {@link RoadMap}.
+     * @return {@link Route} of the original {@link RoadMap}.
+     */
+    public Route expand(Route route) {
+        RoadPoint source = expand(route.source()), target = expand(route.target());
+        List<Road> roads = new ArrayList<>();
+
+        for (int i = 0; i < route.size(); ++i) {
+            List<Road> expanded = expand(route.get(i));
+            int start = 0, end = expanded.size();
+
+            if (i == 0) {
+                start = expanded.indexOf(source.edge());
+            }
+
+            if (i == route.size() - 1) {
+                end = expanded.subList(start, end).indexOf(target.edge()) + start + 1;
+            }
+
+            roads.addAll(expanded.subList(start, end));
+        }
+
+        return new Route(source, target, roads);
+    }
+}
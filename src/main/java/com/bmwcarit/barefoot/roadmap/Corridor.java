@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2015, BMW Car IT GmbH
+ *
+ * Author: Sebastian Mattheis <sebastian.mattheis@bmw-carit.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.bmwcarit.barefoot.roadmap;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import com.bmwcarit.barefoot.spatial.SpatialOperator;
+import com.bmwcarit.barefoot.topology.SearchSpace;
+import com.esri.core.geometry.Point;
+import com.esri.core.geometry.Polyline;
+
+/**
+ * Corridor {@link SearchSpace} of a {@link RoadMap}, which contains roads within some width of
+ * geometries added to the corridor, e.g. routes of a coarse matching. Roads are determined with
+ * radius queries of the map's spatial index at points along the geometries in steps of at most
+ * the width, which means that roads within the width of a geometry are contained, and roads
+ * slightly farther away may be contained as well.
+ * <p>
+ * <b>Note:</b> Geometries must be added before the corridor is used, since testing is only
+ * thread-safe if the corridor is not modified concurrently.
+ */
+public class Corridor implements SearchSpace<Road> {
+    private final RoadMap map;
+    private final double width;
+    private final SpatialOperator spatial;
+    private final Set<Long> roads = new HashSet<>();
+
+    /**
+     * Creates an empty {@link Corridor} object.
+     *
+     * @param map {@link RoadMap} of roads contained in the corridor.
+     * @param width Width of the corridor in meters, which is the maximum distance of roads to the
+     *        added geometries.
+     * @param spatial {@link SpatialOperator} for spatial operations.
+     */
+    public Corridor(RoadMap map, double width, SpatialOperator spatial) {
+        this.map = map;
+        this.width = width;
+        this.spatial = spatial;
+    }
+
+    /**
+     * Gets width of the corridor in meters.
+     *
+     * @return Width of the corridor in meters.
+     */
+    public double width() {
+        return width;
+    }
+
+    /**
+     * Adds roads within width of a point to the corridor.
+     *
+     * @param point Point to be added to the corridor.
+     */
+    public void add(Point point) {
+        add(point, width);
+    }
+
+    /**
+     * Adds roads within width of a line to the corridor.
+     *
+     * @param line Line to be added to the corridor.
+     */
+    public void add(Polyline line) {
+        if (line.getPointCount() == 0) {
+            return;
+        }
+
+        double length = spatial.length(line);
+        int steps = Math.max(1, (int) Math.ceil(length / width));
+
+        // Any point of the line is at most half a step from the next query point.
+        double radius = width + length / steps / 2;
+        for (int i = 0; i <= steps; ++i) {
+            add(spatial.interpolate(line, length, (double) i / steps), radius);
+        }
+    }
+
+    /**
+     * Adds roads within some radius of a point to the corridor, e.g. the search radius of
+     * matching candidates of a sample.
+     *
+     * @param point Point to be added to the corridor.
+     * @param radius Radius in meters around the point.
+     */
+    public void add(Point point, double radius) {
+        for (RoadPoint candidate : map.spatial().radius(point, radius)) {
+            roads.add(candidate.edge().base().id());
+        }
+    }
+
+    /**
+     * Gets number of roads, i.e. road identifiers of {@link com.bmwcarit.barefoot.road.BaseRoad}
+     * objects, contained in the corridor.
+     *
+     * @return Number of roads contained in the corridor.
+     */
+    public int size() {
+        return roads.size();
+    }
+
+    @Override
+    public boolean contains(Road road) {
+        return roads.contains(road.base().id());
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2015, BMW Car IT GmbH
+ *
+ * Author: Sebastian Mattheis <sebastian.mattheis@bmw-carit.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.bmwcarit.barefoot.roadmap;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.bmwcarit.barefoot.road.Heading;
+import com.bmwcarit.barefoot.spatial.SpatialOperator;
+import com.bmwcarit.barefoot.topology.SearchSpace;
+import com.esri.core.geometry.Envelope2D;
+import com.esri.core.geometry.Point;
+import com.esri.core.geometry.Polyline;
+
+/**
+ * Elliptical {@link SearchSpace} of routing from a source to targets with bounded route length,
+ * which contains roads that start within the ellipse, i.e. the distance of the road's start to the
+ * source plus the distance to the nearest target is at most the bound. Any road with a start
+ * outside can not be part of a route that is within the bound, because a route is at least as
+ * long as the (geodesic) distances between its points.
+ * <p>
+ * A road's start is first tested with the bounding box of the bound around the source and with a
+ * planar approximation of distances, and only if the planar approximation is inconclusive with
+ * the exact distances of the {@link SpatialOperator}. Results are cached per vertex, which means an
+ * object is intended to be used for a single routing.
+ * <p>
+ * <b>Note:</b> The bound must be a route length in meters, i.e. bounding cost function of routing
+ * is {@link Distance}.
+ */
+public class Ellipse implements SearchSpace<Road> {
+    private static final double margin = 0.01;
+    private final SpatialOperator spatial;
+    private final Point source;
+    private final List<Point> targets = new ArrayList<>();
+    private final double bound;
+    private final Envelope2D envelope;
+    private final double scaleX, scaleY;
+    private final Map<Long, Boolean> vertices = new HashMap<>();
+
+    /**
+     * Creates an {@link Ellipse} object.
+     *
+     * @param source Source of routing.
+     * @param targets Targets of routing.
+     * @param bound Maximum route length in meters.
+     * @param spatial {@link SpatialOperator} for spatial operations.
+     */
+    public Ellipse(RoadPoint source, Set<RoadPoint> targets, double bound,
+            SpatialOperator spatial) {
+        this.spatial = spatial;
+        this.source = source.geometry();
+        for (RoadPoint target : targets) {
+            this.targets.add(target.geometry());
+        }
+        this.bound = bound;
+        this.envelope = spatial.envelope(this.source, bound * (1 + margin));
+
+        double x = this.source.getX(), y = this.source.getY();
+        this.scaleX = spatial.distance(this.source, new Point(x + 1E-3, y)) / 1E-3;
+        this.scaleY = spatial.distance(this.source, new Point(x, y + 1E-3)) / 1E-3;
+    }
+
+    private double planar(Point a, Point b) {
+        return Math.hypot((a.getX() - b.getX()) * scaleX, (a.getY() - b.getY()) * scaleY);
+    }
+
+    private boolean contains(Point point) {
+        if (!envelope.contains(point.getX(), point.getY())) {
+            return false;
+        }
+
+        double distance = Double.MAX_VALUE;
+        for (Point target : targets) {
+            distance = Math.min(distance, planar(point, target));
+        }
+        distance += planar(source, point);
+
+        if (distance < bound * (1 - margin)) {
+            return true;
+        } else if (distance > bound * (1 + margin)) {
+            return false;
+        }
+
+        distance = Double.MAX_VALUE;
+        for (Point target : targets) {
+            distance = Math.min(distance, spatial.distance(point, target));
+        }
+        return spatial.distance(source, point) + distance <= bound;
+    }
+
+    @Override
+    public boolean contains(Road road) {
+        Boolean contained = vertices.get(road.source());
+
+        if (contained == null) {
+            Polyline geometry = road.base().geometry();
+            Point start = road.heading() == Heading.forward ? geometry.getPoint(0)
+                    : geometry.getPoint(geometry.getPointCount() - 1);
+            contained = contains(start);
+            vertices.put(road.source(), contained);
+        }
+
+        return contained;
+    }
+}
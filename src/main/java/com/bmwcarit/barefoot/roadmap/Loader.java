@@ -18,6 +18,8 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Properties;
@@ -31,6 +33,7 @@ import org.slf4j.LoggerFactory;
 import com.bmwcarit.barefoot.road.BaseRoad;
 import com.bmwcarit.barefoot.road.BfmapReader;
 import com.bmwcarit.barefoot.road.BfmapWriter;
+import com.bmwcarit.barefoot.road.HilbertReader;
 import com.bmwcarit.barefoot.road.PostGISReader;
 import com.bmwcarit.barefoot.road.RoadReader;
 import com.bmwcarit.barefoot.road.RoadWriter;
@@ -74,6 +77,10 @@ public class Loader {
      * <li>database.user (e.g. osmuser)</li>
      * <li>database.password</li>
      * <li>database.road-types (e.g. /path/to/road-types.json)</li>
+     * <li>database.hilbert (optional, default: false) renumbers roads along a Hilbert curve for
+     * memory locality, see {@link HilbertReader}, where original identifiers are set in the road
+     * map, see {@link RoadMap#setOriginals(long[])}, and written to
+     * &lt;database.name&gt;.bfmap.ids, which is read with the file buffer.</li>
      * </ul>
      *
      * @param properties {@link Properties} object with database connection parameters.
@@ -88,12 +95,29 @@ public class Loader {
         }
 
         File file = new File(database + ".bfmap");
+        File ids = new File(database + ".bfmap.ids");
         RoadMap map = null;
 
         if (!file.exists() || !buffer) {
             logger.info("load map from database {}", database);
             RoadReader reader = reader(properties);
-            map = RoadMap.Load(reader);
+
+            boolean hilbert =
+                    Boolean.parseBoolean(properties.getProperty("database.hilbert", "false"));
+            logger.info("database.hilbert={}", hilbert);
+
+            if (hilbert) {
+                HilbertReader renumbering = new HilbertReader(reader);
+                map = RoadMap.Load(renumbering);
+                map.setOriginals(renumbering.ids());
+                renumbering.write(ids.getAbsolutePath());
+            } else {
+                map = RoadMap.Load(reader);
+
+                if (buffer && ids.exists()) {
+                    ids.delete();
+                }
+            }
 
             if (buffer) {
                 reader = map.reader();
@@ -112,11 +136,99 @@ public class Loader {
         } else {
             logger.info("load map from file {}", file.getAbsolutePath());
             map = RoadMap.Load(new BfmapReader(file.getAbsolutePath()));
+
+            if (ids.exists()) {
+                logger.info("load original identifiers from file {}", ids.getAbsolutePath());
+                map.setOriginals(HilbertReader.read(ids.getAbsolutePath()));
+            }
         }
 
         return map;
     }
 
+    /**
+     * Loads constructed {@link RoadMap} object from snapshot file, if it exists and matches the
+     * checksum of the file buffer, otherwise loads {@link RoadMap} object from file buffer or
+     * database, see {@link Loader#roadmap(Properties, boolean)}, constructs it and writes a snapshot
+     * file. Besides database connection properties, it uses the following properties:
+     * <ul>
+     * <li>database.snapshot (optional, default: true) enables or disables snapshot files, which
+     * are stored as &lt;database.name&gt;.bfsnap next to the file buffer.</li>
+     * </ul>
+     *
+     * @param properties {@link Properties} object with database connection parameters.
+     * @return Constructed {@link RoadMap} object.
+     * @throws SourceException thrown if reading properties, road types or road map data fails.
+     */
+    public static RoadMap snapshot(Properties properties) throws SourceException {
+        String database = properties.getProperty("database.name");
+        if (database == null) {
+            throw new SourceException("could not read database properties");
+        }
+
+        boolean enabled = Boolean.parseBoolean(properties.getProperty("database.snapshot", "true"));
+        logger.info("database.snapshot={}", enabled);
+
+        if (!enabled) {
+            return roadmap(properties, true).construct();
+        }
+
+        File buffer = new File(database + ".bfmap");
+        File snapshot = new File(database + ".bfsnap");
+        RoadMap map = null;
+
+        if (buffer.exists() && snapshot.exists()) {
+            try {
+                logger.info("load map from snapshot {}", snapshot.getAbsolutePath());
+                return RoadMap.Restore(snapshot.getAbsolutePath(), checksum(buffer));
+            } catch (SourceException e) {
+                logger.warn("snapshot {} discarded: {}", snapshot.getAbsolutePath(),
+                        e.getMessage());
+            }
+        }
+
+        map = roadmap(properties, true).construct();
+
+        try {
+            map.snapshot(snapshot.getAbsolutePath(), checksum(buffer));
+        } catch (SourceException e) {
+            logger.warn("writing snapshot {} failed: {}", snapshot.getAbsolutePath(),
+                    e.getMessage());
+            snapshot.delete();
+        }
+
+        return map;
+    }
+
+    /**
+     * Computes checksum (MD5) of a file, e.g. to validate snapshot files against their source.
+     *
+     * @param file File the checksum is computed of.
+     * @return Checksum as hexadecimal string.
+     * @throws SourceException thrown if reading file fails.
+     */
+    public static String checksum(File file) throws SourceException {
+        try (InputStream input = new FileInputStream(file)) {
+            MessageDigest digest = MessageDigest.getInstance("MD5");
+            byte[] buffer = new byte[65536];
+            int length = 0;
+
+            while ((length = input.read(buffer)) != -1) {
+                digest.update(buffer, 0, length);
+            }
+
+            StringBuilder checksum = new StringBuilder();
+            for (byte b : digest.digest()) {
+                checksum.append(String.format("%02x", b));
+            }
+
+            return checksum.toString();
+        } catch (IOException | NoSuchAlgorithmException e) {
+            throw new SourceException("computing checksum of file " + file.getPath() + " failed: "
+                    + e.getMessage());
+        }
+    }
+
     /**
      * Reads road type configuration from file.
      *
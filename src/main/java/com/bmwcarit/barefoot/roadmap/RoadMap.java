@@ -12,18 +12,31 @@
  */
 package com.bmwcarit.barefoot.roadmap;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
 
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.bmwcarit.barefoot.road.BaseRoad;
 import com.bmwcarit.barefoot.road.Heading;
+import com.bmwcarit.barefoot.road.HilbertReader;
 import com.bmwcarit.barefoot.road.RoadReader;
 import com.bmwcarit.barefoot.spatial.QuadTreeIndex;
 import com.bmwcarit.barefoot.spatial.SpatialIndex;
@@ -46,7 +59,10 @@ import com.esri.core.geometry.SpatialReference;
 public class RoadMap extends Graph<Road> implements Serializable {
     private static final long serialVersionUID = 1L;
     private static final Logger logger = LoggerFactory.getLogger(RoadMap.class);
+    private static final int snapshotMagic = 0x62667370;
+    private static final int snapshotVersion = 2;
     private transient Index index = null;
+    private long[] originals = null;
 
     static Collection<Road> split(BaseRoad base) {
         ArrayList<Road> roads = new ArrayList<>();
@@ -62,7 +78,15 @@ public class RoadMap extends Graph<Road> implements Serializable {
 
     private class Index implements SpatialIndex<RoadPoint>, Serializable {
         private static final long serialVersionUID = 1L;
-        private final QuadTreeIndex index = new QuadTreeIndex();
+        private final QuadTreeIndex index;
+
+        public Index() {
+            this(new QuadTreeIndex());
+        }
+
+        public Index(QuadTreeIndex index) {
+            this.index = index;
+        }
 
         public void put(Road road) {
             int id = (int) road.base().id();
@@ -112,6 +136,102 @@ public class RoadMap extends Graph<Road> implements Serializable {
         }
     };
 
+    /**
+     * Sets original identifiers of {@link BaseRoad} objects that have been renumbered on loading,
+     * e.g. with {@link HilbertReader}, which are used to report roads with their original
+     * identifiers, see {@link RoadMap#original(long)}.
+     *
+     * @param originals Original identifiers of renumbered roads, see {@link HilbertReader#ids()},
+     *        or <i>null</i> if roads have not been renumbered.
+     * @throws SourceException thrown if identifiers do not match the roads of the road map.
+     */
+    public void setOriginals(long[] originals) throws SourceException {
+        if (originals != null) {
+            int count = 0;
+            for (long id : edges.keySet()) {
+                if (id % 2 == 0) {
+                    count += 1;
+                }
+            }
+
+            if (count != originals.length) {
+                throw new SourceException("identifiers of " + originals.length
+                        + " roads do not match " + count + " roads of road map");
+            }
+
+            for (long id = 0; id < originals.length; ++id) {
+                if (!edges.containsKey(id * 2)) {
+                    throw new SourceException("road " + id + " of identifiers not found");
+                }
+            }
+        }
+
+        this.originals = originals;
+    }
+
+    /**
+     * Checks if roads of the road map have been renumbered, see
+     * {@link RoadMap#setOriginals(long[])}.
+     *
+     * @return True if roads have been renumbered, false otherwise.
+     */
+    public boolean renumbered() {
+        return originals != null;
+    }
+
+    /**
+     * Gets original identifier of a {@link BaseRoad}, if roads have been renumbered, see
+     * {@link RoadMap#setOriginals(long[])}.
+     *
+     * @param id Identifier of the {@link BaseRoad} in the road map.
+     * @return Original identifier of the {@link BaseRoad}, or the identifier itself if roads have
+     *         not been renumbered.
+     */
+    public long original(long id) {
+        if (originals == null || id < 0 || id >= originals.length) {
+            return id;
+        }
+
+        return originals[(int) id];
+    }
+
+    /**
+     * Replaces road identifiers, i.e. values of <i>road</i> keys, in a JSON representation, e.g. of
+     * {@link Road}, {@link RoadPoint} or {@link Route} objects, with original identifiers, see
+     * {@link RoadMap#original(long)}. (Note: The JSON representation is modified in place.)
+     *
+     * @param json JSON representation, i.e. {@link JSONObject} or {@link JSONArray} object.
+     * @throws JSONException thrown on JSON extraction or parsing error.
+     */
+    public void originals(Object json) throws JSONException {
+        if (originals == null) {
+            return;
+        }
+
+        if (json instanceof JSONObject) {
+            JSONObject jsonobject = (JSONObject) json;
+            Iterator<?> keys = jsonobject.keys();
+            List<String> names = new ArrayList<>();
+            while (keys.hasNext()) {
+                names.add(keys.next().toString());
+            }
+
+            for (String name : names) {
+                Object value = jsonobject.get(name);
+                if (name.equals("road") && value instanceof Number) {
+                    jsonobject.put(name, original(((Number) value).longValue()));
+                } else {
+                    originals(value);
+                }
+            }
+        } else if (json instanceof JSONArray) {
+            JSONArray jsonarray = (JSONArray) json;
+            for (int i = 0; i < jsonarray.length(); ++i) {
+                originals(jsonarray.get(i));
+            }
+        }
+    }
+
     /**
      * Loads and creates a {@link RoadMap} object from {@link BaseRoad} objects loaded with a
      * {@link RoadReader}.
@@ -162,6 +282,94 @@ public class RoadMap extends Graph<Road> implements Serializable {
         return roadmap;
     }
 
+    /**
+     * Restores a constructed {@link RoadMap} object from a snapshot file, see
+     * {@link RoadMap#snapshot(String, String)}, which skips construction of road network topology
+     * and spatial index.
+     *
+     * @param path Path of the snapshot file.
+     * @param checksum Checksum of the source the snapshot must have been created from, or
+     *        <i>null</i> if the snapshot shall not be validated.
+     * @return Constructed {@link RoadMap} object.
+     * @throws SourceException thrown if snapshot cannot be read, is corrupted, or its checksum
+     *         does not match.
+     */
+    public static RoadMap Restore(String path, String checksum) throws SourceException {
+        long memory = 0;
+
+        System.gc();
+        memory = Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory();
+
+        logger.info("restoring snapshot {} ...", path);
+
+        RoadMap roadmap = null;
+
+        try (ObjectInputStream input = new ObjectInputStream(
+                new BufferedInputStream(new FileInputStream(path)))) {
+            if (input.readInt() != snapshotMagic) {
+                throw new SourceException("file " + path + " is not a road map snapshot");
+            }
+
+            int version = input.readInt();
+            if (version != snapshotVersion) {
+                throw new SourceException("snapshot version " + version + " not supported");
+            }
+
+            String source = input.readUTF();
+            if (checksum != null && !checksum.equals(source)) {
+                throw new SourceException("snapshot checksum " + source
+                        + " does not match source checksum " + checksum);
+            }
+
+            roadmap = (RoadMap) input.readObject();
+            roadmap.readTopology(input);
+            roadmap.index = roadmap.new Index((QuadTreeIndex) input.readObject());
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            throw new SourceException("reading snapshot failed: " + e.getMessage());
+        }
+
+        logger.info("restored {} roads from snapshot", roadmap.size());
+
+        System.gc();
+        memory = (Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory()) - memory;
+        logger.info("~{} megabytes used for road data and spatial index (estimate)",
+                Math.max(0, Math.round(memory / 1E6)));
+
+        return roadmap;
+    }
+
+    /**
+     * Writes snapshot of the constructed {@link RoadMap}, i.e. roads, original identifiers of
+     * roads, road network topology, and spatial index, to a file, which can be restored with
+     * {@link RoadMap#Restore(String, String)}.
+     *
+     * @param path Path of the snapshot file. (If the file exists, it will be overwritten.)
+     * @param checksum Checksum of the source the road map has been loaded from, which is used to
+     *        validate the snapshot on restore.
+     * @throws SourceException thrown if road map is not constructed or writing fails.
+     */
+    public void snapshot(String path, String checksum) throws SourceException {
+        if (index == null) {
+            throw new SourceException("road map not constructed");
+        }
+
+        logger.info("writing snapshot {} ...", path);
+
+        try (ObjectOutputStream output = new ObjectOutputStream(
+                new BufferedOutputStream(new FileOutputStream(path)))) {
+            output.writeInt(snapshotMagic);
+            output.writeInt(snapshotVersion);
+            output.writeUTF(checksum);
+            output.writeObject(this);
+            writeTopology(output);
+            output.writeObject(index.index);
+        } catch (IOException e) {
+            throw new SourceException("writing snapshot failed: " + e.getMessage());
+        }
+
+        logger.info("snapshot written");
+    }
+
     /**
      * Constructs road network topology and spatial index.
      */
@@ -222,7 +430,9 @@ public class RoadMap extends Graph<Road> implements Serializable {
     }
 
     /**
-     * Gets {@link RoadReader} of roads in this {@link RoadMap}.
+     * Gets {@link RoadReader} of roads in this {@link RoadMap}. If roads have been renumbered,
+     * see {@link RoadMap#setOriginals(long[])}, roads are read in order of their identifiers, which
+     * preserves the order of renumbering, e.g. along a Hilbert curve, if roads are written out.
      *
      * @return {@link RoadReader} object.
      */
@@ -244,7 +454,15 @@ public class RoadMap extends Graph<Road> implements Serializable {
 
             @Override
             public void open(Polygon polygon, HashSet<Short> exclusions) throws SourceException {
-                iterator = edges.values().iterator();
+                if (originals != null) {
+                    List<Road> roads = new ArrayList<>(originals.length);
+                    for (long id = 0; id < originals.length; ++id) {
+                        roads.add(edges.get(id * 2));
+                    }
+                    iterator = roads.iterator();
+                } else {
+                    iterator = edges.values().iterator();
+                }
                 this.exclusions = exclusions;
                 this.polygon = polygon;
             }
@@ -26,11 +26,13 @@ import com.esri.core.geometry.Point;
  */
 public class RoadPoint extends com.bmwcarit.barefoot.topology.Point<Road> {
     private static final SpatialOperator spatial = new Geography();
-    private final Point geometry;
-    private final double azimuth;
+    private volatile Point geometry = null;
+    private double azimuth = Double.NaN;
 
     /**
-     * Creates a {@link RoadPoint}.
+     * Creates a {@link RoadPoint}. The geometry and azimuth of the point are determined only if
+     * requested, e.g. not for points restored from a state that are output only by road and
+     * fraction.
      *
      * @param road {@link Road} object of the point.
      * @param fraction Exact position on the {@link Road} defined as fraction <i>f</i>, with <i>0
@@ -38,8 +40,6 @@ public class RoadPoint extends com.bmwcarit.barefoot.topology.Point<Road> {
      */
     public RoadPoint(Road road, double fraction) {
         super(road, fraction);
-        this.geometry = spatial.interpolate(road.geometry(), fraction);
-        this.azimuth = spatial.azimuth(road.geometry(), fraction);
     }
 
     /**
@@ -48,10 +48,19 @@ public class RoadPoint extends com.bmwcarit.barefoot.topology.Point<Road> {
      * @return Geometry of the point on the road.
      */
     public Point geometry() {
+        Point geometry = this.geometry;
+        if (geometry == null) {
+            // Racy but safe, as it always determines the same values, where the azimuth is
+            // published with the geometry.
+            azimuth = spatial.azimuth(edge().geometry(), fraction());
+            geometry = spatial.interpolate(edge().geometry(), fraction());
+            this.geometry = geometry;
+        }
         return geometry;
     }
 
     public double azimuth() {
+        geometry();
         return azimuth;
     }
 
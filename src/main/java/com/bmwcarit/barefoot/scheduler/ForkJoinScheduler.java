@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2015, BMW Car IT GmbH
+ *
+ * Author: Sebastian Mattheis <sebastian.mattheis@bmw-carit.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.bmwcarit.barefoot.scheduler;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Scheduler that executes {@link Task} objects with a {@link ForkJoinPool}, as an alternative to
+ * {@link Scheduler} with the same semantics of spawn, sync, exceptions and cancellation.
+ * Synchronization of {@link Group} objects is blocking managed by the pool, see
+ * {@link ForkJoinPool#managedBlock(java.util.concurrent.ForkJoinPool.ManagedBlocker)}.
+ */
+public class ForkJoinScheduler {
+    private final static Logger logger = LoggerFactory.getLogger(ForkJoinScheduler.class);
+    private final ThreadLocal<Task> current = new ThreadLocal<>();
+    final ForkJoinPool pool;
+
+    private class Execution extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final Task task;
+
+        Execution(Task task) {
+            this.task = task;
+        }
+
+        @Override
+        protected void compute() {
+            Task previous = current.get();
+            current.set(task);
+            try {
+                if (!task.root.cancelled.get() && !task.group.cancelled.get()) {
+                    task.run();
+                } else {
+                    logger.debug("root or group cancelled, won't execute task {}", task);
+                }
+            } catch (Exception e) {
+                if (task.parent != null) {
+                    task.parent.exceptions.add(e);
+                } else {
+                    task.group.exceptions.add(e);
+                }
+            } finally {
+                current.set(previous);
+                task.group.release();
+            }
+        }
+    }
+
+    public ForkJoinScheduler(int numWorkers) {
+        this(new ForkJoinPool(numWorkers));
+    }
+
+    public ForkJoinScheduler(ForkJoinPool pool) {
+        this.pool = pool;
+        logger.trace("scheduler started with pool of parallelism {}", pool.getParallelism());
+    }
+
+    public Group group() {
+        return new Group(this);
+    }
+
+    public void shutdown() {
+        logger.trace("scheduler shutting down");
+        pool.shutdown();
+    }
+
+    public Task self() {
+        return current.get();
+    }
+
+    void submit(Task task) {
+        pool.execute(new Execution(task));
+    }
+
+    void fork(Task parent, Task task) {
+        Execution execution = new Execution(task);
+        if (parent.forks == null) {
+            parent.forks = new ArrayDeque<>();
+        }
+        parent.forks.add(execution);
+
+        if (ForkJoinTask.getPool() == pool) {
+            execution.fork();
+        } else {
+            pool.execute(execution);
+        }
+    }
+
+    boolean sync(Task task) {
+        logger.trace("task {} waits for children", task);
+        if (task.forks != null) {
+            ForkJoinTask<?> fork = null;
+            while ((fork = task.forks.pollLast()) != null) {
+                fork.quietlyJoin();
+            }
+        }
+        logger.trace("task {} synchronized", task);
+
+        return task.exceptions.isEmpty() && !task.root.cancelled.get();
+    }
+}
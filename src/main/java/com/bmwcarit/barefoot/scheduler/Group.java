@@ -15,6 +15,7 @@ package com.bmwcarit.barefoot.scheduler;
 
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Condition;
@@ -27,6 +28,7 @@ import org.slf4j.LoggerFactory;
 public class Group {
     private final static Logger logger = LoggerFactory.getLogger(Group.class);
     private final Scheduler scheduler;
+    private final ForkJoinScheduler forkjoin;
     final Queue<Exception> exceptions = new ConcurrentLinkedQueue<Exception>();
     final Lock syncLock = new ReentrantLock();
     final Condition syncCond = syncLock.newCondition();
@@ -35,6 +37,25 @@ public class Group {
 
     Group(Scheduler scheduler) {
         this.scheduler = scheduler;
+        this.forkjoin = null;
+    }
+
+    Group(ForkJoinScheduler forkjoin) {
+        this.scheduler = null;
+        this.forkjoin = forkjoin;
+    }
+
+    ForkJoinScheduler forkjoin() {
+        return forkjoin;
+    }
+
+    void release() {
+        if (syncTasks.decrementAndGet() == 0) {
+            syncLock.lock();
+            logger.trace("group {} signaled", this);
+            syncCond.signalAll();
+            syncLock.unlock();
+        }
     }
 
     public void spawn(Task task) {
@@ -50,6 +71,11 @@ public class Group {
         task.group = this;
         syncTasks.getAndIncrement();
 
+        if (forkjoin != null) {
+            forkjoin.submit(task);
+            return;
+        }
+
         if (scheduler.availTasks.getAndIncrement() == 0) {
             scheduler.availLock.lock();
             logger.trace("scheduler signals workers");
@@ -66,7 +92,34 @@ public class Group {
 
     public boolean sync() {
         logger.trace("group {} waits for tasks", this);
-        if (scheduler.workers.contains(Thread.currentThread())) {
+        if (forkjoin != null) {
+            while (syncTasks.get() > 0) {
+                try {
+                    ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+                        @Override
+                        public boolean block() throws InterruptedException {
+                            syncLock.lock();
+                            try {
+                                while (syncTasks.get() > 0) {
+                                    syncCond.await();
+                                }
+                            } finally {
+                                syncLock.unlock();
+                            }
+                            return true;
+                        }
+
+                        @Override
+                        public boolean isReleasable() {
+                            return syncTasks.get() == 0;
+                        }
+                    });
+                } catch (InterruptedException e) {
+                    logger.error("group {} sync interrupted, gets cancelled", this);
+                    cancel();
+                }
+            }
+        } else if (scheduler.workers.contains(Thread.currentThread())) {
             Worker worker = (Worker) Thread.currentThread();
 
             logger.trace("group {} waits with worker {}", this, worker.workerid);
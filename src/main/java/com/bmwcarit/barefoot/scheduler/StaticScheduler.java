@@ -13,8 +13,11 @@
 
 package com.bmwcarit.barefoot.scheduler;
 
+import java.util.concurrent.ForkJoinPool;
+
 public class StaticScheduler {
     private static Scheduler scheduler = new Scheduler(Runtime.getRuntime().availableProcessors());
+    private static ForkJoinScheduler forkjoin = null;
 
     static public class InlineScheduler {
         private final Group group;
@@ -48,25 +51,35 @@ public class StaticScheduler {
     }
 
     public static void reset(int numWorkers) {
-        scheduler.shutdown();
+        stop();
         scheduler = new Scheduler(numWorkers);
     }
 
     public static void reset(int numWorkers, long spintime) {
-        scheduler.shutdown();
+        stop();
         scheduler = new Scheduler(numWorkers, spintime);
     }
 
+    public static void reset(ForkJoinPool pool) {
+        stop();
+        forkjoin = new ForkJoinScheduler(pool);
+    }
+
     public static InlineScheduler scheduler() {
-        Task self = scheduler.self();
+        Task self = forkjoin != null ? forkjoin.self() : scheduler.self();
         if (self != null) {
             return new InlineScheduler(self);
         } else {
-            return new InlineScheduler(scheduler.group());
+            return new InlineScheduler(forkjoin != null ? forkjoin.group() : scheduler.group());
         }
     }
 
     public static void stop() {
-        scheduler.shutdown();
+        if (forkjoin != null) {
+            forkjoin.shutdown();
+            forkjoin = null;
+        } else {
+            scheduler.shutdown();
+        }
     }
 }
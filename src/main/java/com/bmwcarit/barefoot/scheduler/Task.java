@@ -13,8 +13,10 @@
 
 package com.bmwcarit.barefoot.scheduler;
 
+import java.util.Deque;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinTask;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -31,6 +33,7 @@ public abstract class Task implements Runnable {
     Task root = this;
     Task parent = null;
     Worker worker = null;
+    Deque<ForkJoinTask<?>> forks = null;
 
     void execute() {
         try {
@@ -55,12 +58,7 @@ public abstract class Task implements Runnable {
             }
         } else {
             if (group != null) {
-                if (group.syncTasks.decrementAndGet() == 0) {
-                    group.syncLock.lock();
-                    logger.trace("task {} signals group {}", this.toString(), group.toString());
-                    group.syncCond.signalAll();
-                    group.syncLock.unlock();
-                }
+                group.release();
 
                 if (logger.isTraceEnabled()) {
                     logger.trace("task {} on worker {} decrements group {} task counter",
@@ -105,7 +103,11 @@ public abstract class Task implements Runnable {
         task.group = this.group;
         syncChildren.getAndIncrement();
         group.syncTasks.getAndIncrement();
-        worker.enqueue(task);
+        if (group.forkjoin() != null) {
+            group.forkjoin().fork(this, task);
+        } else {
+            worker.enqueue(task);
+        }
     }
 
     protected void cancel() {
@@ -113,6 +115,10 @@ public abstract class Task implements Runnable {
     }
 
     protected boolean sync() {
+        if (group.forkjoin() != null) {
+            return group.forkjoin().sync(this);
+        }
+
         logger.trace("task {} waits for children", this.toString());
         worker.syncCount.getAndIncrement();
         while (syncChildren.get() > 1) {
@@ -13,6 +13,8 @@
 
 package com.bmwcarit.barefoot.spatial;
 
+import java.io.Serializable;
+
 import net.sf.geographiclib.Geodesic;
 import net.sf.geographiclib.GeodesicData;
 
@@ -23,7 +25,9 @@ import com.esri.core.geometry.Polyline;
 /**
  * {@link SpatialOperator} as collection of spatial operations in WGS-84 projection (SRID 4326).
  */
-public class Geography implements SpatialOperator {
+public class Geography implements SpatialOperator, Serializable {
+    private static final long serialVersionUID = 1L;
+
     @Override
     public double distance(Point a, Point b) {
         return Geodesic.WGS84.Inverse(a.getY(), a.getX(), b.getY(), b.getX()).s12;
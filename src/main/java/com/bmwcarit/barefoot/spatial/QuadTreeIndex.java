@@ -13,11 +13,15 @@
 
 package com.bmwcarit.barefoot.spatial;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.nio.ByteBuffer;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map.Entry;
 import java.util.PriorityQueue;
 import java.util.Set;
 
@@ -36,14 +40,17 @@ import com.esri.core.geometry.WkbImportFlags;
 
 /**
  * Quad-tree index implementation of {@link SpatialIndex} to store polylines ({@link Polyline}).
+ * <p>
+ * <b>Note:</b> Serialization writes bounding boxes of all polylines together with their geometries
+ * such that deserialization rebuilds the quad-tree without decoding any geometry.
  */
 public class QuadTreeIndex implements SpatialIndex<Tuple<Integer, Double>>, Serializable {
     private static final long serialVersionUID = 1L;
     private final SpatialOperator spatial;
     private final static int height = 16;
-    private QuadTree index = null;
+    private transient QuadTree index = null;
     private final HashMap<Integer, byte[]> geometries;
-    private final Envelope2D envelope;
+    private transient Envelope2D envelope;
 
     /**
      * Creates a {@link QuadTreeIndex} with default bounding box of spatially indexed region and
@@ -260,4 +267,55 @@ public class QuadTreeIndex implements SpatialIndex<Tuple<Integer, Double>>, Seri
 
         return result;
     }
+
+    private static void writeEnvelope(ObjectOutputStream stream, Envelope2D envelope)
+            throws IOException {
+        Point lowerleft = envelope.getLowerLeft(), upperright = envelope.getUpperRight();
+        stream.writeDouble(lowerleft.getX());
+        stream.writeDouble(lowerleft.getY());
+        stream.writeDouble(upperright.getX());
+        stream.writeDouble(upperright.getY());
+    }
+
+    private static Envelope2D readEnvelope(ObjectInputStream stream) throws IOException {
+        double xmin = stream.readDouble(), ymin = stream.readDouble();
+        double xmax = stream.readDouble(), ymax = stream.readDouble();
+        return new Envelope2D(xmin, ymin, xmax, ymax);
+    }
+
+    private void writeObject(ObjectOutputStream stream) throws IOException {
+        stream.defaultWriteObject();
+        writeEnvelope(stream, envelope);
+        stream.writeInt(geometries.size());
+
+        for (Entry<Integer, byte[]> entry : geometries.entrySet()) {
+            Polyline geometry = (Polyline) OperatorImportFromWkb.local().execute(
+                    WkbImportFlags.wkbImportDefaults, Type.Polyline,
+                    ByteBuffer.wrap(entry.getValue()), null);
+
+            Envelope2D env = new Envelope2D();
+            geometry.queryEnvelope2D(env);
+
+            stream.writeInt(entry.getKey());
+            writeEnvelope(stream, env);
+        }
+    }
+
+    private void readObject(ObjectInputStream stream) throws IOException, ClassNotFoundException {
+        stream.defaultReadObject();
+        envelope = readEnvelope(stream);
+        index = new QuadTree(envelope, height);
+
+        int size = stream.readInt();
+        for (int i = 0; i < size; ++i) {
+            int id = stream.readInt();
+            Envelope2D env = readEnvelope(stream);
+
+            if (!geometries.containsKey(id)) {
+                throw new IOException("inconsistent spatial index, unknown identifier " + id);
+            }
+
+            index.insert(id, env);
+        }
+    }
 }
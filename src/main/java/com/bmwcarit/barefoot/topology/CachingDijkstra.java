@@ -0,0 +1,447 @@
+/*
+ * Copyright (C) 2015, BMW Car IT GmbH
+ *
+ * Author: Sebastian Mattheis <sebastian.mattheis@bmw-carit.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.bmwcarit.barefoot.topology;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Dijkstra's algorithm implementation of a {@link Router} that caches search trees of single
+ * source routing, see {@link Router#route(Point, Set, Cost, Cost, Double)}, for reuse in
+ * subsequent routings from the same source edge. A search tree contains settled edges in the
+ * order of the search and the search frontier, and it is independent of the source's position on
+ * the edge. Subsequent routings replay settled edges and resume the search from the frontier only
+ * if necessary, which gives the same routes as {@link Dijkstra}.
+ * <p>
+ * This is intended for routing of subsequent transitions of a single tracked object, where
+ * targets of a routing, i.e. matching candidates of one step, are sources of routings in the next
+ * step. Therefore, each routing also seeds search trees of its reached target edges with their
+ * subtrees, i.e. edges that are reached via the target edge, which are shortest paths from the
+ * target edge and become the initial frontier of its search tree. Hence, the next routing from a
+ * target edge settles the seeded edges without searching them again. Memory is limited by the
+ * maximum number of cached search trees, which are evicted least recently used first, and the
+ * maximum number of edges of a search tree, where a routing that exceeds it continues without
+ * search tree, which is then not cached.
+ * <p>
+ * <b>Note:</b> Search trees are identified by source edge and by class of the cost functions,
+ * which means that cost functions must be stateless. Routing restricted to a {@link SearchSpace}
+ * and routing from multiple sources is not cached.
+ *
+ * @param <E> Implementation of {@link AbstractEdge} in a directed {@link Graph}.
+ * @param <P> {@link Point} type of positions in the network.
+ */
+public class CachingDijkstra<E extends AbstractEdge<E>, P extends Point<E>>
+        extends Dijkstra<E, P> {
+    private static final Logger logger = LoggerFactory.getLogger(CachingDijkstra.class);
+    private final int maxEdges;
+    private final Map<Long, Tree> trees;
+    private long hits = 0, misses = 0, seeds = 0;
+
+    /*
+     * Route mark of an edge, with cost and bounding cost relative to the source edge's start mark.
+     */
+    private class Mark implements Comparable<Mark> {
+        final E edge;
+        final E predecessor;
+        final double cost;
+        final double bound;
+
+        Mark(E edge, E predecessor, double cost, double bound) {
+            this.edge = edge;
+            this.predecessor = predecessor;
+            this.cost = cost;
+            this.bound = bound;
+        }
+
+        @Override
+        public int compareTo(Mark other) {
+            return (this.cost < other.cost) ? -1 : (this.cost > other.cost) ? 1 : 0;
+        }
+    }
+
+    /*
+     * Route mark of a target, with absolute cost and bounding cost.
+     */
+    private class Reach extends Mark {
+        final P target;
+
+        Reach(E edge, E predecessor, double cost, double bound, P target) {
+            super(edge, predecessor, cost, bound);
+            this.target = target;
+        }
+    }
+
+    /*
+     * Search tree of a source edge.
+     */
+    private class Tree {
+        final E edge;
+        final Class<?> cost;
+        final Class<?> bound;
+        final List<Mark> settled = new ArrayList<>();
+        final PriorityQueue<Mark> frontier = new PriorityQueue<>();
+        final Map<E, Mark> entries = new HashMap<>();
+
+        Tree(E edge, Cost<E> cost, Cost<E> bound) {
+            this.edge = edge;
+            this.cost = cost.getClass();
+            this.bound = bound != null ? bound.getClass() : null;
+            Mark start = new Mark(edge, null, 0d, 0d);
+            entries.put(edge, start);
+            frontier.add(start);
+        }
+
+        boolean matches(Cost<E> cost, Cost<E> bound) {
+            return this.cost == cost.getClass()
+                    && this.bound == (bound != null ? bound.getClass() : null);
+        }
+
+        /*
+         * Gets i-th settled edge mark, which settles the next edge of the frontier if necessary.
+         */
+        Mark get(int i, Cost<E> cost, Cost<E> bound) {
+            if (i < settled.size()) {
+                return settled.get(i);
+            }
+            Mark current = frontier.poll();
+            if (current == null) {
+                return null;
+            }
+            settled.add(current);
+
+            Iterator<E> successors = current.edge.successors();
+            while (successors.hasNext()) {
+                E successor = successors.next();
+                if (!entries.containsKey(successor)) {
+                    Mark mark = new Mark(successor, current.edge,
+                            current.cost + cost.cost(successor),
+                            bound != null ? current.bound + bound.cost(successor) : 0d);
+                    entries.put(successor, mark);
+                    frontier.add(mark);
+                }
+            }
+            return current;
+        }
+
+        boolean peek(int i) {
+            return i < settled.size() || !frontier.isEmpty();
+        }
+
+        boolean exceeds() {
+            return entries.size() > maxEdges;
+        }
+
+        /*
+         * Adds mark of a shortest path from the tree's edge to the frontier.
+         */
+        void seed(Mark mark) {
+            entries.put(mark.edge, mark);
+            frontier.add(mark);
+        }
+    }
+
+    /**
+     * Creates a {@link CachingDijkstra} object.
+     *
+     * @param maxTrees Maximum number of cached search trees.
+     * @param maxEdges Maximum number of edges of a search tree, where routings that exceed it
+     *        continue without search tree.
+     */
+    public CachingDijkstra(final int maxTrees, int maxEdges) {
+        this.maxEdges = maxEdges;
+        this.trees = new LinkedHashMap<Long, Tree>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Tree> eldest) {
+                return size() > maxTrees;
+            }
+        };
+    }
+
+    /**
+     * Gets number of routings that reused a cached search tree.
+     *
+     * @return Number of routings that reused a cached search tree.
+     */
+    public synchronized long hits() {
+        return hits;
+    }
+
+    /**
+     * Gets number of routings that started with a new search tree.
+     *
+     * @return Number of routings that started with a new search tree.
+     */
+    public synchronized long misses() {
+        return misses;
+    }
+
+    /**
+     * Gets number of search trees seeded with subtrees of other search trees.
+     *
+     * @return Number of search trees seeded with subtrees of other search trees.
+     */
+    public synchronized long seeds() {
+        return seeds;
+    }
+
+    /**
+     * Removes all cached search trees.
+     */
+    public synchronized void clear() {
+        trees.clear();
+    }
+
+    private synchronized Tree tree(E edge, Cost<E> cost, Cost<E> bound) {
+        Tree tree = trees.get(edge.id());
+        if (tree != null && tree.matches(cost, bound)) {
+            hits += 1;
+            return tree;
+        }
+        misses += 1;
+        tree = new Tree(edge, cost, bound);
+        trees.put(edge.id(), tree);
+        return tree;
+    }
+
+    private synchronized void release(E edge, Tree tree) {
+        if (trees.get(edge.id()) == tree) {
+            logger.trace("drop search tree of edge {} exceeding {} edges", edge.id(), maxEdges);
+            trees.remove(edge.id());
+        }
+    }
+
+    private synchronized boolean cached(E edge) {
+        return trees.containsKey(edge.id());
+    }
+
+    private synchronized void offer(Tree tree) {
+        if (!trees.containsKey(tree.edge.id())) {
+            seeds += 1;
+            trees.put(tree.edge.id(), tree);
+        }
+    }
+
+    /*
+     * Seeds search trees of target edges with their subtrees in a search tree, where a subtree's
+     * costs relative to its target edge are shortest path costs since subpaths of shortest paths
+     * are shortest paths.
+     */
+    private void seed(Tree tree, Set<E> edges, Cost<E> cost, Cost<E> bound) {
+        Map<E, Tree> seeded = new HashMap<>();
+        for (E edge : edges) {
+            if (edge != tree.edge && tree.entries.containsKey(edge) && !cached(edge)) {
+                seeded.put(edge, new Tree(edge, cost, bound));
+            }
+        }
+
+        if (seeded.isEmpty()) {
+            return;
+        }
+
+        List<Mark> marks = new ArrayList<>(tree.settled);
+        marks.addAll(tree.frontier);
+        Map<E, List<Tree>> owners = new HashMap<>();
+
+        for (Mark mark : marks) {
+            List<Tree> inherited =
+                    mark.predecessor != null ? owners.get(mark.predecessor) : null;
+
+            if (inherited != null) {
+                for (Tree owner : inherited) {
+                    Mark root = tree.entries.get(owner.edge);
+                    owner.seed(new Mark(mark.edge, mark.predecessor, mark.cost - root.cost,
+                            mark.bound - root.bound));
+                }
+            }
+
+            Tree own = seeded.get(mark.edge);
+            if (own != null) {
+                List<Tree> subtrees =
+                        inherited != null ? new ArrayList<>(inherited) : new ArrayList<Tree>();
+                subtrees.add(own);
+                owners.put(mark.edge, subtrees);
+            } else if (inherited != null) {
+                owners.put(mark.edge, inherited);
+            }
+        }
+
+        for (Tree other : seeded.values()) {
+            offer(other);
+        }
+    }
+
+    @Override
+    public Map<P, List<E>> route(P source, Set<P> targets, Cost<E> cost) {
+        return route(source, targets, cost, null, null, null);
+    }
+
+    @Override
+    public Map<P, List<E>> route(P source, Set<P> targets, Cost<E> cost, Cost<E> bound,
+            Double max) {
+        return route(source, targets, cost, bound, max, null);
+    }
+
+    @Override
+    public Map<P, List<E>> route(P source, Set<P> targets, Cost<E> cost, Cost<E> bound,
+            Double max, SearchSpace<E> space) {
+        if (space != null) {
+            return super.route(source, targets, cost, bound, max, space);
+        }
+
+        Tree tree = tree(source.edge(), cost, bound);
+        Map<P, List<E>> paths = null;
+        synchronized (tree) {
+            paths = route(tree, source, targets, cost, bound, max);
+
+            if (paths != null) {
+                Set<E> edges = new HashSet<>();
+                for (Entry<P, List<E>> path : paths.entrySet()) {
+                    if (path.getValue() != null) {
+                        edges.add(path.getKey().edge());
+                    }
+                }
+                seed(tree, edges, cost, bound);
+            }
+        }
+
+        if (paths == null) {
+            release(source.edge(), tree);
+            return super.route(source, targets, cost, bound, max);
+        }
+        return paths;
+    }
+
+    private Map<P, List<E>> route(Tree tree, P source, Set<P> targets, Cost<E> cost,
+            Cost<E> bound, Double max) {
+        Map<E, Set<P>> targetEdges = new HashMap<>();
+        for (P target : targets) {
+            if (!targetEdges.containsKey(target.edge())) {
+                targetEdges.put(target.edge(), new HashSet<>(Arrays.asList(target)));
+            } else {
+                targetEdges.get(target.edge()).add(target);
+            }
+        }
+
+        double startcost = cost.cost(source.edge(), 1 - source.fraction());
+        double startbound = bound != null ? bound.cost(source.edge(), 1 - source.fraction()) : 0.0;
+
+        PriorityQueue<Reach> reaches = new PriorityQueue<>();
+        Map<P, Reach> finishs = new HashMap<>();
+
+        if (targetEdges.containsKey(source.edge())) { // start edge reaches target edge
+            for (P target : targetEdges.get(source.edge())) {
+                if (target.fraction() < source.fraction()) {
+                    continue;
+                }
+                double reachcost = startcost - cost.cost(source.edge(), 1 - target.fraction());
+                double reachbound = bound != null
+                        ? startcost - bound.cost(source.edge(), 1 - target.fraction())
+                        : 0.0;
+                reaches.add(new Reach(source.edge(), null, reachcost, reachbound, target));
+            }
+        }
+
+        /*
+         * Replay of settled edges merged with reaches of targets in the order of costs, which
+         * resumes search of the tree if all settled edges are replayed.
+         */
+        int i = 0;
+        while (tree.peek(i) || !reaches.isEmpty()) {
+            if (targetEdges.isEmpty()) {
+                break;
+            }
+
+            Reach reach = reaches.peek();
+            Mark next = i < tree.settled.size() ? tree.settled.get(i) : tree.frontier.peek();
+            boolean isReach =
+                    next == null || reach != null && reach.cost < startcost + next.cost;
+            double nextbound = isReach ? reach.bound : startbound + next.bound;
+
+            if (max != null && nextbound > max) {
+                break;
+            }
+
+            if (isReach) {
+                reaches.poll();
+                if (!finishs.containsKey(reach.target)) {
+                    finishs.put(reach.target, reach);
+                    Set<P> edges = targetEdges.get(reach.edge);
+                    edges.remove(reach.target);
+                    if (edges.isEmpty()) {
+                        targetEdges.remove(reach.edge);
+                    }
+                }
+                continue;
+            }
+
+            Mark current = tree.get(i++, cost, bound);
+            if (tree.exceeds()) {
+                return null;
+            }
+            double currentcost = startcost + current.cost;
+            double currentbound = startbound + current.bound;
+
+            Iterator<E> successors = current.edge.successors();
+            while (successors.hasNext()) {
+                E successor = successors.next();
+                if (!targetEdges.containsKey(successor)) {
+                    continue;
+                }
+                double succcost = currentcost + cost.cost(successor);
+                double succbound = bound != null ? currentbound + bound.cost(successor) : 0.0;
+                for (P target : targetEdges.get(successor)) {
+                    double reachcost = succcost - cost.cost(successor, 1 - target.fraction());
+                    double reachbound = bound != null
+                            ? succbound - bound.cost(successor, 1 - target.fraction())
+                            : 0.0;
+                    reaches.add(
+                            new Reach(successor, current.edge, reachcost, reachbound, target));
+                }
+            }
+        }
+
+        Map<P, List<E>> paths = new HashMap<>();
+        for (P target : targets) {
+            Reach reach = finishs.get(target);
+            if (reach == null) {
+                paths.put(target, null);
+            } else {
+                LinkedList<E> path = new LinkedList<>();
+                Mark iterator = reach;
+                while (iterator != null) {
+                    path.addFirst(iterator.edge);
+                    iterator = iterator.predecessor != null
+                            ? tree.entries.get(iterator.predecessor) : null;
+                }
+                paths.put(target, path);
+            }
+        }
+        return paths;
+    }
+}
@@ -42,44 +42,64 @@ public class Dijkstra<E extends AbstractEdge<E>, P extends Point<E>> implements
 
     @Override
     public List<E> route(P source, P target, Cost<E> cost) {
-        return ssst(source, target, cost, null, null);
+        return ssst(source, target, cost, null, null, null);
     }
 
     @Override
     public List<E> route(P source, P target, Cost<E> cost, Cost<E> bound, Double max) {
-        return ssst(source, target, cost, bound, max);
+        return ssst(source, target, cost, bound, max, null);
+    }
+
+    @Override
+    public List<E> route(P source, P target, Cost<E> cost, Cost<E> bound, Double max,
+            SearchSpace<E> space) {
+        return ssst(source, target, cost, bound, max, space);
     }
 
     @Override
     public Map<P, List<E>> route(P source, Set<P> targets, Cost<E> cost) {
-        return ssmt(source, targets, cost, null, null);
+        return ssmt(source, targets, cost, null, null, null);
     }
 
     @Override
     public Map<P, List<E>> route(P source, Set<P> targets, Cost<E> cost, Cost<E> bound,
             Double max) {
-        return ssmt(source, targets, cost, bound, max);
+        return ssmt(source, targets, cost, bound, max, null);
+    }
+
+    @Override
+    public Map<P, List<E>> route(P source, Set<P> targets, Cost<E> cost, Cost<E> bound,
+            Double max, SearchSpace<E> space) {
+        return ssmt(source, targets, cost, bound, max, space);
     }
 
     @Override
     public Map<P, Tuple<P, List<E>>> route(Set<P> sources, Set<P> targets, Cost<E> cost) {
-        return msmt(sources, targets, cost, null, null);
+        return msmt(sources, targets, cost, null, null, null);
     }
 
     @Override
     public Map<P, Tuple<P, List<E>>> route(Set<P> sources, Set<P> targets, Cost<E> cost,
             Cost<E> bound, Double max) {
-        return msmt(sources, targets, cost, bound, max);
+        return msmt(sources, targets, cost, bound, max, null);
+    }
+
+    @Override
+    public Map<P, Tuple<P, List<E>>> route(Set<P> sources, Set<P> targets, Cost<E> cost,
+            Cost<E> bound, Double max, SearchSpace<E> space) {
+        return msmt(sources, targets, cost, bound, max, space);
     }
 
-    private List<E> ssst(P source, P target, Cost<E> cost, Cost<E> bound, Double max) {
-        return ssmt(source, new HashSet<>(Arrays.asList(target)), cost, bound, max).get(target);
+    private List<E> ssst(P source, P target, Cost<E> cost, Cost<E> bound, Double max,
+            SearchSpace<E> space) {
+        return ssmt(source, new HashSet<>(Arrays.asList(target)), cost, bound, max, space)
+                .get(target);
     }
 
     private Map<P, List<E>> ssmt(P source, Set<P> targets, Cost<E> cost, Cost<E> bound,
-            Double max) {
+            Double max, SearchSpace<E> space) {
         Map<P, Tuple<P, List<E>>> map =
-                msmt(new HashSet<>(Arrays.asList(source)), targets, cost, bound, max);
+                msmt(new HashSet<>(Arrays.asList(source)), targets, cost, bound, max, space);
         Map<P, List<E>> result = new HashMap<>();
         for (Entry<P, Tuple<P, List<E>>> entry : map.entrySet()) {
             result.put(entry.getKey(), entry.getValue() == null ? null : entry.getValue().two());
@@ -88,7 +108,7 @@ public class Dijkstra<E extends AbstractEdge<E>, P extends Point<E>> implements
     }
 
     private Map<P, Tuple<P, List<E>>> msmt(final Set<P> sources, final Set<P> targets, Cost<E> cost,
-            Cost<E> bound, Double max) {
+            Cost<E> bound, Double max, SearchSpace<E> space) {
 
         /*
          * Route mark representation.
@@ -238,6 +258,11 @@ public class Dijkstra<E extends AbstractEdge<E>, P extends Point<E>> implements
             while (successors.hasNext()) {
                 E successor = successors.next();
 
+                if (space != null && !space.contains(successor)) {
+                    logger.trace("pruned successor edge {}", successor.id());
+                    continue;
+                }
+
                 double succcost = current.three() + cost.cost(successor);
                 double succbound = bound != null ? current.four() + bound.cost(successor) : 0.0;
 
@@ -13,6 +13,9 @@
 
 package com.bmwcarit.barefoot.topology;
 
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -122,6 +125,61 @@ public class Graph<E extends AbstractEdge<E>> implements Serializable {
         }
     }
 
+    /**
+     * Writes the constructed network topology, i.e. successor and neighbor references of all edges,
+     * by identifiers. (Edges themselves are not written, see {@link Graph#readTopology(ObjectInput)}
+     * for restoring the network topology.)
+     *
+     * @param output {@link ObjectOutput} to write the network topology to.
+     * @throws IOException thrown if writing fails.
+     */
+    protected void writeTopology(ObjectOutput output) throws IOException {
+        output.writeInt(edges.size());
+
+        for (E edge : edges.values()) {
+            output.writeLong(edge.id());
+            output.writeBoolean(edge.successor() != null);
+            if (edge.successor() != null) {
+                output.writeLong(edge.successor().id());
+            }
+            output.writeBoolean(edge.neighbor() != null);
+            if (edge.neighbor() != null) {
+                output.writeLong(edge.neighbor().id());
+            }
+        }
+    }
+
+    /**
+     * Reads network topology as written with {@link Graph#writeTopology(ObjectOutput)} which
+     * replaces construction of the graph, see {@link Graph#construct()}. (The graph must contain the
+     * same edges as the graph that has written the network topology.)
+     *
+     * @param input {@link ObjectInput} to read the network topology from.
+     * @throws IOException thrown if reading fails or network topology refers to unknown edges.
+     */
+    protected void readTopology(ObjectInput input) throws IOException {
+        int size = input.readInt();
+
+        if (size != edges.size()) {
+            throw new IOException("inconsistent topology, expected " + edges.size()
+                    + " edges but read " + size);
+        }
+
+        for (int i = 0; i < size; ++i) {
+            E edge = edge(input.readLong());
+            edge.successor(input.readBoolean() ? edge(input.readLong()) : null);
+            edge.neighbor(input.readBoolean() ? edge(input.readLong()) : null);
+        }
+    }
+
+    private E edge(long id) throws IOException {
+        E edge = edges.get(id);
+        if (edge == null) {
+            throw new IOException("inconsistent topology, unknown edge " + id);
+        }
+        return edge;
+    }
+
     /**
      * Gets the set of (weakly) connected components of the graph. (A weakly connected component is
      * the set of edges that is connected where directed edges are assumed to be undirected.)
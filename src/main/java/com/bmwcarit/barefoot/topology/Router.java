@@ -56,6 +56,25 @@ public interface Router<E extends AbstractEdge<E>, P extends Point<E>> {
      */
     List<E> route(P source, P target, Cost<E> cost, Cost<E> bound, Double max);
 
+    /**
+     * Gets path, i.e. a sequence of {@link AbstractEdge}s, from source {@link Point} to target
+     * {@link Point} with minimum cost according to {@link Cost} function. Search depth of routing
+     * can be bound by bounding {@link Cost} function and a maximum bounding cost value, and the
+     * search can be restricted to a {@link SearchSpace}.
+     *
+     * @param source Source {@link Point} in the graph.
+     * @param target Target {@link Point} in the graph.
+     * @param cost Custom {@link Cost} function.
+     * @param bound Bounding {@link Cost} function.
+     * @param max Maximum bounding cost value to bound search depth.
+     * @param space {@link SearchSpace} of edges to be expanded, or null if unrestricted.
+     * @return Path, i.e. a sequence of {@link AbstractEdge}s, from source {@link Point} to target
+     *         {@link Point} with minimum cost according to {@link Cost} function. If there is no
+     *         path from source to target, it returns null.
+     */
+    List<E> route(P source, P target, Cost<E> cost, Cost<E> bound, Double max,
+            SearchSpace<E> space);
+
     /**
      * Gets path, i.e. a sequence of {@link AbstractEdge}s, from source {@link Point} to each target
      * {@link Point} with minimum cost according to {@link Cost} function.
@@ -85,6 +104,25 @@ public interface Router<E extends AbstractEdge<E>, P extends Point<E>> {
      */
     Map<P, List<E>> route(P source, Set<P> targets, Cost<E> cost, Cost<E> bound, Double max);
 
+    /**
+     * Gets path, i.e. a sequence of {@link AbstractEdge}s, from source {@link Point} to each target
+     * {@link Point} with minimum cost according to {@link Cost} function. Search depth of routing
+     * can be bound by bounding {@link Cost} function and a maximum bounding cost value, and the
+     * search can be restricted to a {@link SearchSpace}.
+     *
+     * @param source Source {@link Point} in the graph.
+     * @param targets Set of target {@link Point}s in the graph.
+     * @param cost Custom {@link Cost} function.
+     * @param bound Bounding {@link Cost} function.
+     * @param max Maximum bounding cost value to bound search depth.
+     * @param space {@link SearchSpace} of edges to be expanded, or null if unrestricted.
+     * @return Map of target {@link Point} to path, i.e. a sequence of {@link AbstractEdge}s, from
+     *         source {@link Point} to target {@link Point} with minimum cost according to
+     *         {@link Cost} function. If there is no path from source to target, it maps to null.
+     */
+    Map<P, List<E>> route(P source, Set<P> targets, Cost<E> cost, Cost<E> bound, Double max,
+            SearchSpace<E> space);
+
     /**
      * Gets path, i.e. a sequence of {@link AbstractEdge}s, to each target {@link Point} from
      * exactly that source {@link Point} that has minimum cost according to {@link Cost} function.
@@ -117,4 +155,24 @@ public interface Router<E extends AbstractEdge<E>, P extends Point<E>> {
      */
     Map<P, Tuple<P, List<E>>> route(Set<P> sources, Set<P> targets, Cost<E> cost, Cost<E> bound,
             Double max);
+
+    /**
+     * Gets path, i.e. a sequence of {@link AbstractEdge}s, to each target {@link Point} from
+     * exactly that source {@link Point} that has minimum cost according to {@link Cost} function.
+     * Search depth of routing can be bound by bounding {@link Cost} function and a maximum bounding
+     * cost value, and the search can be restricted to a {@link SearchSpace}.
+     *
+     * @param sources Set of source {@link Point}s in the graph.
+     * @param targets Set of target {@link Point}s in the graph.
+     * @param cost Custom {@link Cost} function.
+     * @param bound Bounding {@link Cost} function.
+     * @param max Maximum bounding cost value to bound search depth.
+     * @param space {@link SearchSpace} of edges to be expanded, or null if unrestricted.
+     * @return Map of target {@link Point} to a tuple of path, i.e. a sequence of
+     *         {@link AbstractEdge}s, and source {@link Point} that have minimum cost according to
+     *         {@link Cost} function for reaching the target. If there is no path to target, it maps
+     *         to null.
+     */
+    Map<P, Tuple<P, List<E>>> route(Set<P> sources, Set<P> targets, Cost<E> cost, Cost<E> bound,
+            Double max, SearchSpace<E> space);
 }
@@ -0,0 +1,31 @@
+/*
+ * Copyright (C) 2015, BMW Car IT GmbH
+ *
+ * Author: Sebastian Mattheis <sebastian.mattheis@bmw-carit.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.bmwcarit.barefoot.topology;
+
+/**
+ * Search space of routing with a {@link Router}, which restricts edges that are expanded in the
+ * search. It may be used to prune edges that cannot be part of a path within some bound, e.g.
+ * from geometric information of the edges.
+ *
+ * @param <E> Implementation of {@link AbstractEdge} in a directed {@link Graph}.
+ */
+public interface SearchSpace<E extends AbstractEdge<E>> {
+    /**
+     * Tests if an edge is part of the search space, i.e. it may be expanded in the search.
+     *
+     * @param edge {@link AbstractEdge} to be tested.
+     * @return True if the edge is part of the search space, false otherwise.
+     */
+    boolean contains(E edge);
+}
@@ -38,7 +38,7 @@ public abstract class TrackerControl {
      * Initializes stand-alone online map matching server (tracker). Server properties file must
      * include matcher, server, and tracker properties, see
      * {@link TrackerServer#TrackerServer(Properties, RoadMap)}. Database properties file must
-     * include database connection properties, see {@link Loader#roadmap(Properties, boolean)}.
+     * include database connection properties, see {@link Loader#snapshot(Properties)}.
      *
      * @param pathServerProperties Path to server properties file.
      * @param pathDatabaseProperties Path to database properties file.
@@ -60,12 +60,11 @@ public abstract class TrackerControl {
 
         RoadMap map = null;
         try {
-            map = Loader.roadmap(databaseProperties, true);
+            map = Loader.snapshot(databaseProperties);
         } catch (SourceException e) {
             logger.error(e.getMessage());
             System.exit(1);
         }
-        map.construct();
 
         try {
             logger.info("read tracker properties from file {}", pathServerProperties);
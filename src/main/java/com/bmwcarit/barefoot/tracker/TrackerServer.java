@@ -15,6 +15,7 @@ package com.bmwcarit.barefoot.tracker;
 import java.util.Properties;
 import java.util.Set;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.LinkedBlockingDeque;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -23,6 +24,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.zeromq.ZMQ;
 
+import com.bmwcarit.barefoot.matcher.KinematicFilter;
 import com.bmwcarit.barefoot.matcher.Matcher;
 import com.bmwcarit.barefoot.matcher.MatcherCandidate;
 import com.bmwcarit.barefoot.matcher.MatcherKState;
@@ -36,6 +38,7 @@ import com.bmwcarit.barefoot.scheduler.StaticScheduler.InlineScheduler;
 import com.bmwcarit.barefoot.scheduler.Task;
 import com.bmwcarit.barefoot.spatial.Geography;
 import com.bmwcarit.barefoot.spatial.SpatialOperator;
+import com.bmwcarit.barefoot.topology.CachingDijkstra;
 import com.bmwcarit.barefoot.topology.Dijkstra;
 import com.bmwcarit.barefoot.tracker.TemporaryMemory.Factory;
 import com.bmwcarit.barefoot.tracker.TemporaryMemory.Publisher;
@@ -65,9 +68,25 @@ public class TrackerServer extends AbstractServer {
      * <li>matcher.distance.max (see {@link Matcher#setMaxDistance(double)})</li>
      * <li>matcher.lambda (see {@link Matcher#setLambda(double)})</li>
      * <li>matcher.sigma (see {@link Matcher#setSigma(double)})</li>
+     * <li>matcher.ellipse (see {@link Matcher#ellipse(boolean)})</li>
+     * <li>matcher.beam.width (see {@link Matcher#setBeamWidth(int)})</li>
+     * <li>matcher.beam.threshold (see {@link Matcher#setBeamThreshold(double)})</li>
+     * <li>matcher.candidates.min (see {@link Matcher#setMinCandidates(int)})</li>
+     * <li>matcher.azimuth.max (see {@link Matcher#setMaxAzimuth(double)})</li>
+     * <li>matcher.local.distance (see {@link Matcher#setLocalDistance(double)})</li>
+     * <li>matcher.outlier.speed (meters per second, optional, default: 0, rejects samples that
+     * imply a higher speed, see {@link KinematicFilter})</li>
+     * <li>matcher.outlier.acceleration (meters per square second, optional, default: 0, rejects
+     * samples that imply a higher acceleration, see {@link KinematicFilter})</li>
+     * <li>matcher.scheduler (optional, default: worker, sets the scheduler of matcher threads,
+     * which is either worker or forkjoin, see {@link StaticScheduler})</li>
      * <li>tracker.port (optional, default: 1235)</li>
      * <li>tracker.ttl (seconds, optional, default: 60, sets time to live of state information for
      * tracked objects which is infinite if set to zero)</li>
+     * <li>tracker.cache.trees (optional, default: 0, sets maximum number of cached routing search
+     * trees per tracked object, which is disabled if set to zero, see {@link CachingDijkstra})</li>
+     * <li>tracker.cache.edges (optional, default: 10000, sets maximum number of edges of a cached
+     * routing search tree, see {@link CachingDijkstra})</li>
      * </ul>
      *
      * @param properties {@link Properties} object with (optional) server and matcher settings.
@@ -97,14 +116,20 @@ public class TrackerServer extends AbstractServer {
     }
 
     private static class MatcherResponseFactory extends ResponseFactory {
+        private final RoadMap map;
         private final Matcher matcher;
         private final int TTL;
         private final int interval;
         private final double distance;
+        private final double speed;
+        private final double acceleration;
         private final double sensitive;
+        private final int trees;
+        private final int edges;
         private final TemporaryMemory<State> memory;
 
         public MatcherResponseFactory(Properties properties, RoadMap map) {
+            this.map = map;
             matcher = new Matcher(map, new Dijkstra<Road, RoadPoint>(), new TimePriority(),
                     new Geography());
 
@@ -118,35 +143,79 @@ public class TrackerServer extends AbstractServer {
                     properties.getProperty("matcher.sigma", Double.toString(matcher.getSigma()))));
             matcher.shortenTurns(
                     Boolean.parseBoolean(properties.getProperty("matcher.shortenturns", "true")));
+            matcher.ellipse(
+                    Boolean.parseBoolean(properties.getProperty("matcher.ellipse", "false")));
+            matcher.setBeamWidth(Integer.parseInt(properties.getProperty("matcher.beam.width",
+                    Integer.toString(matcher.getBeamWidth()))));
+            matcher.setBeamThreshold(Double.parseDouble(properties.getProperty(
+                    "matcher.beam.threshold", Double.toString(matcher.getBeamThreshold()))));
+            matcher.setMinCandidates(Integer.parseInt(properties.getProperty(
+                    "matcher.candidates.min", Integer.toString(matcher.getMinCandidates()))));
+            matcher.setMaxAzimuth(Double.parseDouble(properties.getProperty(
+                    "matcher.azimuth.max", Double.toString(matcher.getMaxAzimuth()))));
+            matcher.setLocalDistance(Double.parseDouble(properties.getProperty(
+                    "matcher.local.distance", Double.toString(matcher.getLocalDistance()))));
             interval = Integer.parseInt(properties.getProperty("matcher.interval.min", "1000"));
             distance = Integer.parseInt(properties.getProperty("matcher.distance.min", "0"));
+            speed = Double.parseDouble(properties.getProperty("matcher.outlier.speed", "0"));
+            acceleration =
+                    Double.parseDouble(properties.getProperty("matcher.outlier.acceleration", "0"));
             sensitive = Double.parseDouble(
                     properties.getProperty("tracker.monitor.sensitive", Double.toString(0d)));
             TTL = Integer.parseInt(properties.getProperty("tracker.state.ttl", "60"));
             int port = Integer.parseInt(properties.getProperty("tracker.port", "1235"));
+            trees = Integer.parseInt(properties.getProperty("tracker.cache.trees", "0"));
+            edges = Integer.parseInt(properties.getProperty("tracker.cache.edges", "10000"));
             memory = new TemporaryMemory<>(new Factory<State>() {
                 @Override
                 public State newInstance(String id) {
-                    return new State(id);
+                    KinematicFilter filter = null;
+                    if (speed > 0 || acceleration > 0) {
+                        filter = new KinematicFilter(spatial, speed, acceleration);
+                        filter.setTolerance(2 * matcher.getSigma());
+                    }
+                    Matcher cached = trees > 0
+                            ? matcher.derive(new CachingDijkstra<Road, RoadPoint>(trees, edges))
+                            : null;
+                    return new State(id, filter, cached);
                 }
             }, new StatePublisher(port));
 
             logger.info("tracker.state.ttl={}", TTL);
             logger.info("tracker.port={}", port);
             logger.info("tracker.monitor.sensitive={}", sensitive);
+            logger.info("tracker.cache.trees={}", trees);
+            logger.info("tracker.cache.edges={}", edges);
             int matcherThreads = Integer.parseInt(properties.getProperty("matcher.threads",
                     Integer.toString(Runtime.getRuntime().availableProcessors())));
 
-            StaticScheduler.reset(matcherThreads, (long) 1E4);
+            String matcherScheduler = properties.getProperty("matcher.scheduler", "worker");
+
+            if (matcherScheduler.equals("forkjoin")) {
+                StaticScheduler.reset(new ForkJoinPool(matcherThreads));
+            } else if (matcherScheduler.equals("worker")) {
+                StaticScheduler.reset(matcherThreads, (long) 1E4);
+            } else {
+                throw new RuntimeException("unknown scheduler " + matcherScheduler);
+            }
 
             logger.info("matcher.radius.max={}", matcher.getMaxRadius());
             logger.info("matcher.distance.max={}", matcher.getMaxDistance());
             logger.info("matcher.lambda={}", matcher.getLambda());
             logger.info("matcher.sigma={}", matcher.getSigma());
             logger.info("matcher.threads={}", matcherThreads);
+            logger.info("matcher.scheduler={}", matcherScheduler);
             logger.info("matcher.shortenturns={}", matcher.shortenTurns());
+            logger.info("matcher.ellipse={}", matcher.ellipse());
+            logger.info("matcher.beam.width={}", matcher.getBeamWidth());
+            logger.info("matcher.beam.threshold={}", matcher.getBeamThreshold());
+            logger.info("matcher.candidates.min={}", matcher.getMinCandidates());
+            logger.info("matcher.azimuth.max={}", matcher.getMaxAzimuth());
+            logger.info("matcher.local.distance={}", matcher.getLocalDistance());
             logger.info("matcher.interval.min={}", interval);
             logger.info("matcher.distance.min={}", distance);
+            logger.info("matcher.outlier.speed={}", speed);
+            logger.info("matcher.outlier.acceleration={}", acceleration);
         }
 
         @Override
@@ -184,6 +253,15 @@ public class TrackerServer extends AbstractServer {
                                     }
                                 }
 
+                                if (state.filter != null && !state.filter.accept(sample)) {
+                                    state.unlock();
+                                    logger.debug("rejected sample of object {} as outlier",
+                                            sample.id());
+                                    return RESULT.SUCCESS;
+                                }
+
+                                final Matcher executor =
+                                        state.matcher != null ? state.matcher : matcher;
                                 final AtomicReference<Set<MatcherCandidate>> vector =
                                         new AtomicReference<>();
                                 InlineScheduler scheduler = StaticScheduler.scheduler();
@@ -192,7 +270,7 @@ public class TrackerServer extends AbstractServer {
                                     public void run() {
                                         Stopwatch sw = new Stopwatch();
                                         sw.start();
-                                        vector.set(matcher.execute(state.inner.vector(),
+                                        vector.set(executor.execute(state.inner.vector(),
                                                 state.inner.sample(), sample));
                                         sw.stop();
                                         logger.debug("state update of object {} processed in {} ms",
@@ -231,7 +309,12 @@ public class TrackerServer extends AbstractServer {
                                 State state = memory.getIfExistsLocked(id);
 
                                 if (state != null) {
-                                    response.append(state.inner.toJSON().toString());
+                                    JSONObject jsonstate = state.inner.toJSON();
+                                    if (state.filter != null) {
+                                        jsonstate.put("rejected", state.filter.rejected());
+                                    }
+                                    map.originals(jsonstate);
+                                    response.append(jsonstate.toString());
                                     state.unlock();
                                 } else {
                                     JSONObject empty = new JSONObject();
@@ -261,9 +344,13 @@ public class TrackerServer extends AbstractServer {
 
     private static class State extends TemporaryElement<State> {
         final MatcherKState inner = new MatcherKState();
+        final KinematicFilter filter;
+        final Matcher matcher;
 
-        public State(String id) {
+        public State(String id, KinematicFilter filter, Matcher matcher) {
             super(id);
+            this.filter = filter;
+            this.matcher = matcher;
         }
     };
 
@@ -298,6 +385,9 @@ public class TrackerServer extends AbstractServer {
             try {
                 JSONObject json = state.inner.toMonitorJSON();
                 json.put("id", id);
+                if (state.filter != null) {
+                    json.put("rejected", state.filter.rejected());
+                }
                 queue.put(json.toString());
             } catch (Exception e) {
                 logger.error("update failed: {}", e.getMessage());
@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2015, BMW Car IT GmbH
+ *
+ * Author: Sebastian Mattheis <sebastian.mattheis@bmw-carit.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.bmwcarit.barefoot.util;
+
+import java.util.Arrays;
+
+/**
+ * Base64 encoding and decoding of binary data (RFC 4648) with the standard alphabet and padding,
+ * e.g. for embedding binary data in JSON messages.
+ */
+public abstract class Base64 {
+    private static final char[] alphabet =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+    private static final int[] values = new int[128];
+
+    static {
+        Arrays.fill(values, -1);
+        for (int i = 0; i < alphabet.length; ++i) {
+            values[alphabet[i]] = i;
+        }
+    }
+
+    /**
+     * Encodes binary data to a Base64 string.
+     *
+     * @param data Binary data.
+     * @return Base64 string of the binary data.
+     */
+    public static String encode(byte[] data) {
+        char[] chars = new char[(data.length + 2) / 3 * 4];
+        int c = 0;
+
+        for (int i = 0; i < data.length; i += 3) {
+            int remaining = data.length - i;
+            int bits = (data[i] & 0xff) << 16;
+            if (remaining > 1) {
+                bits |= (data[i + 1] & 0xff) << 8;
+            }
+            if (remaining > 2) {
+                bits |= data[i + 2] & 0xff;
+            }
+
+            chars[c++] = alphabet[(bits >> 18) & 0x3f];
+            chars[c++] = alphabet[(bits >> 12) & 0x3f];
+            chars[c++] = remaining > 1 ? alphabet[(bits >> 6) & 0x3f] : '=';
+            chars[c++] = remaining > 2 ? alphabet[bits & 0x3f] : '=';
+        }
+
+        return new String(chars);
+    }
+
+    /**
+     * Decodes a Base64 string to binary data.
+     *
+     * @param string Base64 string.
+     * @return Binary data of the Base64 string.
+     * @throws IllegalArgumentException thrown if the string is not valid Base64.
+     */
+    public static byte[] decode(String string) {
+        if (string.length() % 4 != 0) {
+            throw new IllegalArgumentException("invalid length of base64 string");
+        }
+
+        int padding = 0;
+        if (string.endsWith("==")) {
+            padding = 2;
+        } else if (string.endsWith("=")) {
+            padding = 1;
+        }
+
+        byte[] data = new byte[string.length() / 4 * 3 - padding];
+        int d = 0;
+
+        for (int i = 0; i < string.length(); i += 4) {
+            int bits = 0;
+            for (int j = 0; j < 4; ++j) {
+                char c = string.charAt(i + j);
+                int value = c < 128 ? values[c] : -1;
+                if (value < 0) {
+                    if (c != '=' || i + 4 < string.length() || j < 4 - padding) {
+                        throw new IllegalArgumentException("invalid character in base64 string");
+                    }
+                    value = 0;
+                }
+                bits = (bits << 6) | value;
+            }
+
+            data[d++] = (byte) (bits >> 16);
+            if (d < data.length) {
+                data[d++] = (byte) (bits >> 8);
+            }
+            if (d < data.length) {
+                data[d++] = (byte) bits;
+            }
+        }
+
+        return data;
+    }
+}
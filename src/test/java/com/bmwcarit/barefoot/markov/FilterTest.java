@@ -252,4 +252,66 @@ public class FilterTest {
             }
         }
     }
+
+    @Test
+    public void FilterTestBeamPruning() {
+        MockStates states = new MockStates(new double[][] {{0, 0, 0.6, 1.0, 0.4},
+                {0.2, 0.3, 0.01, 0.02, 0.3}, {0.3, 0.4, 0.2, 0.05, 0.02}});
+
+        int best = 0;
+        for (int c = 1; c < states.numCandidates(); ++c) {
+            if (states.filtprob(c) > states.filtprob(best)) {
+                best = c;
+            }
+        }
+
+        {
+            MockFilter filter = new MockFilter(states);
+            filter.setBeamWidth(1);
+            Set<MockElement> result = filter.execute();
+
+            assertEquals(1, result.size());
+            MockElement element = result.iterator().next();
+            assertEquals(best, element.numid());
+            assertEquals(1d, element.filtprob(), 10E-6);
+            assertEquals(states.seqprob(best), element.seqprob(), 10E-6);
+        }
+        {
+            MockFilter filter = new MockFilter(states);
+            filter.setBeamThreshold(1d);
+            Set<MockElement> result = filter.execute();
+
+            assertEquals(1, result.size());
+            assertEquals(best, result.iterator().next().numid());
+        }
+        {
+            MockFilter filter = new MockFilter(states);
+            filter.setBeamWidth(states.numCandidates());
+            Set<MockElement> result = filter.execute();
+
+            assertEquals(states.numCandidates(), result.size());
+            for (MockElement element : result) {
+                assertEquals(states.filtprob(element.numid()), element.filtprob(), 10E-6);
+            }
+        }
+    }
+
+    @Test
+    public void FilterTestParallel() {
+        MockStates states = new MockStates(new double[][] {{0, 0, 0.6, 1.0, 0.4},
+                {0.2, 0.3, 0.01, 0.02, 0.3}, {0.3, 0.4, 0.2, 0.05, 0.02}});
+        MockFilter filter = new MockFilter(states);
+        filter.parallel(true);
+
+        Set<MockElement> result = filter.execute();
+
+        assertEquals(states.numCandidates(), result.size());
+
+        for (MockElement element : result) {
+            assertEquals(states.filtprob(element.numid()), element.filtprob(), 10E-6);
+            assertEquals(states.seqprob(element.numid()), element.seqprob(), 10E-6);
+            assertEquals(states.pred(element.numid()), element.predecessor().numid());
+            assertNotEquals(null, element.transition());
+        }
+    }
 }
@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2015, BMW Car IT GmbH
+ *
+ * Author: Sebastian Mattheis <sebastian.mattheis@bmw-carit.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.bmwcarit.barefoot.markov;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class FixedLagStateTest {
+
+    private static class MockElem extends StateCandidate<MockElem, StateTransition, Sample> {
+        public MockElem(int id, double filtprob, MockElem pred) {
+            super(Integer.toString(id));
+            this.filtprob(filtprob);
+            this.predecessor(pred);
+        }
+    }
+
+    private static class MockPublisher implements FixedLagState.Publisher<MockElem, Sample> {
+        private final List<String> ids = new ArrayList<>();
+        private final List<Long> times = new ArrayList<>();
+
+        @Override
+        public void publish(Sample sample, MockElem candidate) {
+            ids.add(candidate.id());
+            times.add(sample.time());
+        }
+    }
+
+    private static List<Set<MockElem>> vectors(long seed, int samples, int candidates) {
+        Random random = new Random(seed);
+        List<Set<MockElem>> vectors = new ArrayList<>();
+        List<MockElem> previous = new ArrayList<>();
+        for (int i = 0; i < samples; ++i) {
+            List<MockElem> vector = new ArrayList<>();
+            for (int j = 0; j < candidates; ++j) {
+                MockElem pred =
+                        previous.isEmpty() ? null : previous.get(random.nextInt(previous.size()));
+                vector.add(new MockElem(i * candidates + j, random.nextDouble(), pred));
+            }
+            vectors.add(new HashSet<>(vector));
+            previous = vector;
+        }
+        return vectors;
+    }
+
+    @Test
+    public void TestConvergence() {
+        for (long seed = 0; seed < 10; ++seed) {
+            KState<MockElem, StateTransition, Sample> kstate = new KState<>();
+            List<Set<MockElem>> vectors = vectors(seed, 50, 3);
+            for (int i = 0; i < vectors.size(); ++i) {
+                kstate.update(vectors.get(i), new Sample(i));
+            }
+
+            MockPublisher publisher = new MockPublisher();
+            FixedLagState<MockElem, StateTransition, Sample> state =
+                    new FixedLagState<>(-1, publisher);
+            vectors = vectors(seed, 50, 3);
+            int published = 0;
+            for (int i = 0; i < vectors.size(); ++i) {
+                state.update(vectors.get(i), new Sample(i));
+                assertTrue(publisher.ids.size() >= published);
+                published = publisher.ids.size();
+                assertEquals(i + 1, published + state.samples().size());
+            }
+            assertTrue(published > 0);
+
+            state.flush();
+            assertTrue(state.isEmpty());
+
+            List<MockElem> sequence = kstate.sequence();
+            assertEquals(sequence.size(), publisher.ids.size());
+            for (int i = 0; i < sequence.size(); ++i) {
+                assertEquals(sequence.get(i).id(), publisher.ids.get(i));
+                assertEquals(i, publisher.times.get(i).longValue());
+            }
+        }
+    }
+
+    @Test
+    public void TestLag() {
+        Random random = new Random(42);
+        MockPublisher publisher = new MockPublisher();
+        FixedLagState<MockElem, StateTransition, Sample> state = new FixedLagState<>(2, publisher);
+
+        for (int i = 0; i < 50; ++i) {
+            List<MockElem> previous = new ArrayList<>(state.vector());
+            Set<MockElem> vector = new HashSet<>();
+            for (int j = 0; j < 3; ++j) {
+                MockElem pred =
+                        previous.isEmpty() ? null : previous.get(random.nextInt(previous.size()));
+                vector.add(new MockElem(i * 3 + j, random.nextDouble(), pred));
+            }
+            state.update(vector, new Sample(i));
+
+            assertTrue(state.samples().size() <= 3);
+            assertEquals(i + 1, publisher.ids.size() + state.samples().size());
+            for (MockElem candidate : state.vectorAt(0)) {
+                assertEquals(null, candidate.predecessor());
+            }
+        }
+
+        state.flush();
+        assertEquals(50, publisher.ids.size());
+        for (int i = 0; i < 50; ++i) {
+            assertEquals(i, publisher.times.get(i).longValue());
+            assertEquals(i, Integer.parseInt(publisher.ids.get(i)) / 3);
+        }
+    }
+}
@@ -14,14 +14,17 @@
 package com.bmwcarit.barefoot.markov;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -38,6 +41,12 @@ public class KStateTest {
             this.predecessor(pred);
         }
 
+        public MockElem(double filtprob, MockElem pred) {
+            super();
+            this.filtprob(filtprob);
+            this.predecessor(pred);
+        }
+
         public MockElem(JSONObject json, MockFactory factory) throws JSONException {
             super(json, factory);
         }
@@ -470,4 +479,84 @@ public class KStateTest {
             }
         }
     }
+
+    @Test
+    public void TestKStateLong() {
+        for (int k : new int[] {-1, 0, 3}) {
+            KState<MockElem, StateTransition, Sample> state = new KState<>(k, -1);
+            MockElem previous = null;
+
+            for (int i = 0; i < 100; ++i) {
+                MockElem first = new MockElem(2 * i, Math.log10(0.6), 0.6, previous);
+                MockElem second = new MockElem(2 * i + 1, Math.log10(0.4), 0.4, previous);
+
+                state.update(new HashSet<>(Arrays.asList(first, second)), new Sample(i));
+                previous = first;
+
+                int length = k < 0 ? i + 1 : Math.min(i + 1, k + 1);
+                assertEquals(length, state.samples().size());
+                assertEquals(length, state.vectors().size());
+                assertEquals(length, state.sequence().size());
+                assertEquals(length + 1, state.size());
+                assertEquals(i, state.sample().time());
+
+                List<MockElem> sequence = state.sequence();
+                for (int j = 0; j < length; ++j) {
+                    assertEquals(2 * (i - length + 1 + j), sequence.get(j).numid());
+                    assertEquals(i - length + 1 + j, state.samples().get(j).time());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void TestGeneratedIds() throws JSONException {
+        KState<MockElem, StateTransition, Sample> state = new KState<>();
+        Set<String> ids = new HashSet<>();
+        MockElem previous = null;
+
+        for (int i = 0; i < 100; ++i) {
+            Set<MockElem> vector = new HashSet<>();
+            for (int j = 0; j < 10; ++j) {
+                MockElem candidate = new MockElem(j == 0 ? 0.5 : 0.05, previous);
+                assertTrue(ids.add(candidate.id()));
+                vector.add(candidate);
+            }
+            state.update(vector, new Sample(i));
+            previous = state.estimate();
+        }
+
+        KState<MockElem, StateTransition, Sample> other =
+                new KState<>(new JSONObject(state.toJSON().toString()), new MockFactory());
+
+        assertEquals(state.size(), other.size());
+        for (int i = 0; i < state.sequence().size(); ++i) {
+            assertEquals(state.sequence().get(i).id(), other.sequence().get(i).id());
+        }
+    }
+
+    @Test
+    public void TestGeneratedIdsConcurrent() throws InterruptedException {
+        final Set<String> ids =
+                Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        final int count = 100000;
+        Thread[] threads = new Thread[4];
+
+        for (int i = 0; i < threads.length; ++i) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < count; ++j) {
+                        ids.add(new MockElem(0.5, null).id());
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(threads.length * count, ids.size());
+    }
 }
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2015, BMW Car IT GmbH
+ *
+ * Author: Sebastian Mattheis <sebastian.mattheis@bmw-carit.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.bmwcarit.barefoot.matcher;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.bmwcarit.barefoot.spatial.Geography;
+import com.bmwcarit.barefoot.spatial.SpatialOperator;
+import com.esri.core.geometry.Point;
+
+public class KinematicFilterTest {
+    private final SpatialOperator spatial = new Geography();
+
+    private static List<MatcherSample> trace(int size) {
+        // About 20 meters per second along latitude 48.
+        List<MatcherSample> samples = new ArrayList<>();
+        for (int i = 0; i < size; ++i) {
+            samples.add(new MatcherSample(i * 1000, new Point(11.0 + i * 0.00027, 48.0)));
+        }
+        return samples;
+    }
+
+    private static MatcherSample shift(MatcherSample sample, double lat) {
+        return new MatcherSample(sample.time(),
+                new Point(sample.point().getX(), sample.point().getY() + lat));
+    }
+
+    @Test
+    public void testSpeed() {
+        List<MatcherSample> samples = trace(10);
+        // Jump of about 300 meters.
+        samples.set(5, shift(samples.get(5), 0.0027));
+
+        KinematicFilter filter = new KinematicFilter(spatial, 70, 0);
+        List<MatcherSample> accepted = filter.filter(samples);
+
+        assertEquals(9, accepted.size());
+        assertFalse(accepted.contains(samples.get(5)));
+        assertEquals(1, filter.rejected());
+        assertEquals(9, filter.accepted());
+    }
+
+    @Test
+    public void testAcceleration() {
+        List<MatcherSample> samples = trace(4);
+        // Sample implies a speed of about 60 meters per second after about 20 meters per second.
+        samples.add(new MatcherSample(4000, new Point(11.0 + 3 * 0.00027 + 0.0008, 48.0)));
+
+        {
+            KinematicFilter filter = new KinematicFilter(spatial, 70, 0);
+            filter.setTolerance(0);
+            assertEquals(5, filter.filter(samples).size());
+        }
+        {
+            KinematicFilter filter = new KinematicFilter(spatial, 0, 10);
+            filter.setTolerance(0);
+            assertEquals(4, filter.filter(samples).size());
+            assertEquals(1, filter.rejected());
+        }
+        {
+            // Tolerance of position errors covers the change of speed.
+            KinematicFilter filter = new KinematicFilter(spatial, 0, 10);
+            filter.setTolerance(30);
+            assertEquals(5, filter.filter(samples).size());
+        }
+    }
+
+    @Test
+    public void testRestart() {
+        List<MatcherSample> samples = trace(10);
+        // Object is relocated by about 300 meters, e.g. after a gap in the data.
+        for (int i = 5; i < 10; ++i) {
+            samples.set(i, shift(samples.get(i), 0.0027));
+        }
+
+        KinematicFilter filter = new KinematicFilter(spatial, 70, 10);
+        for (int i = 0; i < 5; ++i) {
+            assertTrue(filter.accept(samples.get(i)));
+        }
+        for (int i = 5; i < 5 + filter.getMaxRejections(); ++i) {
+            assertFalse(filter.accept(samples.get(i)));
+        }
+        for (int i = 5 + filter.getMaxRejections(); i < 10; ++i) {
+            assertTrue(filter.accept(samples.get(i)));
+        }
+        assertEquals(filter.getMaxRejections(), filter.rejected());
+    }
+
+    @Test
+    public void testSeed() {
+        List<MatcherSample> samples = trace(10);
+        // First sample of a continued matching jumps about 300 meters.
+        samples.set(5, shift(samples.get(5), 0.0027));
+
+        {
+            // Without history, the outlier is accepted and subsequent samples are rejected.
+            KinematicFilter filter = new KinematicFilter(spatial, 70, 0);
+            assertTrue(filter.filter(samples.subList(5, 10)).contains(samples.get(5)));
+            assertEquals(filter.getMaxRejections(), filter.rejected());
+        }
+        {
+            KinematicFilter filter = new KinematicFilter(spatial, 70, 0);
+            filter.seed(samples.subList(0, 5));
+            List<MatcherSample> accepted = filter.filter(samples.subList(5, 10));
+
+            assertEquals(4, accepted.size());
+            assertFalse(accepted.contains(samples.get(5)));
+            assertEquals(1, filter.rejected());
+            assertEquals(4, filter.accepted());
+        }
+    }
+}
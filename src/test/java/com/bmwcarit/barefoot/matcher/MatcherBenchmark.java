@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2015, BMW Car IT GmbH
+ *
+ * Author: Sebastian Mattheis <sebastian.mattheis@bmw-carit.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.bmwcarit.barefoot.matcher;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.bmwcarit.barefoot.roadmap.Road;
+import com.bmwcarit.barefoot.roadmap.RoadMap;
+import com.bmwcarit.barefoot.roadmap.RoadPoint;
+import com.bmwcarit.barefoot.roadmap.Testmap;
+import com.bmwcarit.barefoot.roadmap.TimePriority;
+import com.bmwcarit.barefoot.scheduler.StaticScheduler;
+import com.bmwcarit.barefoot.spatial.Geography;
+import com.bmwcarit.barefoot.topology.Dijkstra;
+import com.bmwcarit.barefoot.util.Stopwatch;
+import com.bmwcarit.barefoot.util.Triple;
+
+public class MatcherBenchmark {
+    private static Logger logger = LoggerFactory.getLogger(MatcherBenchmark.class);
+    private final RoadMap map;
+
+    public MatcherBenchmark() throws IOException, JSONException {
+        this.map = Testmap.instance();
+    }
+
+    private static List<MatcherSample> readSamples(String name) throws IOException, JSONException {
+        String json = new String(
+                Files.readAllBytes(Paths.get(ServerTest.class.getResource(name).getPath())),
+                Charset.defaultCharset());
+        JSONArray jsonsamples = new JSONArray(json);
+        List<MatcherSample> samples = new LinkedList<>();
+        for (int i = 0; i < jsonsamples.length(); ++i) {
+            samples.add(new MatcherSample(jsonsamples.getJSONObject(i)));
+        }
+        return samples;
+    }
+
+    private Matcher matcher() {
+        return new Matcher(map, new Dijkstra<Road, RoadPoint>(), new TimePriority(),
+                new Geography());
+    }
+
+    @Test
+    public void testBeamPruning() throws IOException, JSONException {
+        String[] traces = new String[] {"x0001-001.json", "x0001-015.json"};
+        int[] widths = new int[] {1, 2, 4, 8, 16};
+        double[] thresholds = new double[] {0, 1E-3, 1E-2};
+
+        for (String trace : traces) {
+            List<MatcherSample> samples = readSamples(trace);
+
+            Stopwatch sw = new Stopwatch();
+            sw.start();
+            MatcherKState reference = matcher().mmatch(samples, 0, 0);
+            sw.stop();
+
+            List<Triple<Long, Long, Double>> left =
+                    Benchmark.candidatesToSequence(reference.sequence());
+            logger.info("{} unpruned {} ms", trace, sw.ms());
+
+            for (int width : widths) {
+                for (double threshold : thresholds) {
+                    Matcher matcher = matcher();
+                    matcher.setBeamWidth(width);
+                    matcher.setBeamThreshold(threshold);
+
+                    sw.start();
+                    MatcherKState state = matcher.mmatch(samples, 0, 0);
+                    sw.stop();
+
+                    List<Triple<Long, Long, Double>> right =
+                            Benchmark.candidatesToSequence(state.sequence());
+                    double error = Benchmark.error(left, right, Benchmark.align(left, right));
+                    logger.info("{} beam width {} threshold {} {} ms error {}", trace, width,
+                            threshold, sw.ms(), error);
+
+                    // Moderate beams must keep the matching close to the unpruned matching,
+                    // where error is relative to the length of the unpruned matching.
+                    if (width >= 8 && threshold <= 1E-3) {
+                        assertTrue(error <= 0.05);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testScheduler() throws IOException, JSONException {
+        String[] traces = new String[] {"x0001-001.json", "x0001-015.json"};
+        int threads = Runtime.getRuntime().availableProcessors();
+        int repetitions = 5;
+
+        try {
+            for (String trace : traces) {
+                List<MatcherSample> samples = readSamples(trace);
+                List<Triple<Long, Long, Double>> reference = null;
+
+                for (boolean forkjoin : new boolean[] {false, true}) {
+                    if (forkjoin) {
+                        StaticScheduler.reset(new ForkJoinPool(threads));
+                    } else {
+                        StaticScheduler.reset(threads, (long) 1E4);
+                    }
+
+                    Matcher matcher = matcher();
+                    matcher.mmatch(samples, 0, 0);
+
+                    Stopwatch sw = new Stopwatch();
+                    sw.start();
+                    MatcherKState state = null;
+                    for (int i = 0; i < repetitions; ++i) {
+                        state = matcher.mmatch(samples, 0, 0);
+                    }
+                    sw.stop();
+
+                    List<Triple<Long, Long, Double>> sequence =
+                            Benchmark.candidatesToSequence(state.sequence());
+                    if (reference == null) {
+                        reference = sequence;
+                    }
+                    logger.info("{} scheduler {} {} ms", trace, forkjoin ? "forkjoin" : "worker",
+                            sw.ms() / repetitions);
+
+                    assertEquals(reference.size(), sequence.size());
+                }
+            }
+        } finally {
+            StaticScheduler.reset(threads);
+        }
+    }
+}
@@ -14,12 +14,20 @@ package com.bmwcarit.barefoot.matcher;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
+import java.util.zip.DeflaterOutputStream;
 
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -30,12 +38,14 @@ import com.bmwcarit.barefoot.road.RoadReader;
 import com.bmwcarit.barefoot.roadmap.Road;
 import com.bmwcarit.barefoot.roadmap.RoadMap;
 import com.bmwcarit.barefoot.roadmap.RoadPoint;
+import com.bmwcarit.barefoot.roadmap.Route;
 import com.bmwcarit.barefoot.roadmap.Time;
 import com.bmwcarit.barefoot.spatial.Geography;
 import com.bmwcarit.barefoot.spatial.SpatialOperator;
 import com.bmwcarit.barefoot.topology.Cost;
 import com.bmwcarit.barefoot.topology.Dijkstra;
 import com.bmwcarit.barefoot.topology.Router;
+import com.bmwcarit.barefoot.util.Base64;
 import com.bmwcarit.barefoot.util.Quintuple;
 import com.bmwcarit.barefoot.util.SourceException;
 import com.esri.core.geometry.Geometry.Type;
@@ -161,4 +171,266 @@ public class MatcherKStateTest {
                     1E-10);
         }
     }
+
+    @Test
+    public void testBinary() throws JSONException, IOException {
+        Matcher filter = new Matcher(map, router, cost, spatial);
+        filter.setMaxRadius(200);
+        MatcherKState state = new MatcherKState();
+        MatcherCodec codec = new MatcherCodec(map);
+
+        MatcherSample sample1 = new MatcherSample(0, new Point(11.001, 48.001));
+        state.update(filter.execute(state.vector(), null, sample1), sample1);
+        MatcherSample sample2 = new MatcherSample(42000, new Point(11.010, 48.000));
+        state.update(filter.execute(state.vector(), sample1, sample2), sample2);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        state.write(new DataOutputStream(bytes), codec);
+        MatcherKState other = new MatcherKState(
+                new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())), codec);
+
+        assertTrue(bytes.size() < state.toJSON().toString().length() / 2);
+
+        assertEquals(state.sample().id(), other.sample().id());
+        assertEquals(state.sample().time(), other.sample().time());
+        assertEquals(state.sample().point(), other.sample().point());
+        assertEquals(state.size(), other.size());
+        assertEquals(state.vector().size(), other.vector().size());
+        assertEquals(state.sequence().size(), other.sequence().size());
+        assertEquals(state.samples().size(), other.samples().size());
+
+        for (int i = 0; i < state.sequence().size(); ++i) {
+            MatcherCandidate left = state.sequence().get(i), right = other.sequence().get(i);
+            assertEquals(left.id(), right.id());
+            assertEquals(left.filtprob(), right.filtprob(), 1E-10);
+            assertEquals(left.seqprob(), right.seqprob(), 1E-10);
+            assertEquals(left.point().edge().id(), right.point().edge().id());
+            assertEquals(left.point().fraction(), right.point().fraction(), 1E-10);
+            if (left.transition() == null) {
+                assertEquals(null, right.transition());
+            } else {
+                Route expected = left.transition().route(), route = right.transition().route();
+                assertEquals(expected.size(), route.size());
+                assertEquals(expected.length(), route.length(), 1E-6);
+                for (int j = 0; j < route.size(); ++j) {
+                    assertEquals(expected.get(j).id(), route.get(j).id());
+                }
+            }
+        }
+
+        MatcherSample sample3 = new MatcherSample(84000, new Point(11.015, 48.000));
+        other.update(filter.execute(other.vector(), other.sample(), sample3), sample3);
+        assertEquals(3, other.sequence().size());
+    }
+
+    @Test
+    public void testBinaryEfficiency() throws JSONException, IOException {
+        Matcher filter = new Matcher(map, router, cost, spatial);
+        filter.setMaxRadius(200);
+        MatcherKState state = new MatcherKState();
+        MatcherCodec codec = new MatcherCodec(map);
+        MatcherFactory factory = new MatcherFactory(map);
+
+        MatcherSample previous = null;
+        for (int i = 0; i < 10; ++i) {
+            MatcherSample sample =
+                    new MatcherSample(i * 10000, new Point(11.001 + i * 0.003, 48.0001));
+            state.update(filter.execute(state.vector(), previous, sample), sample);
+            previous = sample;
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        state.write(new DataOutputStream(bytes), codec);
+        int json = state.toJSON().toString().length();
+        assertTrue(bytes.size() * 3 < json);
+
+        int iterations = 2000;
+        long binary = 0, text = 0;
+        for (int round = 0; round < 2; ++round) {
+            // First round warms up, second round is measured.
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; ++i) {
+                ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+                state.write(new DataOutputStream(buffer), codec);
+                new MatcherKState(
+                        new DataInputStream(new ByteArrayInputStream(buffer.toByteArray())),
+                        codec);
+            }
+            binary = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; ++i) {
+                new MatcherKState(new JSONObject(state.toJSON().toString()), factory);
+            }
+            text = System.nanoTime() - start;
+        }
+
+        assertTrue(binary * 3 < text);
+    }
+
+    @Test
+    public void testToken() throws IOException {
+        Matcher matcher = new Matcher(map, router, cost, spatial);
+        MatcherCodec codec = new MatcherCodec(map);
+
+        List<MatcherSample> samples = new ArrayList<>(Arrays.asList(
+                new MatcherSample(0, new Point(11.001, 48.001)),
+                new MatcherSample(42000, new Point(11.010, 48.000)),
+                new MatcherSample(84000, new Point(11.015, 48.000)),
+                new MatcherSample(126000, new Point(11.019, 48.000))));
+
+        MatcherKState expected = matcher.mmatch(new ArrayList<>(samples), 0, 0);
+
+        MatcherKState state = new MatcherKState(1, -1);
+        matcher.mmatch(state, samples.subList(0, 2), 0, 0);
+        String token = state.toToken(codec);
+
+        // Resubmission of the full trace continues with new samples only.
+        MatcherKState other = new MatcherKState(token, codec);
+        assertEquals(state.sample().time(), other.sample().time());
+        assertEquals(state.sequence().size(), other.sequence().size());
+        matcher.mmatch(other, samples, 0, 0);
+
+        assertEquals(2, other.samples().size());
+        assertEquals(samples.subList(2, 4), other.samples());
+
+        List<MatcherCandidate> left = expected.sequence(), right = other.sequence();
+        for (int i = 0; i < right.size(); ++i) {
+            assertEquals(left.get(i + 2).point().edge().id(), right.get(i).point().edge().id());
+            assertEquals(left.get(i + 2).point().fraction(), right.get(i).point().fraction(),
+                    1E-10);
+        }
+
+        try {
+            new MatcherKState(token.substring(0, token.length() - 8), codec);
+            fail();
+        } catch (IOException e) {
+        }
+    }
+
+    private static String token(int k, int size, int zeros) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes))) {
+            out.writeByte(1);
+            out.writeInt(k);
+            out.writeLong(-1);
+            out.writeInt(size);
+            out.write(new byte[zeros]);
+        }
+        return Base64.encode(bytes.toByteArray());
+    }
+
+    @Test
+    public void testTokenLimits() throws IOException {
+        Matcher matcher = new Matcher(map, router, cost, spatial);
+        MatcherCodec codec = new MatcherCodec(map);
+
+        List<MatcherSample> samples = new ArrayList<>(Arrays.asList(
+                new MatcherSample(0, new Point(11.001, 48.001)),
+                new MatcherSample(42000, new Point(11.010, 48.000)),
+                new MatcherSample(84000, new Point(11.015, 48.000)),
+                new MatcherSample(126000, new Point(11.019, 48.000))));
+
+        // Window of the token is replaced, which trims the state sequence.
+        MatcherKState state = matcher.mmatch(new ArrayList<>(samples), 0, 0);
+        MatcherKState other = new MatcherKState(state.toToken(codec), codec, 1, -1);
+        assertEquals(2, other.samples().size());
+        assertEquals(84000, other.samples().get(0).time());
+        assertEquals(126000, other.samples().get(1).time());
+        assertEquals(state.estimate().point().edge().id(), other.estimate().point().edge().id());
+
+        MatcherSample sample = new MatcherSample(168000, new Point(11.022, 48.000));
+        matcher.mmatch(other, Arrays.asList(sample), 0, 0);
+        assertEquals(2, other.samples().size());
+        assertEquals(sample, other.sample());
+
+        // Window of the token is not allocated in advance.
+        assertTrue(new MatcherKState(token(Integer.MAX_VALUE - 1, 0, 4), codec).isEmpty());
+
+        // Counts of the token are validated or exceed the token.
+        for (int size : new int[] {-2, Integer.MAX_VALUE}) {
+            try {
+                new MatcherKState(token(-1, size, 0), codec);
+                fail();
+            } catch (IOException e) {
+            }
+        }
+
+        // Tokens that inflate excessively are rejected.
+        try {
+            new MatcherKState(token(-1, 0, 1 << 25), codec);
+            fail();
+        } catch (IOException e) {
+        }
+    }
+
+    private static DataInputStream binary(MatcherCodec codec, List<MatcherCandidate> candidates,
+            List<MatcherSample> samples, int[][][] vectors) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(1);
+        out.writeInt(-1);
+        out.writeLong(-1);
+        out.writeInt(candidates.size());
+        for (MatcherCandidate candidate : candidates) {
+            codec.writeCandidate(out, candidate);
+            out.writeInt(99);
+        }
+        out.writeInt(vectors.length);
+        for (int i = 0; i < vectors.length; ++i) {
+            codec.writeSample(out, samples.get(i));
+            out.writeInt(vectors[i].length);
+            for (int[] element : vectors[i]) {
+                out.writeInt(element[0]);
+                out.writeInt(element[1]);
+            }
+        }
+        out.close();
+        return new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+    }
+
+    @Test
+    public void testBinaryConsistency() throws IOException {
+        Matcher matcher = new Matcher(map, router, cost, spatial);
+        MatcherCodec codec = new MatcherCodec(map);
+
+        List<MatcherSample> samples = new ArrayList<>(Arrays.asList(
+                new MatcherSample(0, new Point(11.001, 48.001)),
+                new MatcherSample(42000, new Point(11.010, 48.000)),
+                new MatcherSample(84000, new Point(11.015, 48.000))));
+
+        MatcherKState state = matcher.mmatch(new ArrayList<>(samples.subList(0, 2)), 0, 0);
+        List<MatcherCandidate> candidates = new ArrayList<>(state.sequence());
+        candidates.add(candidates.get(1));
+
+        // Reference counters of the binary representation are recomputed.
+        MatcherKState other = new MatcherKState(binary(codec, candidates.subList(0, 2), samples,
+                new int[][][] {{{0, -1}}, {{1, 0}}}), codec);
+        assertEquals(2, other.size());
+        matcher.mmatch(other, samples, 0, 0);
+        assertEquals(3, other.sequence().size());
+        int size = 0;
+        for (Set<MatcherCandidate> vector : other.vectors()) {
+            size += vector.size();
+        }
+        assertEquals(size, other.size());
+
+        int[][][][] inconsistencies = new int[][][][] {
+                {{{0, -1}}, {{0, 0}}}, // candidate in multiple vectors
+                {{{0, -1}}, {{1, 1}}}, // predecessor in same vector
+                {{{0, 1}}, {{1, -1}}}, // predecessor in later vector
+                {{{0, -1}}, {{1, -1}}}, // missing predecessor
+                {{{0, -1}}, {}}, // empty vector
+                {{{0, -1}}, {{1, 0}}}}; // candidate in no vector
+
+        for (int i = 0; i < inconsistencies.length; ++i) {
+            try {
+                new MatcherKState(binary(codec,
+                        i < inconsistencies.length - 1 ? candidates.subList(0, 2) : candidates,
+                        samples, inconsistencies[i]), codec);
+                fail();
+            } catch (IOException e) {
+            }
+        }
+    }
 }
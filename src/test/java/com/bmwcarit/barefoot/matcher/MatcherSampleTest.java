@@ -13,7 +13,9 @@
 package com.bmwcarit.barefoot.matcher;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
+import org.json.JSONException;
 import org.junit.Test;
 
 import com.esri.core.geometry.Point;
@@ -55,4 +57,18 @@ public class MatcherSampleTest {
             assertEquals(sample.azimuth(), 359.9, 1E-10);
         }
     }
+
+    @Test
+    public void testAccuracy() throws JSONException {
+        {
+            MatcherSample sample = new MatcherSample(0L, new Point(1, 1));
+            assertTrue(Double.isNaN(sample.accuracy()));
+            assertTrue(Double.isNaN(new MatcherSample(sample.toJSON()).accuracy()));
+        }
+        {
+            MatcherSample sample = new MatcherSample("x", 0L, new Point(1, 1), Double.NaN, 12.5);
+            assertEquals(12.5, sample.accuracy(), 1E-10);
+            assertEquals(12.5, new MatcherSample(sample.toJSON()).accuracy(), 1E-10);
+        }
+    }
 }
@@ -14,10 +14,15 @@
 package com.bmwcarit.barefoot.matcher;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Field;
+import java.lang.management.ThreadMXBean;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
@@ -25,12 +30,19 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.json.JSONException;
+import org.junit.Assume;
 import org.junit.Test;
 
 import com.bmwcarit.barefoot.road.BaseRoad;
+import com.bmwcarit.barefoot.road.Heading;
 import com.bmwcarit.barefoot.road.RoadReader;
+import com.bmwcarit.barefoot.roadmap.Contraction;
+import com.bmwcarit.barefoot.roadmap.Corridor;
+import com.bmwcarit.barefoot.roadmap.Distance;
+import com.bmwcarit.barefoot.roadmap.Ellipse;
 import com.bmwcarit.barefoot.roadmap.Road;
 import com.bmwcarit.barefoot.roadmap.RoadMap;
 import com.bmwcarit.barefoot.roadmap.RoadPoint;
@@ -39,6 +51,7 @@ import com.bmwcarit.barefoot.roadmap.Time;
 import com.bmwcarit.barefoot.roadmap.TimePriority;
 import com.bmwcarit.barefoot.spatial.Geography;
 import com.bmwcarit.barefoot.spatial.SpatialOperator;
+import com.bmwcarit.barefoot.topology.CachingDijkstra;
 import com.bmwcarit.barefoot.topology.Cost;
 import com.bmwcarit.barefoot.topology.Dijkstra;
 import com.bmwcarit.barefoot.topology.Router;
@@ -368,6 +381,190 @@ public class MatcherTest {
         }
     }
 
+    @Test
+    public void testTrivialTransitions() {
+        Matcher filter = new Matcher(map, router, cost, spatial);
+        filter.shortenTurns(false);
+
+        double[][] pairs = new double[][] {{11.002, 11.004}, {11.008, 11.012}, {11.004, 11.002},
+                {11.019, 11.021}, {11.009, 11.009}};
+
+        for (double[] pair : pairs) {
+            MatcherSample sample1 = new MatcherSample(0, new Point(pair[0], 48.0001));
+            MatcherSample sample2 = new MatcherSample(1000, new Point(pair[1], 48.0001));
+
+            Set<MatcherCandidate> predecessors = new HashSet<>();
+            Set<MatcherCandidate> candidates = new HashSet<>();
+
+            for (Tuple<MatcherCandidate, Double> candidate : filter
+                    .candidates(new HashSet<MatcherCandidate>(), sample1)) {
+                predecessors.add(candidate.one());
+            }
+
+            for (Tuple<MatcherCandidate, Double> candidate : filter
+                    .candidates(new HashSet<MatcherCandidate>(), sample2)) {
+                candidates.add(candidate.one());
+            }
+
+            Map<MatcherCandidate, Map<MatcherCandidate, Tuple<MatcherTransition, Double>>> transitions =
+                    filter.transitions(new Tuple<>(sample1, predecessors),
+                            new Tuple<>(sample2, candidates));
+
+            for (MatcherCandidate predecessor : predecessors) {
+                Set<RoadPoint> targets = new HashSet<>();
+                for (MatcherCandidate candidate : candidates) {
+                    targets.add(candidate.point());
+                }
+                Map<RoadPoint, List<Road>> routes = router.route(predecessor.point(), targets,
+                        cost, new Distance(), 1000d);
+
+                for (MatcherCandidate candidate : candidates) {
+                    Tuple<MatcherTransition, Double> transition =
+                            transitions.get(predecessor).get(candidate);
+                    List<Road> edges = routes.get(candidate.point());
+
+                    assertEquals(edges == null, transition == null);
+                    if (transition == null) {
+                        continue;
+                    }
+
+                    assertEquals(edges.size(), transition.one().route().size());
+                    for (int i = 0; i < edges.size(); ++i) {
+                        assertEquals(edges.get(i).id(), transition.one().route().get(i).id());
+                    }
+                    assertTransition(transition, new Tuple<>(predecessor, sample1),
+                            new Tuple<>(candidate, sample2), filter.getLambda());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testLocalCandidates() {
+        Matcher filter = new Matcher(map, router, cost, spatial);
+        Matcher local = new Matcher(map, router, cost, spatial);
+        local.setLocalDistance(500);
+
+        Point[][] pairs = new Point[][] {{new Point(11.008, 48.00002), new Point(11.0105, 48.00002)},
+                {new Point(11.021, 48.015), new Point(11.005, 48.0001)}};
+
+        for (Point[] pair : pairs) {
+            Set<MatcherCandidate> predecessors = new HashSet<>();
+            for (Tuple<MatcherCandidate, Double> candidate : filter
+                    .candidates(new HashSet<MatcherCandidate>(), new MatcherSample(0, pair[0]))) {
+                predecessors.add(candidate.one());
+            }
+            assertTrue(!predecessors.isEmpty());
+
+            MatcherSample sample = new MatcherSample(1000, pair[1]);
+            Map<Long, Tuple<Double, Double>> expected = new HashMap<>();
+            for (Tuple<MatcherCandidate, Double> candidate : filter.candidates(predecessors,
+                    sample)) {
+                expected.put(candidate.one().point().edge().id(),
+                        new Tuple<>(candidate.one().point().fraction(), candidate.two()));
+            }
+
+            Set<Tuple<MatcherCandidate, Double>> candidates =
+                    local.candidates(predecessors, sample);
+            assertEquals(expected.size(), candidates.size());
+            for (Tuple<MatcherCandidate, Double> candidate : candidates) {
+                Tuple<Double, Double> other = expected.get(candidate.one().point().edge().id());
+                assertEquals(other.one(), candidate.one().point().fraction(), 1E-6);
+                assertEquals(other.two(), candidate.two(), 1E-10);
+            }
+        }
+    }
+
+    @Test
+    public void testMaxAzimuth() {
+        Matcher filter = new Matcher(map, router, cost, spatial);
+        Matcher pruned = new Matcher(map, router, cost, spatial);
+        pruned.setMaxAzimuth(45);
+
+        // Sample heading east on two-way road 1, i.e. edges 2 (eastwards) and 3 (westwards).
+        MatcherSample sample = new MatcherSample(0, new Point(11.015, 48.0001), 90);
+
+        Set<Long> all = new HashSet<>(), edges = new HashSet<>();
+        for (Tuple<MatcherCandidate, Double> candidate : filter
+                .candidates(new HashSet<MatcherCandidate>(), sample)) {
+            all.add(candidate.one().point().edge().id());
+        }
+        for (Tuple<MatcherCandidate, Double> candidate : pruned
+                .candidates(new HashSet<MatcherCandidate>(), sample)) {
+            edges.add(candidate.one().point().edge().id());
+            assertTrue(Math.abs(candidate.one().point().azimuth() - 90) <= 45);
+        }
+
+        assertTrue(all.contains(2L) && all.contains(3L));
+        assertTrue(edges.contains(2L));
+        assertTrue(!edges.contains(3L));
+        assertTrue(all.containsAll(edges));
+
+        // Sample heading north, which does not match any road, keeps all candidates.
+        MatcherSample north = new MatcherSample(0, new Point(11.015, 48.0001), 0);
+        assertEquals(filter.candidates(new HashSet<MatcherCandidate>(), north).size(),
+                pruned.candidates(new HashSet<MatcherCandidate>(), north).size());
+    }
+
+    @Test
+    public void testAdaptiveRadius() {
+        Matcher filter = new Matcher(map, router, cost, spatial);
+        Matcher adaptive = new Matcher(map, router, cost, spatial);
+        adaptive.setMinCandidates(1);
+
+        // Sample about 11 meters from junction of roads 0, 1 and 3, and 110 meters from road 4.
+        MatcherSample sample = new MatcherSample("", 0, new Point(11.0105, 48.0001), Double.NaN, 5);
+
+        Set<Tuple<MatcherCandidate, Double>> all =
+                filter.candidates(new HashSet<MatcherCandidate>(), sample);
+        Set<Tuple<MatcherCandidate, Double>> candidates =
+                adaptive.candidates(new HashSet<MatcherCandidate>(), sample);
+
+        assertTrue(candidates.size() >= 1);
+        assertTrue(candidates.size() < all.size());
+
+        for (Tuple<MatcherCandidate, Double> candidate : candidates) {
+            assertTrue(spatial.distance(sample.point(),
+                    candidate.one().point().geometry()) < 3 * adaptive.getSigma());
+        }
+
+        // Sample far from any road, which requires growing of the radius up to the maximum.
+        MatcherSample far = new MatcherSample("", 0, new Point(11.005, 48.0012), Double.NaN, 5);
+        assertEquals(filter.candidates(new HashSet<MatcherCandidate>(), far).size(),
+                adaptive.candidates(new HashSet<MatcherCandidate>(), far).size());
+    }
+
+    @Test
+    public void testStatistics() {
+        Matcher matcher = new Matcher(map, router, cost, spatial);
+        matcher.setMinCandidates(1);
+        Matcher derived = matcher.derive(new Dijkstra<Road, RoadPoint>());
+        assertTrue(matcher.getStatistics() == derived.getStatistics());
+
+        MatcherSample near = new MatcherSample("", 0, new Point(11.0105, 48.0001), Double.NaN, 5);
+        int candidates = matcher.candidates(new HashSet<MatcherCandidate>(), near).size();
+
+        Matcher.Statistics statistics = matcher.getStatistics();
+        assertEquals(1, statistics.samples());
+        assertEquals(candidates, statistics.candidates());
+        assertTrue(statistics.found() >= candidates);
+        assertEquals(0, statistics.expansions());
+        assertEquals(0, statistics.exhausted());
+
+        // Sample far from any road, which requires growing of the radius up to the maximum.
+        MatcherSample far = new MatcherSample("", 0, new Point(11.005, 48.0012), Double.NaN, 5);
+        candidates += derived.candidates(new HashSet<MatcherCandidate>(), far).size();
+
+        assertEquals(2, statistics.samples());
+        assertEquals(candidates, statistics.candidates());
+        assertTrue(statistics.expansions() > 0);
+        assertEquals(0, statistics.empty());
+
+        statistics.reset();
+        assertEquals(0, statistics.samples());
+        assertEquals(0, statistics.candidates());
+    }
+
     @Test
     public void testShortenTurns() throws JSONException {
         List<MatcherSample> samples =
@@ -421,4 +618,502 @@ public class MatcherTest {
             assertEquals(shorten, length, 1E-10);
         }
     }
+
+    @Test
+    public void testContraction() {
+        List<MatcherSample> samples =
+                new LinkedList<>(Arrays.asList(new MatcherSample(0, new Point(11.001, 48.0001)),
+                        new MatcherSample(60000, new Point(11.015, 48.0001)),
+                        new MatcherSample(120000, new Point(11.025, 48.0001)),
+                        new MatcherSample(180000, new Point(11.029, 48.0001))));
+        Contraction contraction = Contraction.Contract(map);
+
+        assertEquals(4, contraction.contracted().size() / 2 + 1);
+
+        MatcherKState expected = new Matcher(map, router, cost, spatial).mmatch(samples, 0, 0);
+        MatcherKState state = new Matcher(contraction.contracted(), router, cost, spatial)
+                .mmatch(samples, 0, 0).expand(contraction);
+
+        assertEquals(expected.sequence().size(), state.sequence().size());
+        assertEquals(expected.samples(), state.samples());
+
+        // First candidate is ambiguous, i.e. both directions of the road have equal probability.
+        assertEquals(0, spatial.distance(expected.sequence().get(0).point().geometry(),
+                state.sequence().get(0).point().geometry()), 1E-1);
+
+        for (int i = 1; i < expected.sequence().size(); ++i) {
+            MatcherCandidate left = expected.sequence().get(i), right = state.sequence().get(i);
+
+            assertEquals(left.point().edge().id(), right.point().edge().id());
+            assertEquals(left.point().fraction(), right.point().fraction(), 1E-3);
+
+            Route expectedRoute = left.transition().route(), route = right.transition().route();
+            assertEquals(expectedRoute.target().edge().id(), route.target().edge().id());
+            assertEquals(expectedRoute.length(), route.length(), 1E-1);
+
+            if (i > 1) {
+                assertEquals(expectedRoute.size(), route.size());
+                for (int j = 0; j < route.size(); ++j) {
+                    assertEquals(expectedRoute.get(j).id(), route.get(j).id());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testParallelOrder() {
+        // Time difference of samples exceeds integer range.
+        List<MatcherSample> samples = new ArrayList<>(Arrays.asList(
+                new MatcherSample(3000000000L, new Point(11.003, 48.0001)),
+                new MatcherSample(0, new Point(11.001, 48.0001))));
+
+        Matcher matcher = new Matcher(map, router, cost, spatial);
+        MatcherKState state = matcher.mmatch(samples, 0, 0, true);
+
+        assertEquals(0, samples.get(0).time());
+        assertEquals(3000000000L, samples.get(1).time());
+        assertEquals(2, state.samples().size());
+        assertEquals(0, state.samples().get(0).time());
+    }
+
+    @Test
+    public void testParallel() {
+        List<MatcherSample> samples = new LinkedList<>(Arrays.asList(
+                new MatcherSample(0, new Point(11.001, 48.0001)),
+                new MatcherSample(5000, new Point(11.003, 48.0001)),
+                new MatcherSample(10000, new Point(11.029, 48.0001)),
+                new MatcherSample(15000, new Point(11.028, 48.0001)),
+                new MatcherSample(20000, new Point(11.002, 48.0001)),
+                new MatcherSample(25000, new Point(11.0015, 48.0001))));
+
+        Matcher matcher = new Matcher(map, router, cost, spatial);
+        MatcherKState expected = matcher.mmatch(new ArrayList<>(samples), 0, 0);
+        MatcherKState state = matcher.mmatch(new ArrayList<>(samples), 0, 0, true);
+
+        assertEquals(expected.samples(), state.samples());
+        assertEquals(expected.size(), state.size());
+        assertEquals(expected.sequence().size(), state.sequence().size());
+
+        for (int i = 0; i < expected.sequence().size(); ++i) {
+            MatcherCandidate left = expected.sequence().get(i), right = state.sequence().get(i);
+
+            assertEquals(0, spatial.distance(left.point().geometry(), right.point().geometry()),
+                    1E-1);
+            assertEquals(left.filtprob(), right.filtprob(), 1E-6);
+            assertEquals(left.seqprob(), right.seqprob(), 1E-6);
+            assertEquals(left.transition() == null, right.transition() == null);
+            if (left.transition() != null) {
+                assertEquals(left.transition().route().length(),
+                        right.transition().route().length(), 1E-1);
+            }
+        }
+
+        assertEquals(null, state.sequence().get(0).predecessor());
+        for (int i = 1; i < state.sequence().size(); ++i) {
+            assertTrue(state.sequence().get(i).predecessor() == state.sequence().get(i - 1));
+        }
+    }
+
+    @Test
+    public void testDecimation() {
+        List<MatcherSample> samples = new ArrayList<>();
+        for (int i = 1; i < 30; ++i) {
+            samples.add(new MatcherSample(i * 5000, new Point(11.000 + i * 0.001, 48.0001)));
+        }
+
+        Decimator decimator = new Decimator(map, spatial);
+        List<MatcherSample> decimated = decimator.decimate(samples);
+
+        assertTrue(decimated.size() < samples.size() / 2);
+        assertEquals(samples.get(0), decimated.get(0));
+        assertEquals(samples.get(samples.size() - 1), decimated.get(decimated.size() - 1));
+        // Sample at junction of roads 0, 1, and 3 is kept.
+        assertTrue(decimated.contains(samples.get(9)));
+        for (int i = 1; i < decimated.size(); ++i) {
+            assertTrue(spatial.distance(decimated.get(i - 1).point(),
+                    decimated.get(i).point()) <= decimator.getMaxSpan());
+        }
+
+        Matcher matcher = new Matcher(map, router, cost, spatial);
+        MatcherKState expected = matcher.mmatch(new ArrayList<>(samples), 0, 0);
+        MatcherKState state =
+                decimator.reattach(matcher.mmatch(decimated, 0, 0), new ArrayList<>(samples));
+
+        assertEquals(expected.samples(), state.samples());
+        assertEquals(expected.sequence().size(), state.sequence().size());
+
+        for (int i = 0; i < state.sequence().size(); ++i) {
+            MatcherCandidate left = expected.sequence().get(i), right = state.sequence().get(i);
+
+            // Samples at vertices may be matched to either of the incident roads.
+            assertEquals(0, spatial.distance(left.point().geometry(), right.point().geometry()),
+                    1E-1);
+
+            if (i > 0) {
+                assertTrue(right.predecessor() == state.sequence().get(i - 1));
+                Route route = right.transition().route();
+                assertEquals(right.predecessor().point().edge().id(), route.source().edge().id());
+                assertEquals(right.predecessor().point().fraction(), route.source().fraction(),
+                        1E-10);
+                assertEquals(left.transition().route().length(), route.length(), 1E-1);
+            }
+        }
+    }
+
+    @Test
+    public void testDecimationTurn() {
+        List<MatcherSample> samples = new ArrayList<>();
+        for (int i = 0; i < 6; ++i) {
+            samples.add(new MatcherSample(i * 5000, new Point(11.016 + i * 0.001, 47.999)));
+        }
+        for (int i = 1; i < 6; ++i) {
+            samples.add(
+                    new MatcherSample((i + 5) * 5000, new Point(11.021, 47.999 + i * 0.0007)));
+        }
+
+        List<MatcherSample> decimated = new Decimator(map, spatial).decimate(samples);
+
+        // Sample at the turn from road 4 into road 5 is kept, all others are redundant.
+        assertEquals(3, decimated.size());
+        assertEquals(samples.get(5), decimated.get(1));
+    }
+
+    @Test
+    public void testEllipse() {
+        RoadPoint source = new RoadPoint(map.get(0), 0.1);
+        Set<RoadPoint> targets =
+                new HashSet<>(Arrays.asList(new RoadPoint(map.get(4), 0.5),
+                        new RoadPoint(map.get(4), 0.7)));
+        {
+            Ellipse ellipse = new Ellipse(source, targets, 2000, spatial);
+
+            assertTrue(ellipse.contains(map.get(2)));
+            assertTrue(ellipse.contains(map.get(6)));
+            assertTrue(ellipse.contains(map.get(8)));
+            assertTrue(ellipse.contains(map.get(10)));
+            assertTrue(!ellipse.contains(map.get(12)));
+            assertTrue(!ellipse.contains(map.get(13)));
+        }
+        {
+            Ellipse ellipse = new Ellipse(source, targets, 3200, spatial);
+
+            assertTrue(ellipse.contains(map.get(12)));
+            assertTrue(!ellipse.contains(map.get(13)));
+        }
+
+        List<MatcherSample> samples = new LinkedList<>(Arrays.asList(
+                new MatcherSample(0, new Point(11.001, 48.0001)),
+                new MatcherSample(60000, new Point(11.016, 47.9991)),
+                new MatcherSample(120000, new Point(11.0211, 48.005)),
+                new MatcherSample(180000, new Point(11.0211, 48.015)),
+                new MatcherSample(240000, new Point(11.029, 48.0001))));
+
+        Matcher matcher = new Matcher(map, router, cost, spatial);
+        MatcherKState expected = matcher.mmatch(new ArrayList<>(samples), 0, 0);
+        matcher.ellipse(true);
+        MatcherKState state = matcher.mmatch(new ArrayList<>(samples), 0, 0);
+
+        assertEquals(expected.sequence().size(), state.sequence().size());
+        for (int i = 0; i < expected.sequence().size(); ++i) {
+            MatcherCandidate left = expected.sequence().get(i), right = state.sequence().get(i);
+
+            assertEquals(0, spatial.distance(left.point().geometry(), right.point().geometry()),
+                    1E-1);
+            assertEquals(left.filtprob(), right.filtprob(), 1E-6);
+            assertEquals(left.transition() == null, right.transition() == null);
+            if (left.transition() != null) {
+                assertEquals(left.transition().route().length(),
+                        right.transition().route().length(), 1E-1);
+            }
+        }
+    }
+
+    @Test
+    public void testCaching() {
+        List<MatcherSample> samples = new LinkedList<>();
+        for (int i = 0; i < 20; ++i) {
+            samples.add(new MatcherSample(i * 5000, new Point(11.001 + i * 0.0005, 48.0001)));
+        }
+
+        Matcher matcher = new Matcher(map, router, cost, spatial);
+        CachingDijkstra<Road, RoadPoint> cache = new CachingDijkstra<>(4, 1000);
+        MatcherKState expected = matcher.mmatch(new ArrayList<>(samples), 0, 0);
+        MatcherKState state = matcher.derive(cache).mmatch(new ArrayList<>(samples), 0, 0);
+
+        assertTrue(cache.hits() > 0);
+        assertEquals(expected.sequence().size(), state.sequence().size());
+        for (int i = 0; i < expected.sequence().size(); ++i) {
+            MatcherCandidate left = expected.sequence().get(i), right = state.sequence().get(i);
+
+            assertEquals(0, spatial.distance(left.point().geometry(), right.point().geometry()),
+                    1E-1);
+            assertEquals(left.filtprob(), right.filtprob(), 1E-6);
+            assertEquals(left.transition() == null, right.transition() == null);
+            if (left.transition() != null) {
+                assertEquals(left.transition().route().length(),
+                        right.transition().route().length(), 1E-1);
+            }
+        }
+    }
+
+    @Test
+    public void testHierarchical() {
+        // Roads 0, 1, and 2 have high priority, all others low priority.
+        final RoadReader reader = map.reader();
+        RoadMap prioritized = RoadMap.Load(new RoadReader() {
+            @Override
+            public boolean isOpen() {
+                return reader.isOpen();
+            }
+
+            @Override
+            public void open() throws SourceException {
+                reader.open();
+            }
+
+            @Override
+            public void open(Polygon polygon, HashSet<Short> exclusions) throws SourceException {
+                reader.open(polygon, exclusions);
+            }
+
+            @Override
+            public void close() throws SourceException {
+                reader.close();
+            }
+
+            @Override
+            public BaseRoad next() throws SourceException {
+                BaseRoad road = reader.next();
+                return road == null ? null
+                        : new BaseRoad(road.id(), road.source(), road.target(), road.refid(),
+                                road.oneway(), road.type(), road.id() <= 2 ? 1.0f : 1.5f,
+                                road.maxspeed(Heading.forward), road.maxspeed(Heading.backward),
+                                road.length(), road.geometry());
+            }
+        }).construct();
+
+        List<MatcherSample> samples = new LinkedList<>(Arrays.asList(
+                new MatcherSample(0, new Point(11.001, 48.0001)),
+                new MatcherSample(60000, new Point(11.016, 47.9991)),
+                new MatcherSample(120000, new Point(11.0211, 48.005)),
+                new MatcherSample(180000, new Point(11.0211, 48.015)),
+                new MatcherSample(240000, new Point(11.029, 48.0001))));
+
+        Matcher matcher = new Matcher(prioritized, router, cost, spatial);
+        HierarchicalMatcher hierarchical =
+                new HierarchicalMatcher(matcher, prioritized, 1.0f, spatial);
+
+        assertEquals(6, hierarchical.coarse().size());
+        assertTrue(hierarchical.coarse().get(8) == null);
+
+        MatcherKState expected = matcher.mmatch(new ArrayList<>(samples), 0, 0);
+
+        // Refined matching within corridors of different widths, and fallback to full matching
+        // with an empty coarse road map.
+        HierarchicalMatcher empty = new HierarchicalMatcher(matcher, prioritized, 0.5f, spatial);
+        assertEquals(0, empty.coarse().size());
+
+        for (double width : new double[] {500, 5, 0}) {
+            hierarchical.setWidth(width);
+            MatcherKState state = width > 0 ? hierarchical.mmatch(new ArrayList<>(samples), 0, 0)
+                    : empty.mmatch(new ArrayList<>(samples), 0, 0);
+
+            assertEquals(expected.sequence().size(), state.sequence().size());
+            for (int i = 0; i < expected.sequence().size(); ++i) {
+                MatcherCandidate left = expected.sequence().get(i),
+                        right = state.sequence().get(i);
+
+                assertEquals(0,
+                        spatial.distance(left.point().geometry(), right.point().geometry()),
+                        1E-1);
+                assertEquals(left.filtprob(), right.filtprob(), 1E-6);
+                assertEquals(left.transition() == null, right.transition() == null);
+                if (left.transition() != null) {
+                    assertEquals(left.transition().route().length(),
+                            right.transition().route().length(), 1E-1);
+                }
+            }
+        }
+
+        Corridor corridor = new Corridor(prioritized, 50, spatial);
+        corridor.add(new Point(11.0211, 48.015));
+        assertTrue(corridor.contains(prioritized.get(12)));
+        assertTrue(corridor.contains(prioritized.get(13)));
+        assertTrue(!corridor.contains(prioritized.get(10)));
+        assertTrue(!corridor.contains(prioritized.get(0)));
+    }
+
+    @Test
+    public void testArrays() {
+        long[] times = new long[] {0, 60000, 61000, 120000, 180000, 240000};
+        double[] lon = new double[] {11.001, 11.016, 11.0161, 11.0211, 11.0211, 11.029};
+        double[] lat = new double[] {48.0001, 47.9991, 47.9991, 48.005, 48.015, 48.0001};
+
+        List<MatcherSample> samples = new ArrayList<>();
+        for (int i = 0; i < times.length; ++i) {
+            samples.add(new MatcherSample(times[i], new Point(lon[i], lat[i])));
+        }
+
+        Matcher matcher = new Matcher(map, router, cost, spatial);
+        MatcherKState expected = matcher.mmatch(samples, 0, 5000);
+        MatcherSequence sequence = matcher.mmatch(times, lon, lat, null, 0, 5000);
+
+        assertEquals(times.length, sequence.size());
+        assertEquals(times.length + 1, sequence.offsets().length);
+
+        // Sample 2 is skipped due to minimum interval.
+        assertEquals(-1, sequence.roads()[2]);
+        assertTrue(Double.isNaN(sequence.fractions()[2]));
+        assertEquals(sequence.offsets()[2], sequence.offsets()[3]);
+
+        List<MatcherCandidate> candidates = expected.sequence();
+        List<MatcherSample> matched = expected.samples();
+        assertEquals(matched.size(), candidates.size());
+
+        int unmatched = 0;
+        for (int i = 0; i < times.length; ++i) {
+            unmatched += sequence.roads()[i] == -1 ? 1 : 0;
+        }
+        assertEquals(times.length - matched.size(), unmatched);
+
+        for (int j = 0; j < matched.size(); ++j) {
+            MatcherCandidate candidate = candidates.get(j);
+            int i = Arrays.binarySearch(times, matched.get(j).time());
+            assertTrue(i >= 0);
+
+            // Roads are reported with base road ids, as in JSON representation.
+            assertEquals(candidate.point().edge().base().id(), sequence.roads()[i]);
+            RoadPoint point = new RoadPoint(edge(sequence.roads()[i], sequence.headings()[i]),
+                    sequence.fractions()[i]);
+            assertEquals(0, spatial.distance(candidate.point().geometry(), point.geometry()),
+                    1E-1);
+            if (candidate.point().edge().id() != point.edge().id()) {
+                // Candidate is ambiguous, i.e. both directions of the road have equal
+                // probability, which is resolved independently in each matching.
+                assertEquals(1 - candidate.point().fraction(), sequence.fractions()[i], 1E-10);
+                continue;
+            }
+            assertEquals(candidate.point().fraction(), sequence.fractions()[i], 1E-10);
+        }
+
+        // Routes must connect the matched roads of the sequence, independent of how ambiguous
+        // candidates are resolved.
+        Road previous = null;
+        for (int i = 0; i < times.length; ++i) {
+            int first = sequence.offsets()[i], last = sequence.offsets()[i + 1] - 1;
+            if (sequence.roads()[i] == -1) {
+                assertEquals(first, last + 1);
+                continue;
+            }
+            if (last >= first) {
+                // Turns at start or end of a route may be shortened to the opposite direction.
+                assertEquals(previous.base().id(), sequence.edges()[first]);
+                assertEquals(sequence.roads()[i], sequence.edges()[last]);
+                for (int k = first; k < last; ++k) {
+                    boolean connected = false;
+                    Road next = edge(sequence.edges()[k + 1], sequence.directions()[k + 1]);
+                    Iterator<Road> successors =
+                            edge(sequence.edges()[k], sequence.directions()[k]).successors();
+                    while (successors.hasNext()) {
+                        connected |= successors.next().id() == next.id();
+                    }
+                    assertTrue(connected);
+                }
+            }
+            previous = edge(sequence.roads()[i], sequence.headings()[i]);
+        }
+    }
+
+    private Road edge(long road, boolean forward) {
+        return map.get(forward ? road * 2 : road * 2 + 1);
+    }
+
+    @Test
+    public void testCandidatesBuffer() throws ReflectiveOperationException {
+        Matcher matcher = new Matcher(map, router, cost, spatial);
+        matcher.setMaxRadius(200);
+        matcher.setMaxAzimuth(45);
+
+        // Azimuth filtering removes candidates of opposite direction from the buffer.
+        MatcherSample sample = new MatcherSample(0, new Point(11.0101, 48.0001), 90);
+        Set<Tuple<MatcherCandidate, Double>> candidates =
+                matcher.candidates(new HashSet<MatcherCandidate>(), sample);
+        assertTrue(candidates.size() > 0);
+
+        Field field = Matcher.class.getDeclaredField("buffers");
+        field.setAccessible(true);
+        Object buffer = ((ThreadLocal<?>) field.get(null)).get();
+        Field points = buffer.getClass().getDeclaredField("points");
+        points.setAccessible(true);
+        for (Object point : (Object[]) points.get(buffer)) {
+            assertNull(point);
+        }
+    }
+
+    @Test
+    public void testCandidatesAllocation() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        final com.sun.management.ThreadMXBean allocation = (com.sun.management.ThreadMXBean) bean;
+        final long thread = Thread.currentThread().getId();
+        Assume.assumeTrue(allocation.isThreadAllocatedMemoryEnabled());
+
+        // Allocation of geodesic distance computations is measured separately.
+        final AtomicLong geodesic = new AtomicLong();
+        SpatialOperator counting = new Geography() {
+            @Override
+            public double distance(Point a, Point b) {
+                long start = allocation.getThreadAllocatedBytes(thread);
+                double distance = super.distance(a, b);
+                geodesic.addAndGet(allocation.getThreadAllocatedBytes(thread) - start);
+                return distance;
+            }
+        };
+
+        List<MatcherSample> samples = Arrays.asList(
+                new MatcherSample(0, new Point(11.001, 48.0001)),
+                new MatcherSample(60000, new Point(11.016, 47.9991)),
+                new MatcherSample(120000, new Point(11.0211, 48.005)),
+                new MatcherSample(180000, new Point(11.0211, 48.015)),
+                new MatcherSample(240000, new Point(11.029, 48.0001)));
+
+        Matcher matcher = new Matcher(map, router, cost, counting);
+        matcher.setMaxRadius(200);
+
+        long[] allocated = new long[samples.size()];
+        int[] sizes = new int[samples.size()];
+        for (int k = 0; k < 1000; ++k) {
+            Set<MatcherCandidate> vector = new HashSet<>();
+            MatcherSample previous = null;
+            for (int i = 0; i < samples.size(); ++i) {
+                MatcherSample sample = samples.get(i);
+
+                // Geometries of road points are determined on request, which is included.
+                long start = allocation.getThreadAllocatedBytes(thread);
+                for (RoadPoint point : map.spatial().radius(sample.point(),
+                        matcher.getMaxRadius())) {
+                    point.geometry();
+                }
+                long query = allocation.getThreadAllocatedBytes(thread) - start;
+
+                geodesic.set(0);
+                start = allocation.getThreadAllocatedBytes(thread);
+                Set<Tuple<MatcherCandidate, Double>> candidates =
+                        matcher.candidates(vector, sample);
+                allocated[i] = allocation.getThreadAllocatedBytes(thread) - start - query
+                        - geodesic.get();
+                sizes[i] = candidates.size();
+
+                vector = matcher.execute(vector, previous, sample);
+                previous = sample;
+            }
+        }
+
+        // After warm-up, only the returned set, matching candidates and their tuples with emission
+        // probabilities are allocated, which excludes the spatial index query and geodesics.
+        for (int i = 0; i < samples.size(); ++i) {
+            assertTrue(sizes[i] > 0);
+            assertTrue(allocated[i] <= 256 + 192 * sizes[i]);
+        }
+    }
 }
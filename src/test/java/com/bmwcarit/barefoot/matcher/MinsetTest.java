@@ -171,6 +171,32 @@ public class MinsetTest {
 
             assertTrue(set.containsAll(refset));
         }
+        {
+            RoadPoint[] candidates = new RoadPoint[] {new RoadPoint(map.get(10), 0.5),
+                    new RoadPoint(map.get(6), 0.2), new RoadPoint(map.get(0), 1),
+                    new RoadPoint(map.get(8), 0.5), new RoadPoint(map.get(4), 1),
+                    new RoadPoint(map.get(2), 1), new RoadPoint(map.get(8), 0.6)};
+
+            RoadPoint[] points = new RoadPoint[candidates.length];
+            long[] ids = new long[candidates.length];
+            int[] misses = new int[candidates.length];
+            boolean[] removes = new boolean[candidates.length];
+
+            // Arrays are reused as in matching of subsequent samples.
+            int size = 0;
+            for (int k = 0; k < 2; ++k) {
+                System.arraycopy(candidates, 0, points, 0, candidates.length);
+                size = Minset.sort(points, ids, candidates.length);
+                size = Minset.minimize(points, ids, size, misses, removes);
+            }
+
+            assertEquals(3, size);
+            assertEquals(6, points[0].edge().id());
+            assertEquals(8, points[1].edge().id());
+            assertEquals(10, points[2].edge().id());
+            assertEquals(8, ids[1]);
+            assertEquals(null, points[3]);
+        }
     }
 
     @Test
@@ -12,11 +12,20 @@
  */
 package com.bmwcarit.barefoot.road;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
 
 import org.json.JSONException;
 import org.junit.Test;
@@ -24,6 +33,12 @@ import org.junit.Test;
 import com.bmwcarit.barefoot.roadmap.Testmap;
 import com.bmwcarit.barefoot.roadmap.Road;
 import com.bmwcarit.barefoot.roadmap.RoadMap;
+import com.esri.core.geometry.Geometry;
+import com.esri.core.geometry.GeometryEngine;
+import com.esri.core.geometry.Polygon;
+import com.esri.core.geometry.Polyline;
+import com.esri.core.geometry.SpatialReference;
+import com.esri.core.geometry.WktImportFlags;
 
 public class BfmapReaderTest {
 
@@ -86,4 +101,133 @@ public class BfmapReaderTest {
             reader.close();
         }
     }
+
+    private static List<BaseRoad> roads() {
+        List<BaseRoad> roads = new LinkedList<>();
+        long id = 0;
+
+        for (double x = 11.0; x < 12.0; x += 0.05) {
+            for (double y = 48.0; y < 48.5; y += 0.05) {
+                String wkt = "LINESTRING(" + x + " " + y + "," + (x + 0.01) + " " + (y + 0.01) + ")";
+                roads.add(new BaseRoad(id, id * 2, id * 2 + 1, id, true, (short) (id % 3), 1F, 60F,
+                        60F, 100F, (Polyline) GeometryEngine.geometryFromWkt(wkt,
+                                WktImportFlags.wktImportDefaults, Geometry.Type.Polyline)));
+                id += 1;
+            }
+        }
+
+        return roads;
+    }
+
+    private static Set<Long> read(RoadReader reader, Polygon polygon, HashSet<Short> exclusions) {
+        Set<Long> ids = new HashSet<>();
+        BaseRoad road = null;
+
+        reader.open(polygon, exclusions);
+        while ((road = reader.next()) != null) {
+            if (ids.contains(road.id())) {
+                fail();
+            }
+            ids.add(road.id());
+        }
+        reader.close();
+
+        return ids;
+    }
+
+    @Test
+    public void testBfmapReaderFilter() throws IOException {
+        List<BaseRoad> roads = roads();
+
+        File file = File.createTempFile("roads", ".bfmap");
+        file.deleteOnExit();
+        RoadWriter writer = new BfmapWriter(file.getAbsolutePath(), 16, 0.1);
+        writer.open();
+        for (BaseRoad road : roads) {
+            writer.write(road);
+        }
+        writer.close();
+
+        File legacy = File.createTempFile("roads", ".bfmap");
+        legacy.deleteOnExit();
+        try (ObjectOutputStream output = new ObjectOutputStream(new FileOutputStream(legacy))) {
+            for (BaseRoad road : roads) {
+                output.writeObject(road);
+            }
+            output.writeObject(null);
+        }
+
+        Polygon polygon = (Polygon) GeometryEngine.geometryFromWkt(
+                "POLYGON((11.2 48.1,11.4 48.1,11.4 48.2,11.2 48.2,11.2 48.1))",
+                WktImportFlags.wktImportDefaults, Geometry.Type.Polygon);
+        HashSet<Short> exclusions = new HashSet<>(Arrays.asList((short) 1));
+
+        for (Polygon region : Arrays.asList(null, polygon)) {
+            for (HashSet<Short> excluded : Arrays.asList(null, exclusions)) {
+                Set<Long> expected = new HashSet<>();
+                for (BaseRoad road : roads) {
+                    if (excluded != null && excluded.contains(road.type())) {
+                        continue;
+                    }
+                    if (region != null
+                            && !GeometryEngine.contains(region, road.geometry(),
+                                    SpatialReference.create(4326))
+                            && !GeometryEngine.overlaps(region, road.geometry(),
+                                    SpatialReference.create(4326))) {
+                        continue;
+                    }
+                    expected.add(road.id());
+                }
+
+                assertTrue(!expected.isEmpty());
+                assertEquals(expected,
+                        read(new BfmapReader(file.getAbsolutePath()), region, excluded));
+                assertEquals(expected,
+                        read(new BfmapReader(legacy.getAbsolutePath()), region, excluded));
+            }
+        }
+
+        file.delete();
+        legacy.delete();
+    }
+
+    private static File write(List<BaseRoad> roads, int tiles) throws IOException {
+        File file = File.createTempFile("roads", ".bfmap");
+        file.deleteOnExit();
+        RoadWriter writer = new BfmapWriter(file.getAbsolutePath(), 16, 0.1, tiles);
+        writer.open();
+        for (BaseRoad road : roads) {
+            writer.write(road);
+        }
+        writer.close();
+        return file;
+    }
+
+    @Test
+    public void testBfmapWriterOrder() throws IOException {
+        List<BaseRoad> roads = roads();
+
+        // With a single open tile, each change of tile flushes, which keeps the order of roads.
+        File file = write(roads, 1);
+        RoadReader reader = new BfmapReader(file.getAbsolutePath());
+        BaseRoad road = null;
+        int index = 0;
+
+        reader.open();
+        while ((road = reader.next()) != null) {
+            assertEquals(roads.get(index++).id(), road.id());
+        }
+        reader.close();
+        assertEquals(roads.size(), index);
+        file.delete();
+
+        // Order of blocks is deterministic with bounded number of open tiles.
+        File left = write(roads, 4), right = write(roads, 4);
+        assertTrue(Arrays.equals(Files.readAllBytes(left.toPath()),
+                Files.readAllBytes(right.toPath())));
+        assertEquals(roads.size(),
+                read(new BfmapReader(left.getAbsolutePath()), null, null).size());
+        left.delete();
+        right.delete();
+    }
 }
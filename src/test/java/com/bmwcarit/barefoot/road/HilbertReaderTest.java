@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2015, BMW Car IT GmbH
+ *
+ * Author: Sebastian Mattheis <sebastian.mattheis@bmw-carit.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.bmwcarit.barefoot.road;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.bmwcarit.barefoot.util.SourceException;
+import com.esri.core.geometry.Envelope2D;
+import com.esri.core.geometry.Geometry;
+import com.esri.core.geometry.GeometryEngine;
+import com.esri.core.geometry.Polygon;
+import com.esri.core.geometry.Polyline;
+import com.esri.core.geometry.WktImportFlags;
+
+public class HilbertReaderTest {
+    private static class ListReader implements RoadReader {
+        private final List<BaseRoad> roads;
+        private Iterator<BaseRoad> iterator = null;
+
+        public ListReader(List<BaseRoad> roads) {
+            this.roads = roads;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return iterator != null;
+        }
+
+        @Override
+        public void open() throws SourceException {
+            open(null, null);
+        }
+
+        @Override
+        public void open(Polygon polygon, HashSet<Short> exclusions) throws SourceException {
+            iterator = roads.iterator();
+        }
+
+        @Override
+        public void close() throws SourceException {
+            iterator = null;
+        }
+
+        @Override
+        public BaseRoad next() throws SourceException {
+            return iterator.hasNext() ? iterator.next() : null;
+        }
+    }
+
+    @Test
+    public void testHilbert() {
+        int n = 1 << 16;
+        HashSet<Long> indices = new HashSet<>();
+
+        for (int x = 0; x < 4; ++x) {
+            for (int y = 0; y < 4; ++y) {
+                indices.add(HilbertReader.hilbert((x + 0.5) * 360.0 / n - 180,
+                        (y + 0.5) * 180.0 / n - 90));
+            }
+        }
+
+        assertEquals(16, indices.size());
+        for (long i = 0; i < 16; ++i) {
+            assertTrue(indices.contains(i));
+        }
+    }
+
+    @Test
+    public void testRenumbering() throws IOException {
+        List<BaseRoad> roads = new ArrayList<>();
+        long id = 1000;
+
+        for (double x = 11.5; x > 11.0; x -= 0.05) {
+            for (double y = 48.0; y < 48.5; y += 0.05) {
+                String wkt = "LINESTRING(" + x + " " + y + "," + (x + 0.01) + " " + (y + 0.01) + ")";
+                roads.add(new BaseRoad(id, id * 2, id * 2 + 1, id + 7, true, (short) 1, 1F, 60F,
+                        60F, 100F, (Polyline) GeometryEngine.geometryFromWkt(wkt,
+                                WktImportFlags.wktImportDefaults, Geometry.Type.Polyline)));
+                id += 3;
+            }
+        }
+
+        HilbertReader reader = new HilbertReader(new ListReader(roads));
+        reader.open();
+
+        BaseRoad road = null;
+        long expected = 0, previous = -1;
+        while ((road = reader.next()) != null) {
+            assertEquals(expected, road.id());
+
+            long original = reader.ids()[(int) road.id()];
+            assertEquals(original + 7, road.refid());
+            assertEquals(original * 2, road.source());
+            assertEquals(original * 2 + 1, road.target());
+
+            Envelope2D envelope = new Envelope2D();
+            road.geometry().queryEnvelope2D(envelope);
+            long hilbert = HilbertReader.hilbert(envelope.getCenterX(), envelope.getCenterY());
+            assertTrue(hilbert >= previous);
+            previous = hilbert;
+            expected += 1;
+        }
+        reader.close();
+
+        assertEquals(roads.size(), expected);
+
+        File file = File.createTempFile("roads", ".ids");
+        file.deleteOnExit();
+        reader.write(file.getAbsolutePath());
+        assertArrayEquals(reader.ids(), HilbertReader.read(file.getAbsolutePath()));
+        file.delete();
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2015, BMW Car IT GmbH
+ *
+ * Author: Sebastian Mattheis <sebastian.mattheis@bmw-carit.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.bmwcarit.barefoot.roadmap;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.bmwcarit.barefoot.road.BaseRoad;
+import com.bmwcarit.barefoot.spatial.Geography;
+import com.bmwcarit.barefoot.spatial.SpatialOperator;
+import com.esri.core.geometry.Geometry;
+import com.esri.core.geometry.GeometryEngine;
+import com.esri.core.geometry.Polyline;
+import com.esri.core.geometry.WktImportFlags;
+
+public class ContractionTest {
+    private final SpatialOperator spatial = new Geography();
+
+    private BaseRoad road(long id, long source, long target, boolean oneway, short type,
+            String wkt) {
+        Polyline geometry = (Polyline) GeometryEngine.geometryFromWkt(wkt,
+                WktImportFlags.wktImportDefaults, Geometry.Type.Polyline);
+        return new BaseRoad(id, source, target, id, oneway, type, 1F, 60F, 60F,
+                (float) spatial.length(geometry), geometry);
+    }
+
+    private RoadMap map() {
+        RoadMap map = new RoadMap();
+        for (BaseRoad base : Arrays.asList(
+                road(1L, 1L, 2L, false, (short) 1, "LINESTRING(11.000 48.000, 11.010 48.000)"),
+                road(2L, 2L, 3L, false, (short) 1, "LINESTRING(11.010 48.000, 11.020 48.000)"),
+                road(3L, 3L, 4L, false, (short) 1,
+                        "LINESTRING(11.020 48.000, 11.025 48.001, 11.030 48.000)"),
+                road(4L, 4L, 5L, false, (short) 2, "LINESTRING(11.030 48.000, 11.040 48.000)"),
+                road(5L, 5L, 6L, true, (short) 2, "LINESTRING(11.040 48.000, 11.040 48.010)"),
+                road(6L, 5L, 7L, true, (short) 2, "LINESTRING(11.040 48.000, 11.040 47.990)"),
+                road(7L, 8L, 7L, true, (short) 2, "LINESTRING(11.050 47.990, 11.040 47.990)"))) {
+            for (Road road : RoadMap.split(base)) {
+                map.add(road);
+            }
+        }
+        return map.construct();
+    }
+
+    @Test
+    public void testContract() {
+        RoadMap map = map();
+        Contraction contraction = Contraction.Contract(map);
+        RoadMap contracted = contraction.contracted();
+
+        assertArrayEquals(new long[] {1L, 2L, 3L}, contraction.chain(1L));
+        assertArrayEquals(new long[] {4L}, contraction.chain(4L));
+        assertArrayEquals(new long[] {5L}, contraction.chain(5L));
+        assertArrayEquals(new long[] {6L}, contraction.chain(6L));
+        assertArrayEquals(new long[] {7L}, contraction.chain(7L));
+        assertEquals(map.size() - 4, contracted.size());
+
+        Road road = contracted.get(2L);
+        assertEquals(1L, road.source());
+        assertEquals(4L, road.target());
+        assertEquals(map.get(2L).length() + map.get(4L).length() + map.get(6L).length(),
+                road.length(), 1E-3);
+        assertEquals(5, road.geometry().getPointCount());
+    }
+
+    @Test
+    public void testExpandPoint() {
+        RoadMap map = map();
+        Contraction contraction = Contraction.Contract(map);
+
+        for (long id : new long[] {2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L}) {
+            for (double fraction : new double[] {0.0, 0.3, 0.7, 1.0}) {
+                RoadPoint point = new RoadPoint(map.get(id), fraction);
+                RoadPoint contracted = contraction.contract(point);
+                RoadPoint expanded = contraction.expand(contracted);
+
+                assertEquals(0, spatial.distance(point.geometry(), contracted.geometry()), 1);
+                assertEquals(0, spatial.distance(point.geometry(), expanded.geometry()), 1E-3);
+            }
+        }
+    }
+
+    @Test
+    public void testExpandRoute() {
+        RoadMap map = map();
+        Contraction contraction = Contraction.Contract(map);
+        RoadMap contracted = contraction.contracted();
+
+        {
+            Route route = new Route(new RoadPoint(contracted.get(2L), 0.1),
+                    new RoadPoint(contracted.get(10L), 0.5),
+                    Arrays.asList(contracted.get(2L), contracted.get(8L), contracted.get(10L)));
+            Route expanded = contraction.expand(route);
+
+            assertEquals(5, expanded.size());
+            assertEquals(route.length(), expanded.length(), 1E-1);
+        }
+        {
+            Route route = new Route(new RoadPoint(contracted.get(3L), 0.1),
+                    new RoadPoint(contracted.get(3L), 0.9), Arrays.asList(contracted.get(3L)));
+            Route expanded = contraction.expand(route);
+
+            assertEquals(7L, expanded.get(0).id());
+            assertEquals(3L, expanded.get(expanded.size() - 1).id());
+            assertEquals(route.length(), expanded.length(), 1E-1);
+        }
+    }
+}
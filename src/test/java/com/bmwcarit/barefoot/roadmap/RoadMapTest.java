@@ -14,17 +14,28 @@
 package com.bmwcarit.barefoot.roadmap;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
 
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
 import org.junit.Test;
 
 import com.bmwcarit.barefoot.road.BaseRoad;
+import com.bmwcarit.barefoot.road.HilbertReader;
+import com.bmwcarit.barefoot.road.RoadReader;
+import com.bmwcarit.barefoot.util.SourceException;
 import com.esri.core.geometry.Geometry;
 import com.esri.core.geometry.GeometryEngine;
 import com.esri.core.geometry.Point;
@@ -178,4 +189,124 @@ public class RoadMapTest {
             }
         }
     }
+
+    @Test
+    public void testSnapshot() throws IOException {
+        RoadMap map = new RoadMap();
+        for (BaseRoad osmroad : osmroads()) {
+            for (Road road : RoadMap.split(osmroad)) {
+                map.add(road);
+            }
+        }
+        map.construct();
+
+        File file = File.createTempFile("roadmap", ".bfsnap");
+        file.deleteOnExit();
+
+        map.snapshot(file.getAbsolutePath(), "checksum");
+        RoadMap restored = RoadMap.Restore(file.getAbsolutePath(), "checksum");
+
+        assertEquals(map.size(), restored.size());
+
+        Iterator<Road> roads = map.edges();
+        while (roads.hasNext()) {
+            Road road = roads.next();
+            Road other = restored.get(road.id());
+
+            assertEquals(road.source(), other.source());
+            assertEquals(road.target(), other.target());
+            assertEquals(road.length(), other.length(), 1E-9);
+
+            Set<Long> successors = new HashSet<>(), others = new HashSet<>();
+            Iterator<Road> it = road.successors();
+            while (it.hasNext()) {
+                successors.add(it.next().id());
+            }
+            it = other.successors();
+            while (it.hasNext()) {
+                others.add(it.next().id());
+            }
+            assertEquals(successors, others);
+        }
+
+        Point[] points = new Point[] {new Point(11.343629, 48.083797),
+                new Point(11.344827, 48.083752), new Point(11.344166, 48.084077)};
+        for (Point point : points) {
+            Set<Long> expected = new HashSet<>(), actual = new HashSet<>();
+            for (RoadPoint p : map.spatial().radius(point, 30.0)) {
+                expected.add(p.edge().id());
+            }
+            for (RoadPoint p : restored.spatial().radius(point, 30.0)) {
+                actual.add(p.edge().id());
+            }
+            assertEquals(expected, actual);
+        }
+
+        assertTrue(!restored.spatial().nearest(points[0]).isEmpty());
+
+        try {
+            RoadMap.Restore(file.getAbsolutePath(), "other");
+            fail();
+        } catch (SourceException e) {
+        }
+
+        file.delete();
+    }
+
+    @Test
+    public void testOriginals() throws IOException, JSONException {
+        RoadMap map = new RoadMap();
+        for (BaseRoad osmroad : osmroads()) {
+            for (Road road : RoadMap.split(osmroad)) {
+                map.add(road);
+            }
+        }
+
+        HilbertReader renumbering = new HilbertReader(map.reader());
+        RoadMap hilbert = RoadMap.Load(renumbering);
+        assertTrue(!hilbert.renumbered());
+        hilbert.setOriginals(renumbering.ids());
+        assertTrue(hilbert.renumbered());
+        hilbert.construct();
+
+        RoadReader reader = hilbert.reader();
+        reader.open();
+        BaseRoad road = null;
+        long expected = 0;
+        while ((road = reader.next()) != null) {
+            assertEquals(expected++, road.id());
+            assertEquals(road.refid(), hilbert.original(road.id()));
+        }
+        reader.close();
+        assertEquals(osmroads().size(), expected);
+
+        JSONArray json = new JSONArray();
+        for (long id = 0; id < expected; ++id) {
+            JSONObject jsonpoint = new JSONObject();
+            jsonpoint.put("point", new RoadPoint(hilbert.get(id * 2), 0.5).toJSON());
+            json.put(jsonpoint);
+        }
+        hilbert.originals(json);
+        for (int i = 0; i < json.length(); ++i) {
+            assertEquals(hilbert.get(i * 2).base().refid(),
+                    json.getJSONObject(i).getJSONObject("point").getLong("road"));
+        }
+
+        File file = File.createTempFile("roadmap", ".bfsnap");
+        file.deleteOnExit();
+
+        hilbert.snapshot(file.getAbsolutePath(), "checksum");
+        RoadMap restored = RoadMap.Restore(file.getAbsolutePath(), "checksum");
+        for (long id = 0; id < expected; ++id) {
+            assertEquals(hilbert.original(id), restored.original(id));
+        }
+
+        try {
+            hilbert.setOriginals(Arrays.copyOf(renumbering.ids(), (int) expected - 1));
+            fail();
+        } catch (SourceException e) {
+        }
+
+        file.delete();
+    }
 }
@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2015, BMW Car IT GmbH
+ *
+ * Author: Sebastian Mattheis <sebastian.mattheis@bmw-carit.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.bmwcarit.barefoot.scheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.bmwcarit.barefoot.scheduler.StaticScheduler.InlineScheduler;
+
+public class StaticSchedulerTest {
+    private static final int workers = 4;
+
+    private static void reset(boolean forkjoin) {
+        if (forkjoin) {
+            StaticScheduler.reset(new ForkJoinPool(workers));
+        } else {
+            StaticScheduler.reset(workers);
+        }
+    }
+
+    @After
+    public void restore() {
+        StaticScheduler.reset(Runtime.getRuntime().availableProcessors());
+    }
+
+    private static boolean tree(final AtomicInteger count, final int depth, final int width) {
+        InlineScheduler scheduler = StaticScheduler.scheduler();
+        for (int i = 0; i < width; ++i) {
+            scheduler.spawn(new Task() {
+                @Override
+                public void run() {
+                    count.incrementAndGet();
+                    if (depth > 1 && !tree(count, depth - 1, width)) {
+                        throw new RuntimeException();
+                    }
+                }
+            });
+        }
+        return scheduler.sync();
+    }
+
+    @Test
+    public void testSpawnSync() {
+        for (boolean forkjoin : new boolean[] {false, true}) {
+            reset(forkjoin);
+            for (int k = 0; k < 10; ++k) {
+                AtomicInteger count = new AtomicInteger();
+                assertTrue(tree(count, 3, 8));
+                assertEquals(8 + 8 * 8 + 8 * 8 * 8, count.get());
+            }
+        }
+    }
+
+    @Test
+    public void testException() {
+        for (boolean forkjoin : new boolean[] {false, true}) {
+            reset(forkjoin);
+            final AtomicInteger count = new AtomicInteger();
+            final AtomicInteger failed = new AtomicInteger();
+            InlineScheduler scheduler = StaticScheduler.scheduler();
+            scheduler.spawn(new Task() {
+                @Override
+                public void run() {
+                    InlineScheduler scheduler = StaticScheduler.scheduler();
+                    for (int i = 0; i < 8; ++i) {
+                        final int index = i;
+                        scheduler.spawn(new Task() {
+                            @Override
+                            public void run() {
+                                count.incrementAndGet();
+                                if (index == 3) {
+                                    throw new RuntimeException();
+                                }
+                            }
+                        });
+                    }
+                    if (!scheduler.sync()) {
+                        failed.incrementAndGet();
+                    }
+                }
+            });
+            assertTrue(scheduler.sync());
+            assertEquals(8, count.get());
+            assertEquals(1, failed.get());
+
+            scheduler = StaticScheduler.scheduler();
+            scheduler.spawn(new Task() {
+                @Override
+                public void run() {
+                    throw new RuntimeException();
+                }
+            });
+            assertFalse(scheduler.sync());
+        }
+    }
+
+    @Test
+    public void testCancel() {
+        for (boolean forkjoin : new boolean[] {false, true}) {
+            reset(forkjoin);
+            final AtomicInteger count = new AtomicInteger();
+            final AtomicInteger failed = new AtomicInteger();
+            InlineScheduler scheduler = StaticScheduler.scheduler();
+            scheduler.spawn(new Task() {
+                @Override
+                public void run() {
+                    cancel();
+                    InlineScheduler scheduler = StaticScheduler.scheduler();
+                    scheduler.spawn(new Task() {
+                        @Override
+                        public void run() {
+                            count.incrementAndGet();
+                        }
+                    });
+                    if (!scheduler.sync()) {
+                        failed.incrementAndGet();
+                    }
+                }
+            });
+            assertTrue(scheduler.sync());
+            assertEquals(0, count.get());
+            assertEquals(1, failed.get());
+        }
+    }
+}
@@ -36,6 +36,7 @@ import org.slf4j.LoggerFactory;
 
 import com.bmwcarit.barefoot.matcher.MatcherSample;
 import com.bmwcarit.barefoot.matcher.MatcherTest;
+import com.bmwcarit.barefoot.road.HilbertReader;
 import com.bmwcarit.barefoot.roadmap.Distance;
 import com.bmwcarit.barefoot.roadmap.Road;
 import com.bmwcarit.barefoot.roadmap.RoadMap;
@@ -487,4 +488,39 @@ public class DijkstraBenchmark {
 
         logger.info("m x n routes (fastest): {} ms", sw.ms());
     }
+
+    @Test
+    public void testHilbertRenumbering() {
+        RoadMap hilbert = RoadMap.Load(new HilbertReader(map.reader())).construct();
+        Point[][] pairs = new Point[][] {
+                {new Point(11.58424, 48.17635), new Point(11.56656, 48.17683)},
+                {new Point(11.58424, 48.17635), new Point(11.72661, 48.39594)},
+                {new Point(11.58551, 48.17705), new Point(11.57318, 48.17802)}};
+        Router<Road, RoadPoint> algo = new Dijkstra<>();
+
+        for (RoadMap instance : new RoadMap[] {map, hilbert}) {
+            for (int i = 0; i < 3; ++i) { // warm-up runs
+                for (Point[] pair : pairs) {
+                    algo.route(instance.spatial().nearest(pair[0]).iterator().next(),
+                            instance.spatial().nearest(pair[1]).iterator().next(), new Time());
+                }
+            }
+        }
+
+        for (RoadMap instance : new RoadMap[] {map, hilbert}) {
+            Stopwatch sw = new Stopwatch();
+            sw.start();
+            for (int i = 0; i < 10; ++i) {
+                for (int j = 0; j < pairs.length; ++j) {
+                    RoadPoint source = instance.spatial().nearest(pairs[j][0]).iterator().next();
+                    RoadPoint target = instance.spatial().nearest(pairs[j][1]).iterator().next();
+                    algo.route(source, target, new Time());
+                }
+            }
+            sw.stop();
+
+            logger.info("routing with {} road ids: {} ms",
+                    instance == map ? "original" : "Hilbert-renumbered", sw.ms());
+        }
+    }
 }
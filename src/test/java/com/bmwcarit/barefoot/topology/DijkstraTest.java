@@ -16,6 +16,7 @@ package com.bmwcarit.barefoot.topology;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 import java.util.Arrays;
 import java.util.HashMap;
@@ -24,6 +25,7 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Random;
 import java.util.Set;
 
 import org.junit.Test;
@@ -409,4 +411,160 @@ public class DijkstraTest {
             }
         }
     }
+
+    @Test
+    public void testSearchSpace() {
+        Graph<Road> map = new Graph<>();
+        map.add(new Road(0, 0, 1, 100));
+        map.add(new Road(1, 1, 0, 100));
+        map.add(new Road(2, 0, 2, 160));
+        map.add(new Road(3, 2, 0, 160));
+        map.add(new Road(4, 1, 2, 50));
+        map.add(new Road(5, 2, 1, 50));
+        map.add(new Road(6, 1, 3, 200));
+        map.add(new Road(7, 3, 1, 200));
+        map.add(new Road(8, 2, 3, 100));
+        map.add(new Road(9, 3, 2, 100));
+        map.add(new Road(14, 3, 5, 200));
+        map.add(new Road(15, 5, 3, 200));
+        map.construct();
+
+        Router<Road, Point<Road>> router = new Dijkstra<>();
+        Point<Road> source = new Point<>(map.get(0), 0.3);
+        Point<Road> target = new Point<>(map.get(14), 0.1);
+
+        {
+            // (0.7, 100) + 50 + 100 + (0.1, 200) = 240
+
+            List<Road> route =
+                    router.route(source, target, new Weight(), new Weight(), 300d, null);
+
+            assertEquals(Arrays.asList(0L, 4L, 8L, 14L), ids(route));
+        }
+        {
+            // (0.7, 100) + 200 + (0.1, 200) = 290
+
+            List<Road> route = router.route(source, target, new Weight(), new Weight(), 300d,
+                    new SearchSpace<Road>() {
+                        @Override
+                        public boolean contains(Road edge) {
+                            return edge.id() != 4;
+                        }
+                    });
+
+            assertEquals(Arrays.asList(0L, 6L, 14L), ids(route));
+        }
+        {
+            List<Road> route = router.route(source, target, new Weight(), new Weight(), 300d,
+                    new SearchSpace<Road>() {
+                        @Override
+                        public boolean contains(Road edge) {
+                            return edge.id() != 14;
+                        }
+                    });
+
+            assertNull(route);
+        }
+    }
+
+    @Test
+    public void testCaching() {
+        Random random = new Random(42);
+        Graph<Road> map = new Graph<>();
+        for (int i = 0; i < 60; ++i) {
+            long source = random.nextInt(20), target = random.nextInt(20);
+            map.add(new Road(2 * i, source, target, 50 + random.nextFloat() * 150));
+            map.add(new Road(2 * i + 1, target, source, 50 + random.nextFloat() * 150));
+        }
+        map.construct();
+
+        Router<Road, Point<Road>> router = new Dijkstra<>();
+        CachingDijkstra<Road, Point<Road>> cached = new CachingDijkstra<>(32, 1000);
+        CachingDijkstra<Road, Point<Road>> limited = new CachingDijkstra<>(2, 10);
+
+        for (int i = 0; i < 500; ++i) {
+            // Sources are on few edges, which is the case of subsequent routings of an object.
+            Point<Road> source =
+                    new Point<>(map.get(random.nextInt(12)), random.nextDouble());
+            Set<Point<Road>> targets = new HashSet<>();
+            for (int j = random.nextInt(4); j >= 0; --j) {
+                targets.add(new Point<>(map.get(random.nextInt(120)), random.nextDouble()));
+            }
+            Double max = random.nextBoolean() ? null : 100 + random.nextDouble() * 600;
+
+            Map<Point<Road>, List<Road>> expected =
+                    router.route(source, targets, new Weight(), new Weight(), max);
+
+            for (CachingDijkstra<Road, Point<Road>> other : Arrays.asList(cached, limited)) {
+                Map<Point<Road>, List<Road>> routes =
+                        other.route(source, targets, new Weight(), new Weight(), max);
+
+                assertEquals(expected.size(), routes.size());
+                for (Point<Road> target : targets) {
+                    if (expected.get(target) == null) {
+                        assertNull(routes.get(target));
+                    } else {
+                        assertEquals(ids(expected.get(target)), ids(routes.get(target)));
+                    }
+                }
+            }
+        }
+
+        assertTrue(cached.hits() > cached.misses());
+        assertTrue(limited.hits() < cached.hits());
+    }
+
+    @Test
+    public void testCachingSeeds() {
+        Random random = new Random(42);
+        Graph<Road> map = new Graph<>();
+        for (int i = 0; i < 60; ++i) {
+            long source = random.nextInt(20), target = random.nextInt(20);
+            map.add(new Road(2 * i, source, target, 50 + random.nextFloat() * 150));
+            map.add(new Road(2 * i + 1, target, source, 50 + random.nextFloat() * 150));
+        }
+        map.construct();
+
+        Router<Road, Point<Road>> router = new Dijkstra<>();
+        CachingDijkstra<Road, Point<Road>> cached = new CachingDijkstra<>(8, 1000);
+        Point<Road> source = new Point<>(map.get(0), 0.5);
+
+        for (int i = 0; i < 200; ++i) {
+            // Sources are targets of the previous routing, which is the case of subsequent
+            // transitions of an object.
+            List<Point<Road>> targets = new LinkedList<>();
+            for (int j = 0; j < 4; ++j) {
+                targets.add(new Point<>(map.get(random.nextInt(120)), random.nextDouble()));
+            }
+            Double max = random.nextBoolean() ? null : 300 + random.nextDouble() * 600;
+
+            Map<Point<Road>, List<Road>> expected = router.route(source,
+                    new HashSet<>(targets), new Weight(), new Weight(), max);
+            Map<Point<Road>, List<Road>> routes = cached.route(source,
+                    new HashSet<>(targets), new Weight(), new Weight(), max);
+
+            Point<Road> next = null;
+            for (Point<Road> target : targets) {
+                if (expected.get(target) == null) {
+                    assertNull(routes.get(target));
+                } else {
+                    assertEquals(ids(expected.get(target)), ids(routes.get(target)));
+                    next = next == null && target.edge() != source.edge() ? target : next;
+                }
+            }
+            source = next != null ? next : new Point<>(map.get(random.nextInt(120)), 0.5);
+        }
+
+        assertTrue(cached.seeds() > 0);
+        assertTrue(cached.hits() > cached.misses());
+    }
+
+    private static List<Long> ids(List<Road> route) {
+        assertNotNull(route);
+        List<Long> ids = new LinkedList<>();
+        for (Road road : route) {
+            ids.add(road.id());
+        }
+        return ids;
+    }
 }
@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2015, BMW Car IT GmbH
+ *
+ * Author: Sebastian Mattheis <sebastian.mattheis@bmw-carit.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law or agreed to in
+ * writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific
+ * language governing permissions and limitations under the License.
+ */
+
+package com.bmwcarit.barefoot.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class Base64Test {
+
+    @Test
+    public void testVectors() {
+        // Test vectors of RFC 4648.
+        String[] plain = new String[] {"", "f", "fo", "foo", "foob", "fooba", "foobar"};
+        String[] encoded =
+                new String[] {"", "Zg==", "Zm8=", "Zm9v", "Zm9vYg==", "Zm9vYmE=", "Zm9vYmFy"};
+
+        for (int i = 0; i < plain.length; ++i) {
+            assertEquals(encoded[i], Base64.encode(plain[i].getBytes()));
+            assertEquals(plain[i], new String(Base64.decode(encoded[i])));
+        }
+    }
+
+    @Test
+    public void testRandom() {
+        Random random = new Random(42);
+        for (int size = 0; size < 100; ++size) {
+            byte[] data = new byte[size];
+            random.nextBytes(data);
+            assertArrayEquals(data, Base64.decode(Base64.encode(data)));
+        }
+    }
+
+    @Test
+    public void testInvalid() {
+        for (String string : new String[] {"Zg=", "Z===", "Zm9v!A==", "Zg==Zm9v"}) {
+            try {
+                Base64.decode(string);
+                fail();
+            } catch (IllegalArgumentException e) {
+            }
+        }
+    }
+}